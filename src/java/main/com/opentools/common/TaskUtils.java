@@ -1,6 +1,7 @@
 package com.opentools.common;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.opentools.task.TaskEntity;
 import com.opentools.task.TaskPoolManager;
@@ -16,17 +17,39 @@ public class TaskUtils {
     /**
      * 添加异步任务(任务列表)
      * @param taskList
+     * @return 所有任务完成后完成，结果按任务的顺序排列
      */
-	public static void addTaskList(List<TaskEntity> taskList){
-		TaskPoolManager.newInstance().addTasks(taskList);
+	public static CompletableFuture<List<Object>> addTaskList(List<TaskEntity> taskList){
+		return TaskPoolManager.newInstance().addTasks(taskList);
 	}
 	
 	 /**
      * 添加异步任务(单个任务)
      * @param taskList
+     * @return 任务的返回值
      */
-	public static void addTask(TaskEntity task){
-		TaskPoolManager.newInstance().addTask(task);
+	public static CompletableFuture<Object> addTask(TaskEntity task){
+		return TaskPoolManager.newInstance().addTask(task);
+	}
+	
+	/**
+	 * 添加异步任务到指定的线程池(单个任务)
+	 * @param task
+	 * @param poolName 线程池名称，见TaskPoolManager
+	 * @return 任务的返回值
+	 */
+	public static CompletableFuture<Object> addTask(TaskEntity task, String poolName){
+		return TaskPoolManager.newInstance().addTask(poolName, task);
+	}
+	
+	/**
+	 * 添加异步任务到指定的线程池(任务列表)
+	 * @param taskList
+	 * @param poolName 线程池名称，见TaskPoolManager
+	 * @return 所有任务完成后完成，结果按任务的顺序排列
+	 */
+	public static CompletableFuture<List<Object>> addTaskList(List<TaskEntity> taskList, String poolName){
+		return TaskPoolManager.newInstance().addTasks(poolName, taskList);
 	}
 	
 }
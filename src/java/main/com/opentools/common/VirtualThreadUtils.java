@@ -0,0 +1,86 @@
+package com.opentools.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 通过反射使用虚拟线程（JDK21及以上），代码本身仍然按Java 8编译，
+ * 运行在不支持虚拟线程的JDK上时各方法返回null，由调用方回退到平台线程
+ *
+ * @author Aaron
+ */
+public class VirtualThreadUtils {
+
+	private static final Method NEW_PER_TASK_EXECUTOR;
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+
+	static {
+		Method perTask = null;
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		try {
+			perTask = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			name = builderClass.getMethod("name", String.class, long.class);
+			factory = builderClass.getMethod("factory");
+		} catch (Exception e) {
+			// 不支持虚拟线程
+			perTask = null;
+			ofVirtual = null;
+		}
+		NEW_PER_TASK_EXECUTOR = perTask;
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_FACTORY = factory;
+	}
+
+	private VirtualThreadUtils() {
+	}
+
+	/**
+	 * 当前JDK是否支持虚拟线程
+	 * @return
+	 */
+	public static boolean isSupported() {
+		return NEW_PER_TASK_EXECUTOR != null;
+	}
+
+	/**
+	 * 每个任务一个虚拟线程的线程池
+	 * @return 不支持虚拟线程时返回null
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (NEW_PER_TASK_EXECUTOR == null) {
+			return null;
+		}
+		try {
+			return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 创建虚拟线程的ThreadFactory，线程名为prefix加上从0开始的序号
+	 * @param prefix
+	 * @return 不支持虚拟线程时返回null
+	 */
+	public static ThreadFactory newVirtualThreadFactory(String prefix) {
+		if (OF_VIRTUAL == null) {
+			return null;
+		}
+		try {
+			// 每次创建新的Builder，Builder本身不是线程安全的
+			Object named = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+			return (ThreadFactory) BUILDER_FACTORY.invoke(named);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+}
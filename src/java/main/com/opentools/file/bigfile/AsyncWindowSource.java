@@ -0,0 +1,117 @@
+package com.opentools.file.bigfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 用AsynchronousFileChannel读取到池化的直接缓冲区
+ * <p>
+ * 开启预读时，交出一个窗口的同时发起下一个窗口（紧接着当前窗口、大小相同）的读取，
+ * 扫描当前窗口和读取下一个窗口重叠进行；请求的窗口和预读的不一致时丢弃预读的内容
+ *
+ * @author Aaron
+ */
+final class AsyncWindowSource implements WindowSource {
+
+    private final AsynchronousFileChannel channel;
+    private final DirectBufferPool pool;
+    private final boolean prefetch;
+    private ByteBuffer pending;
+    private long pendingPosition;
+    private Future<Integer> pendingRead;
+
+    /**
+     * @param channel
+     * @param pool
+     * @param prefetch 窗口是否总是紧接着上一个窗口（按文本行切分时是这样）
+     */
+    AsyncWindowSource(AsynchronousFileChannel channel, DirectBufferPool pool, boolean prefetch) {
+        this.channel = channel;
+        this.pool = pool;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public ByteBuffer open(FileChannel ignored, long position, int size, long limit) throws IOException {
+        ByteBuffer window;
+        if (pending != null && pendingPosition == position && pending.limit() == size) {
+            window = pending;
+            Future<Integer> read = pendingRead;
+            pending = null;
+            pendingRead = null;
+            complete(window, position, read);
+        } else {
+            discardPending();
+            window = pool.acquire(size);
+            complete(window, position, channel.read(window, position));
+        }
+        long next = position + size;
+        if (prefetch && next < limit) {
+            pending = pool.acquire((int) Math.min(size, limit - next));
+            pendingPosition = next;
+            pendingRead = channel.read(pending, next);
+        }
+        return window;
+    }
+
+    @Override
+    public void release(ByteBuffer window) {
+        pool.release(window);
+    }
+
+    /**
+     * 等待已经发起的读取完成，没有读满时继续读取剩下的部分
+     */
+    private void complete(ByteBuffer window, long position, Future<Integer> read) throws IOException {
+        try {
+            while (true) {
+                if (read.get() < 0) {
+                    throw new EOFException("读取位置超出文件末尾：" + (position + window.position()));
+                }
+                if (!window.hasRemaining()) {
+                    break;
+                }
+                read = channel.read(window, position + window.position());
+            }
+        } catch (InterruptedException e) {
+            // 读取可能还在进行，缓冲区交给GC回收
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            pool.release(window);
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (IOException e) {
+            pool.release(window);
+            throw e;
+        }
+        window.flip();
+    }
+
+    /**
+     * 等预读结束后把缓冲区还回池中，读取中的缓冲区不能被别人使用
+     */
+    private void discardPending() {
+        if (pending == null) {
+            return;
+        }
+        ByteBuffer buffer = pending;
+        Future<Integer> read = pendingRead;
+        pending = null;
+        pendingRead = null;
+        try {
+            read.get();
+        } catch (InterruptedException e) {
+            // 读取可能还在进行，缓冲区交给GC回收
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            // 预读的内容不再需要
+        }
+        pool.release(buffer);
+    }
+}
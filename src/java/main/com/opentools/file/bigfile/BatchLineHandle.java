@@ -0,0 +1,17 @@
+package com.opentools.file.bigfile;
+
+/**
+ * 按批处理行，适合JDBC批量插入、Redis pipeline等一批数据对应一次交互的场景
+ *
+ * @author Aaron
+ */
+public interface BatchLineHandle {
+
+    /**
+     * 处理一批行
+     *
+     * @param batch 复用的批次，只在本次调用内有效，需要保留时自行拷贝
+     */
+    public void handle(LineBatch batch);
+
+}
@@ -0,0 +1,213 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * 并行聚合大文件中的所有行，用法和Collector一样
+ * <p>
+ * 每个分片线程用supplier创建自己的累加器，扫描时只写自己的累加器，线程之间没有共享状态也没有锁；
+ * 全部分片读完后按文件顺序用combiner合并，所以combiner不要求满足交换律，最后调用finisher。
+ * <p>
+ * collect交给累加器的ByteBuffer是复用的视图，只在这次调用中有效，需要保留的内容必须拷贝出来；
+ * collectLines先按设置的charset解码成String。默认按文本行切分（空行跳过），也可以通过RecordFraming按其它格式切分
+ *
+ * @author Aaron
+ */
+public class BigFileAggregator {
+
+    private final File file;
+    private final int threadSize;
+    private final int bufferSize;
+    private final long mapWindowSize;
+    private final String charset;
+    private final RecordFraming framing;
+    private final ExecutorService executorService;
+
+    private BigFileAggregator(Builder builder) {
+        this.file = builder.file;
+        this.threadSize = builder.threadSize;
+        this.bufferSize = builder.bufferSize;
+        this.mapWindowSize = builder.mapWindowSize;
+        this.charset = builder.charset;
+        this.framing = builder.framing;
+        this.executorService = Executors.newFixedThreadPool(threadSize);
+    }
+
+    /**
+     * 按字节聚合
+     *
+     * @param supplier    每个分片创建一个累加器
+     * @param accumulator 把一行累加到累加器中
+     * @param combiner    合并两个分片的累加器，可以返回其中一个
+     * @return 全部聚合完后完成，读取或聚合失败时以异常完成
+     */
+    public <A> CompletableFuture<A> aggregate(Supplier<A> supplier, BiConsumer<A, ByteBuffer> accumulator,
+                                              BinaryOperator<A> combiner) {
+        return collect(Collector.of(supplier, accumulator, combiner));
+    }
+
+    /**
+     * 按字节聚合，交给累加器的ByteBuffer是复用的视图
+     *
+     * @param collector
+     * @return
+     */
+    public <A, R> CompletableFuture<R> collect(final Collector<? super ByteBuffer, A, R> collector) {
+        return run(collector, container -> {
+            final BiConsumer<A, ? super ByteBuffer> accumulator = collector.accumulator();
+            return line -> accumulator.accept(container, line);
+        });
+    }
+
+    /**
+     * 解码成String后聚合
+     *
+     * @param collector
+     * @return
+     */
+    public <A, R> CompletableFuture<R> collectLines(final Collector<? super String, A, R> collector) {
+        return run(collector, container -> {
+            final BiConsumer<A, ? super String> accumulator = collector.accumulator();
+            return new FileHandleAdapter(line -> accumulator.accept(container, line), charset);
+        });
+    }
+
+    private <A, R> CompletableFuture<R> run(final Collector<?, A, R> collector,
+                                            final Function<A, ByteLineHandle> handles) {
+        final RandomAccessFile rAccessFile;
+        final List<StartEndPair> startEndPairs;
+        try {
+            rAccessFile = new RandomAccessFile(file, "r");
+        } catch (IOException e) {
+            return ReaderSupport.failed(e);
+        }
+        final FileChannel channel = rAccessFile.getChannel();
+        try {
+            long fileLength = channel.size();
+            startEndPairs = new ArrayList<StartEndPair>();
+            framing.slice(channel, startEndPairs, fileLength, 0, Math.max(1, fileLength / threadSize));
+        } catch (IOException e) {
+            ReaderSupport.close(rAccessFile);
+            return ReaderSupport.failed(e);
+        }
+        final List<CompletableFuture<A>> slices = new ArrayList<CompletableFuture<A>>(startEndPairs.size());
+        for (final StartEndPair pair : startEndPairs) {
+            slices.add(CompletableFuture.supplyAsync(() -> {
+                A container = collector.supplier().get();
+                ByteLineHandle handle = handles.apply(container);
+                RecordReader scanner = framing.newReader(mapWindowSize,
+                        (int) Math.min(bufferSize, pair.end - pair.start + 1));
+                try {
+                    scanner.scan(channel, pair.start, pair.end, new AccumulatorSink(handle));
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                return container;
+            }, executorService));
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[slices.size()]));
+        all.whenComplete((v, e) -> ReaderSupport.close(rAccessFile));
+        return all.thenApply(v -> {
+            // 按文件顺序合并
+            A result = slices.isEmpty() ? collector.supplier().get() : slices.get(0).join();
+            for (int i = 1; i < slices.size(); i++) {
+                result = collector.combiner().apply(result, slices.get(i).join());
+            }
+            return collector.finisher().apply(result);
+        });
+    }
+
+    /**
+     * 停止线程池
+     */
+    public void shutdown() {
+        this.executorService.shutdown();
+    }
+
+    private static class AccumulatorSink implements SliceSink {
+        private final ByteLineHandle handle;
+
+        AccumulatorSink(ByteLineHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public void handle(ByteBuffer line) {
+            handle.handle(line);
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+
+    public static class Builder extends ReaderBuilder<Builder> {
+        private long mapWindowSize = BigFileReader.DEFAULT_MAP_WINDOW_SIZE;
+        private RecordFraming framing = RecordFraming.LINES;
+        private File file;
+
+        public Builder(String file) {
+            this.file = ReaderSupport.existingFile(file);
+        }
+
+        /**
+         * collectLines解码使用的编码，为null时使用平台默认编码
+         *
+         * @param charset
+         * @return
+         */
+        @Override
+        public Builder withCharset(String charset) {
+            return super.withCharset(charset);
+        }
+
+        /**
+         * 设置每次映射的窗口大小
+         *
+         * @param mapWindowSize 不能超过Integer.MAX_VALUE
+         * @return
+         */
+        public Builder withMapWindowSize(long mapWindowSize) {
+            this.mapWindowSize = ReaderSupport.checkMapWindowSize(mapWindowSize);
+            return this;
+        }
+
+        /**
+         * 设置记录的切分方式，默认按文本行切分
+         *
+         * @param framing
+         * @return
+         */
+        public Builder withRecordFraming(RecordFraming framing) {
+            if (framing == null)
+                throw new IllegalArgumentException("记录格式不能为空！");
+            this.framing = framing;
+            return this;
+        }
+
+        @Override
+        Builder self() {
+            return this;
+        }
+
+        public BigFileAggregator build() {
+            checkThreadSize();
+            return new BigFileAggregator(this);
+        }
+    }
+}
@@ -1,247 +1,887 @@
 package com.opentools.file.bigfile;
 
 import java.io.*;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel.MapMode;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.CyclicBarrier;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.opentools.common.VirtualThreadUtils;
 
 /**
- * 大文件读取，支持多核处理器处理大文件，读出的每行数据不按文件写入顺序
+ * 大文件读取，支持多核处理器处理大文件，读出的每行数据默认不按文件写入顺序
+ * <p>
+ * 设置OrderedFileHandle后进入有序模式：各分片仍然并行解码，但经过有界的重排缓冲区后
+ * 在单个线程中严格按文件顺序交给OrderedFileHandle，并附带行序号
+ * <p>
+ * 每个分片按映射窗口逐段映射，单个分片超过2G（MappedByteBuffer的上限）时也能读取，
+ * 跨窗口的行会拼接后再处理，读完的窗口会立即释放
+ * <p>
+ * 行直接在映射的缓冲区上查找，以ByteLineHandle接收时整个过程不产生垃圾对象，
+ * FileHandle通过FileHandleAdapter解码成String后接收，CharSequenceHandle接收每个线程复用的CharBuffer，
+ * 纯ASCII的行不经过CharsetDecoder
+ * <p>
+ * start()返回的CompletableFuture在所有行处理完后完成，结果中带有每个分片和总体的统计，
+ * 读取失败时以异常完成。同一个reader可以多次start()，不再使用时调用shutdown()释放文件和线程
+ * <p>
+ * 开启流水线模式后，分片线程只负责扫描，行按批放入有界的环形缓冲区，由单独的处理线程池调用handle，
+ * 慢的handle不会拖住I/O，两边的线程数可以分别调整，统计见ReadResult#getPipelineStats()
+ * <p>
+ * BatchLineHandle按批接收行，每个分片线程复用自己的批次，按行数或字节数攒满一批后调用一次
+ * <p>
+ * 跟随模式下并行读完已有的完整行后，继续轮询文件并只读取新追加的内容，处理截断和轮转，
+ * 直到调用stop()，start()返回的CompletableFuture在此之后才完成
+ * <p>
+ * 开启检查点后定期把每个分片已经处理完的位置写入旁边的检查点文件，全部读完后删除；
+ * 进程中途退出时，设置resume后再次start()只读取各分片没有处理完的部分
+ * <p>
+ * 默认按文本行切分，也可以通过RecordFraming按多字节分隔符、定长记录或长度前缀切分二进制记录，
+ * 分片边界对齐到记录边界，handle收到的每一"行"就是一条记录的内容
+ * <p>
+ * 分片的读取方式由IoEngine决定：默认内存映射，也可以按位置读取或者用AsynchronousFileChannel读取到池化的直接缓冲区，
+ * 避免网络文件系统和冷数据上页面缺失阻塞线程；开启虚拟线程后每个分片在一个虚拟线程中读取（需要JDK21，
+ * 不支持时使用普通的线程池）。跟随模式读取新追加的内容时总是使用内存映射
+ * <p>
+ * 开启动态分块后文件不再均分成threadSize个分片，而是切成很多小块，空闲的线程从共用的游标领取下一块，
+ * 块的大小根据测得的吞吐量自动调整，个别慢的块（handle耗时不均、冷页面）不会拖住整体，结果中每块是一个分片
  *
  * @author Aaron
  */
 public class BigFileReader {
 
+    /**
+     * 默认映射窗口大小256M
+     */
+    public static final long DEFAULT_MAP_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * PREAD和ASYNC默认每次读取4M
+     */
+    public static final int DEFAULT_READ_WINDOW_SIZE = 4 * 1024 * 1024;
+
     private int threadSize;
-    private String charset;
     private int bufferSize;
-    private FileHandle handle;
+    private long mapWindowSize;
+    private ByteLineHandle handle;
+    private OrderedFileHandle orderedHandle;
+    private BatchLineHandle batchHandle;
+    private int batchLines;
+    private int batchBytes;
+    private String charset;
+    private int reorderChunks;
+    private int reorderChunkLines;
+    private int pipelineThreads;
+    private int pipelineRingSize;
+    private int pipelineBatchLines;
     private ExecutorService executorService;
-    private long fileLength;
+    private ExecutorService pipelineExecutor;
+    private File file;
+    private long followIntervalMillis;
+    private volatile FileFollower follower;
+    /**
+     * 本次start()之后调用过stop()，跟随线程还没有创建时由它在创建后检查
+     */
+    private volatile boolean stopped;
+    private File checkpointFile;
+    private long checkpointIntervalMillis;
+    private boolean resume;
+    private RecordFraming framing;
+    private IoEngine ioEngine;
+    private int readWindowSize;
+    private DirectBufferPool bufferPool;
+    private AsynchronousFileChannel asyncChannel;
+    private long chunkTargetNanos;
+    private long minChunkSize;
+    private long maxChunkSize;
     private RandomAccessFile rAccessFile;
-    private Set<StartEndPair> startEndPairs;
-    private CyclicBarrier cyclicBarrier;
-    private AtomicLong counter = new AtomicLong(0);
-
-    private BigFileReader(File file, FileHandle handle, String charset,
-                          int bufferSize, int threadSize) {
-        this.fileLength = file.length();
-        this.handle = handle;
-        this.charset = charset;
-        this.bufferSize = bufferSize;
-        this.threadSize = threadSize;
+    /**
+     * 构造时打开文件失败的异常，start()以它异常完成
+     */
+    private IOException openFailure;
+    private volatile boolean shutdown;
+
+    private BigFileReader(Builder builder) {
+        this.handle = builder.lineHandle();
+        this.orderedHandle = builder.orderedHandle;
+        this.batchHandle = builder.batchHandle;
+        this.batchLines = builder.batchLines;
+        this.batchBytes = builder.batchBytes;
+        this.charset = builder.charset;
+        this.reorderChunks = builder.reorderChunks;
+        this.reorderChunkLines = builder.reorderChunkLines;
+        this.bufferSize = builder.bufferSize;
+        this.threadSize = builder.threadSize;
+        this.mapWindowSize = builder.mapWindowSize;
+        this.file = builder.file;
+        this.followIntervalMillis = builder.followIntervalMillis;
+        this.checkpointFile = builder.checkpointFile;
+        this.checkpointIntervalMillis = builder.checkpointIntervalMillis;
+        this.resume = builder.resume;
+        this.framing = builder.framing;
+        this.ioEngine = builder.ioEngine;
+        this.readWindowSize = builder.readWindowSize;
+        this.chunkTargetNanos = TimeUnit.MILLISECONDS.toNanos(builder.chunkTargetMillis);
+        this.minChunkSize = builder.minChunkSize;
+        this.maxChunkSize = builder.maxChunkSize;
         try {
-            this.rAccessFile = new RandomAccessFile(file, "r");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            this.rAccessFile = new RandomAccessFile(builder.file, "r");
+            if (ioEngine == IoEngine.ASYNC) {
+                this.asyncChannel = AsynchronousFileChannel.open(builder.file.toPath(), StandardOpenOption.READ);
+            }
+        } catch (IOException e) {
+            this.openFailure = e;
+        }
+        if (ioEngine != IoEngine.MMAP) {
+            this.bufferPool = new DirectBufferPool(readWindowSize);
+        }
+        this.pipelineThreads = builder.pipelineThreads;
+        this.pipelineRingSize = builder.pipelineRingSize;
+        this.pipelineBatchLines = builder.pipelineBatchLines;
+        if (builder.virtualThreads) {
+            this.executorService = VirtualThreadUtils.newVirtualThreadPerTaskExecutor();
+        }
+        if (this.executorService == null) {
+            this.executorService = Executors.newFixedThreadPool(threadSize);
+        }
+        if (pipelineThreads > 0) {
+            this.pipelineExecutor = Executors.newFixedThreadPool(pipelineThreads);
         }
-        this.executorService = Executors.newFixedThreadPool(threadSize);
-        startEndPairs = new HashSet<BigFileReader.StartEndPair>();
     }
 
-    public void start() {
-        long everySize = this.fileLength / this.threadSize;
+    /**
+     * 开始读取，立即返回
+     *
+     * @return 所有行处理完后完成（跟随模式下在stop()之后完成），任一分片或有序模式的消费失败时以异常完成
+     */
+    public CompletableFuture<ReadResult> start() {
+        if (shutdown) {
+            throw new IllegalStateException("reader已经关闭！");
+        }
+        if (openFailure != null) {
+            return ReaderSupport.failed(openFailure);
+        }
+        this.stopped = false;
+        final List<StartEndPair> startEndPairs = new ArrayList<StartEndPair>();
+        final long fileLength;
+        ChunkCursor cursor = null;
         try {
-            calculateStartEnd(0, everySize);
+            FileChannel channel = rAccessFile.getChannel();
+            // 跟随模式下最后一行可能还没写完，只并行读到最后一个换行符，剩下的交给跟随线程
+            fileLength = followIntervalMillis > 0
+                    ? FileFollower.completeLength(channel, 0, channel.size()) : channel.size();
+            List<StartEndPair> unfinished = resume
+                    ? Checkpoint.unfinished(checkpointFile, file, fileLength) : null;
+            if (unfinished != null) {
+                // 只读取没有处理完的范围，按剩余的总量重新划分分片
+                long remaining = 0;
+                for (StartEndPair range : unfinished) {
+                    remaining += range.end - range.start + 1;
+                }
+                long everySize = Math.max(1, remaining / this.threadSize);
+                for (StartEndPair range : unfinished) {
+                    framing.slice(channel, startEndPairs, range.end + 1, range.start, everySize);
+                }
+            } else if (chunkTargetNanos > 0) {
+                // 动态分块，块在读取过程中按需划分
+                cursor = new ChunkCursor(channel, framing, 0, fileLength, threadSize,
+                        chunkTargetNanos, minChunkSize, maxChunkSize);
+            } else {
+                long everySize = Math.max(1, fileLength / this.threadSize);
+                framing.slice(channel, startEndPairs, fileLength, 0, everySize);
+            }
         } catch (IOException e) {
-            e.printStackTrace();
-            return;
+            return ReaderSupport.failed(e);
         }
 
-        final long startTime = System.currentTimeMillis();
-        cyclicBarrier = new CyclicBarrier(startEndPairs.size(), new Runnable() {
-
-            @Override
-            public void run() {
-                System.out.println("use time: "
-                        + (System.currentTimeMillis() - startTime));
-                System.out.println("all line: " + counter.get());
+        final long startTime = System.nanoTime();
+        final Checkpoint checkpoint = checkpointFile != null
+                ? new Checkpoint(checkpointFile, file, fileLength, startEndPairs) : null;
+        List<CompletableFuture<List<ReadResult.SliceResult>>> slices =
+                new ArrayList<CompletableFuture<List<ReadResult.SliceResult>>>(startEndPairs.size());
+        CompletableFuture<Void> ordered = CompletableFuture.completedFuture(null);
+        final ReorderBuffer reorderBuffer;
+        if (orderedHandle != null) {
+            reorderBuffer = new ReorderBuffer(orderedHandle, charset,
+                    startEndPairs.size(), reorderChunks, reorderChunkLines);
+            ordered = CompletableFuture.runAsync(reorderBuffer,
+                    command -> new Thread(command, "BigFileReader-ordered").start());
+        } else {
+            reorderBuffer = null;
+        }
+        CompletableFuture<Void> handlers = CompletableFuture.completedFuture(null);
+        final Charset lineCharset = charset == null ? Charset.defaultCharset() : Charset.forName(charset);
+        final LinePipeline pipeline = pipelineThreads > 0 ? new LinePipeline(
+                batchHandle != null ? batchHandle : LinePipeline.lines(handle), threadSize,
+                pipelineThreads, pipelineRingSize, pipelineBatchLines, batchBytes, lineCharset) : null;
+        if (pipeline != null) {
+            handlers = pipeline.startHandlers(pipelineExecutor);
+        }
+        if (cursor != null) {
+            // 每个线程一个任务，循环领取块直到没有剩余
+            for (int i = 0; i < threadSize; i++) {
+                SliceSink sink = pipeline != null ? pipeline.sink() : newSink(lineCharset);
+                slices.add(CompletableFuture.supplyAsync(new ChunkReaderTask(cursor, sink),
+                        this.executorService));
             }
-        });
-        for (StartEndPair pair : startEndPairs) {
-            System.out.println("分配分片：" + pair);
-            this.executorService.execute(new SliceReaderTask(pair));
         }
-    }
+        // 分片按文件顺序提交，有序模式下靠前的分片总是先拿到线程，不会互相等待
+        for (int i = 0; i < startEndPairs.size(); i++) {
+            StartEndPair pair = startEndPairs.get(i);
+            SliceSink sink;
+            if (reorderBuffer != null) {
+                sink = reorderBuffer.sink(i);
+            } else if (pipeline != null) {
+                sink = pipeline.sink();
+            } else {
+                sink = newSink(lineCharset);
+            }
+            slices.add(CompletableFuture.supplyAsync(new SliceReaderTask(i, pair, sink, checkpoint),
+                    this.executorService).thenApply(Collections::singletonList));
+        }
 
-    private void calculateStartEnd(long start, long size) throws IOException {
-        if (start > fileLength - 1) {
-            return;
+        final List<CompletableFuture<List<ReadResult.SliceResult>>> sliceFutures = slices;
+        CompletableFuture<Void> all = CompletableFuture.allOf(
+                slices.toArray(new CompletableFuture<?>[slices.size()]));
+        if (pipeline != null) {
+            // 扫描全部结束（包括失败）后通知处理线程退出
+            all.whenComplete((v, e) -> pipeline.close());
         }
-        StartEndPair pair = new StartEndPair();
-        pair.start = start;
-        long endPosition = start + size - 1;
-        if (endPosition >= fileLength - 1) {
-            pair.end = fileLength - 1;
-            startEndPairs.add(pair);
-            return;
+        final List<ReadResult.SliceResult> results =
+                new ArrayList<ReadResult.SliceResult>(sliceFutures.size() + 1);
+        CompletableFuture<ReadResult> result = all.thenCombine(ordered, (a, b) -> a)
+                .thenCombine(handlers, (a, b) -> {
+                    for (CompletableFuture<List<ReadResult.SliceResult>> future : sliceFutures) {
+                        results.addAll(future.join());
+                    }
+                    // 动态分块时各线程的块交错，按块的序号（也就是文件顺序）排列
+                    results.sort(Comparator.comparingInt(ReadResult.SliceResult::getIndex));
+                    return new ReadResult(results, System.nanoTime() - startTime,
+                            pipeline != null ? pipeline.getStats() : null);
+                });
+        if (checkpoint != null) {
+            result = scheduleCheckpoint(checkpoint, result);
         }
+        if (followIntervalMillis <= 0) {
+            return result;
+        }
+        return result.thenCompose(initial -> {
+            SliceSink sink;
+            if (reorderBuffer != null) {
+                sink = reorderBuffer.tailSink();
+            } else {
+                sink = newSink(lineCharset);
+            }
+            FileFollower current = new FileFollower(results.size(), file, rAccessFile.getChannel(),
+                    fileLength, sink, new SliceScanner(mapWindowSize, bufferSize), followIntervalMillis);
+            this.follower = current;
+            if (shutdown || stopped) {
+                current.stop();
+            }
+            return CompletableFuture.supplyAsync(current,
+                    command -> new Thread(command, "BigFileReader-follow").start())
+                    .thenApply(tail -> {
+                        results.add(tail);
+                        return new ReadResult(results, System.nanoTime() - startTime, null);
+                    });
+        });
+    }
 
-        rAccessFile.seek(endPosition);
-        byte tmp = (byte) rAccessFile.read();
-        while (tmp != '\n' && tmp != '\r') {
-            endPosition++;
-            if (endPosition >= fileLength - 1) {
-                endPosition = fileLength - 1;
-                break;
+    /**
+     * 定期保存检查点，成功读完后删除检查点，失败时保存最后的进度
+     *
+     * @param checkpoint
+     * @param result
+     * @return 删除或保存检查点之后完成
+     */
+    private CompletableFuture<ReadResult> scheduleCheckpoint(final Checkpoint checkpoint,
+                                                             CompletableFuture<ReadResult> result) {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(command -> {
+            Thread thread = new Thread(command, "BigFileReader-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint.save();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        return result.whenComplete((r, e) -> {
+            scheduler.shutdownNow();
+            if (e == null) {
+                checkpoint.delete();
+                return;
             }
-            rAccessFile.seek(endPosition);
-            tmp = (byte) rAccessFile.read();
+            try {
+                checkpoint.save();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * 跟随模式下停止跟随，处理完当前这一轮后start()返回的CompletableFuture完成；
+     * 在读取已有内容的过程中调用时，已有内容读完后直接完成，不再跟随
+     */
+    public void stop() {
+        this.stopped = true;
+        FileFollower current = this.follower;
+        if (current != null) {
+            current.stop();
         }
-        pair.end = endPosition;
-        startEndPairs.add(pair);
+    }
 
-        calculateStartEnd(endPosition + 1, size);
+    /**
+     * 关闭文件并停止线程池，之后不能再调用start()
+     */
+    public void shutdown() {
+        this.shutdown = true;
+        stop();
+        ReaderSupport.close(this.rAccessFile);
+        ReaderSupport.close(this.asyncChannel);
+        this.executorService.shutdown();
+        if (this.pipelineExecutor != null) {
+            this.pipelineExecutor.shutdown();
+        }
+        if (this.bufferPool != null) {
+            this.bufferPool.clear();
+        }
+    }
 
+    /**
+     * 无序模式下一个分片（或动态分块的一个线程）的sink
+     *
+     * @param lineCharset
+     * @return
+     */
+    private SliceSink newSink(Charset lineCharset) {
+        if (batchHandle != null) {
+            return new BatchSink(batchHandle, new LineBatch(batchLines, batchBytes, lineCharset));
+        }
+        return new DirectSink(handle);
     }
 
-    public void shutdown() {
-        try {
-            this.rAccessFile.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * 按IoEngine为一个分片创建窗口的读取方式，异步方式带有预读状态，每个分片一个
+     *
+     * @return
+     */
+    private WindowSource newWindowSource() {
+        switch (ioEngine) {
+            case PREAD:
+                return new ReadWindowSource(bufferPool);
+            case ASYNC:
+                return new AsyncWindowSource(asyncChannel, bufferPool, framing.isLines());
+            default:
+                return WindowSource.MAPPED;
         }
-        this.executorService.shutdown();
     }
 
-    private void handle(byte[] bytes) throws UnsupportedEncodingException {
-        String line = null;
-        if (this.charset == null) {
-            line = new String(bytes);
-        } else {
-            line = new String(bytes, charset);
+    /**
+     * 无序模式下直接把行交给用户的handle
+     */
+    private static class DirectSink implements SliceSink {
+        private final ByteLineHandle handle;
+
+        DirectSink(ByteLineHandle handle) {
+            this.handle = handle;
         }
-        if (line != null && !"".equals(line)) {
-            this.handle.handle(line);
-            counter.incrementAndGet();
+
+        @Override
+        public void handle(ByteBuffer line) {
+            handle.handle(line);
+        }
+
+        @Override
+        public void finish() {
         }
     }
 
-    private static class StartEndPair {
-        public long start;
-        public long end;
+    /**
+     * 按批模式下攒满一批后交给用户的handle，批次在整个分片内复用
+     */
+    private static class BatchSink implements SliceSink {
+        private final BatchLineHandle handle;
+        private final LineBatch batch;
+        private long flushes;
+
+        BatchSink(BatchLineHandle handle, LineBatch batch) {
+            this.handle = handle;
+            this.batch = batch;
+        }
 
         @Override
-        public String toString() {
-            return "star=" + start + ";end=" + end;
+        public void handle(ByteBuffer line) {
+            if (!batch.add(line)) {
+                flush();
+                batch.add(line);
+            }
         }
 
         @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + (int) (end ^ (end >>> 32));
-            result = prime * result + (int) (start ^ (start >>> 32));
-            return result;
+        public void finish() {
+            if (!batch.isEmpty()) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            try {
+                handle.handle(batch);
+                flushes++;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 行交给handle处理完后记录到检查点，按批模式下一批交出后才记录
+     */
+    private static class CheckpointSink implements SliceSink {
+        private final SliceSink delegate;
+        private final BatchSink batch;
+        private final RecordReader scanner;
+        private final Checkpoint checkpoint;
+        private final int index;
+        private long lastLineEnd;
+
+        CheckpointSink(SliceSink delegate, RecordReader scanner, Checkpoint checkpoint, int index) {
+            this.delegate = delegate;
+            this.batch = delegate instanceof BatchSink ? (BatchSink) delegate : null;
+            this.scanner = scanner;
+            this.checkpoint = checkpoint;
+            this.index = index;
+        }
+
+        @Override
+        public void handle(ByteBuffer line) {
+            if (batch == null) {
+                delegate.handle(line);
+                checkpoint.commit(index, scanner.lineEnd());
+                return;
+            }
+            long flushes = batch.flushes;
+            delegate.handle(line);
+            if (batch.flushes != flushes) {
+                // 这一行触发了交出，交出的是它之前的所有行
+                checkpoint.commit(index, lastLineEnd);
+            }
+            lastLineEnd = scanner.lineEnd();
         }
 
         @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            StartEndPair other = (StartEndPair) obj;
-            if (end != other.end)
-                return false;
-            if (start != other.start)
-                return false;
-            return true;
+        public void finish() {
+            delegate.finish();
         }
 
+        @Override
+        public void abort() {
+            delegate.abort();
+        }
     }
 
-    private class SliceReaderTask implements Runnable {
+    private class SliceReaderTask implements Supplier<ReadResult.SliceResult> {
+        private int index;
         private long start;
-        private long sliceSize;
-        private byte[] readBuff;
+        private long end;
+        private SliceSink sink;
+        private Checkpoint checkpoint;
 
         /**
          *
+         * @param index 分片序号
          * @param pair
+         * @param sink 接收这个分片的所有行
+         * @param checkpoint 没有开启检查点时为null
          */
-        public SliceReaderTask(StartEndPair pair) {
+        public SliceReaderTask(int index, StartEndPair pair, SliceSink sink, Checkpoint checkpoint) {
+            this.index = index;
+            this.sink = sink;
+            this.checkpoint = checkpoint;
             this.start = pair.start;
-            this.sliceSize = pair.end - pair.start + 1;
-            this.readBuff = new byte[bufferSize];
+            this.end = pair.end;
         }
 
         @Override
-        public void run() {
+        public ReadResult.SliceResult get() {
+            long startTime = System.nanoTime();
+            long lines;
+            boolean completed = false;
             try {
-                MappedByteBuffer mapBuffer = rAccessFile.getChannel().map(
-                        MapMode.READ_ONLY, start, this.sliceSize);
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                for (int offset = 0; offset < sliceSize; offset += bufferSize) {
-                    int readLength;
-                    if (offset + bufferSize <= sliceSize) {
-                        readLength = bufferSize;
-                    } else {
-                        readLength = (int) (sliceSize - offset);
-                    }
-                    mapBuffer.get(readBuff, 0, readLength);
-                    for (int i = 0; i < readLength; i++) {
-                        byte tmp = readBuff[i];
-                        if (tmp == '\n' || tmp == '\r') {
-                            handle(bos.toByteArray());
-                            bos.reset();
-                        } else {
-                            bos.write(tmp);
-                        }
-                    }
+                long windowSize = ioEngine == IoEngine.MMAP ? mapWindowSize : readWindowSize;
+                RecordReader scanner = framing.newReader(newWindowSource(), windowSize,
+                        (int) Math.min(bufferSize, end - start + 1));
+                if (checkpoint != null) {
+                    sink = new CheckpointSink(sink, scanner, checkpoint, index);
                 }
-                if (bos.size() > 0) {
-                    handle(bos.toByteArray());
+                lines = scanner.scan(rAccessFile.getChannel(), start, end, sink);
+                completed = true;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                if (!completed) {
+                    sink.abort();
                 }
-                cyclicBarrier.await();// 测试性能用
-                bos.close();
-                System.exit(0);
-            } catch (Exception e) {
-                e.printStackTrace();
+                sink.finish();
+            }
+            if (checkpoint != null) {
+                checkpoint.commit(index, end + 1);
             }
+            return new ReadResult.SliceResult(index, start, end, lines,
+                    System.nanoTime() - startTime);
         }
 
     }
 
-    public static class Builder {
-        private int threadSize = 1;
-        private String charset = null;
-        private int bufferSize = 1024 * 1024;
-        private FileHandle handle;
+    /**
+     * 动态分块模式下一个线程的任务，循环领取块，扫描器和sink在所有块之间复用
+     */
+    private class ChunkReaderTask implements Supplier<List<ReadResult.SliceResult>> {
+        private final ChunkCursor cursor;
+        private final SliceSink sink;
+
+        ChunkReaderTask(ChunkCursor cursor, SliceSink sink) {
+            this.cursor = cursor;
+            this.sink = sink;
+        }
+
+        @Override
+        public List<ReadResult.SliceResult> get() {
+            List<ReadResult.SliceResult> chunks = new ArrayList<ReadResult.SliceResult>();
+            long windowSize = ioEngine == IoEngine.MMAP ? mapWindowSize : readWindowSize;
+            RecordReader scanner = framing.newReader(newWindowSource(), windowSize, bufferSize);
+            StartEndPair chunk = new StartEndPair();
+            boolean completed = false;
+            try {
+                int index;
+                while ((index = cursor.claim(chunk)) >= 0) {
+                    long startTime = System.nanoTime();
+                    long lines = scanner.scan(rAccessFile.getChannel(), chunk.start, chunk.end, sink);
+                    long elapsed = System.nanoTime() - startTime;
+                    cursor.report(chunk.end - chunk.start + 1, elapsed);
+                    chunks.add(new ReadResult.SliceResult(index, chunk.start, chunk.end, lines, elapsed));
+                }
+                completed = true;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                if (!completed) {
+                    sink.abort();
+                }
+                sink.finish();
+            }
+            return chunks;
+        }
+    }
+
+    public static class Builder extends LineReaderBuilder<Builder> {
+        private long mapWindowSize = DEFAULT_MAP_WINDOW_SIZE;
+        private OrderedFileHandle orderedHandle;
+        private int reorderChunks = 4;
+        private int reorderChunkLines = 1024;
+        private BatchLineHandle batchHandle;
+        private int batchLines;
+        private int batchBytes = Integer.MAX_VALUE;
+        private int pipelineThreads;
+        private int pipelineRingSize;
+        private int pipelineBatchLines;
+        private long followIntervalMillis;
+        private File checkpointFile;
+        private long checkpointIntervalMillis;
+        private boolean resume;
+        private RecordFraming framing = RecordFraming.LINES;
+        private IoEngine ioEngine = IoEngine.MMAP;
+        private int readWindowSize = DEFAULT_READ_WINDOW_SIZE;
+        private boolean virtualThreads;
+        private long chunkTargetMillis;
+        private long minChunkSize = 64 * 1024;
+        private long maxChunkSize = DEFAULT_MAP_WINDOW_SIZE;
         private File file;
 
         public Builder(String file, FileHandle handle) {
-            this.file = new File(file);
-            if (!this.file.exists())
-                throw new IllegalArgumentException("文件不存在！");
+            this(file);
             this.handle = handle;
         }
 
-        public Builder withTreahdSize(int size) {
-            this.threadSize = size;
+        /**
+         * 只指定文件，处理方式通过withXxxHandle设置
+         *
+         * @param file
+         */
+        public Builder(String file) {
+            this.file = ReaderSupport.existingFile(file);
+        }
+
+        /**
+         * 有序模式，每一行按文件顺序交给handle，使用设置的charset解码
+         *
+         * @param handle
+         * @return
+         */
+        public Builder withOrderedHandle(OrderedFileHandle handle) {
+            this.orderedHandle = handle;
             return this;
         }
 
-        public Builder withCharset(String charset) {
-            this.charset = charset;
+        /**
+         * 设置有序模式下重排缓冲区的大小，每个分片最多缓冲 chunks * chunkLines 行
+         *
+         * @param chunks     每个分片最多缓冲的块数
+         * @param chunkLines 每块的行数
+         * @return
+         */
+        public Builder withReorderBuffer(int chunks, int chunkLines) {
+            if (chunks <= 0 || chunkLines <= 0)
+                throw new IllegalArgumentException("重排缓冲区大小必须大于0！");
+            this.reorderChunks = chunks;
+            this.reorderChunkLines = chunkLines;
+            return this;
+        }
+
+        /**
+         * 按批接收行，每批最多batchLines行
+         *
+         * @param handle
+         * @param batchLines
+         * @return
+         */
+        public Builder withBatchHandle(BatchLineHandle handle, int batchLines) {
+            return withBatchHandle(handle, batchLines, Integer.MAX_VALUE);
+        }
+
+        /**
+         * 按批接收行，行数或字节数任一达到上限就交出一批，使用设置的charset解码。
+         * 流水线模式下批次大小由withPipeline的batchLines和这里的batchBytes决定
+         *
+         * @param handle
+         * @param batchLines 每批最多的行数
+         * @param batchBytes 每批最多的字节数，单行超过时这一行单独成批
+         * @return
+         */
+        public Builder withBatchHandle(BatchLineHandle handle, int batchLines, int batchBytes) {
+            if (batchLines <= 0 || batchBytes <= 0)
+                throw new IllegalArgumentException("批次大小必须大于0！");
+            this.batchHandle = handle;
+            this.batchLines = batchLines;
+            this.batchBytes = batchBytes;
             return this;
         }
 
+        /**
+         * 开启流水线模式，设置的线程数（withTreahdSize）只负责扫描，handle在单独的处理线程池中调用
+         *
+         * @param handlerThreads 处理线程数
+         * @param ringSize       环形缓冲区能容纳的批次数，满了以后扫描线程阻塞
+         * @param batchLines     每批的行数
+         * @return
+         */
+        public Builder withPipeline(int handlerThreads, int ringSize, int batchLines) {
+            if (handlerThreads <= 0 || ringSize <= 0 || batchLines <= 0)
+                throw new IllegalArgumentException("流水线参数必须大于0！");
+            this.pipelineThreads = handlerThreads;
+            this.pipelineRingSize = ringSize;
+            this.pipelineBatchLines = batchLines;
+            return this;
+        }
+
+        /**
+         * 开启跟随模式，读完已有内容后继续读取新追加的行，直到调用stop()
+         *
+         * @param pollIntervalMillis 没有新内容时检查文件大小的间隔
+         * @return
+         */
+        public Builder withFollow(long pollIntervalMillis) {
+            if (pollIntervalMillis <= 0)
+                throw new IllegalArgumentException("轮询间隔必须大于0！");
+            this.followIntervalMillis = pollIntervalMillis;
+            return this;
+        }
+
+        /**
+         * 开启检查点，检查点文件为源文件名加.checkpoint
+         *
+         * @param intervalMillis 保存检查点的间隔
+         * @return
+         */
+        public Builder withCheckpoint(long intervalMillis) {
+            return withCheckpoint(this.file.getPath() + ".checkpoint", intervalMillis);
+        }
+
+        /**
+         * 开启检查点，定期保存每个分片已经处理完的位置，全部读完后删除检查点文件
+         *
+         * @param checkpointFile 检查点文件
+         * @param intervalMillis 保存检查点的间隔
+         * @return
+         */
+        public Builder withCheckpoint(String checkpointFile, long intervalMillis) {
+            if (intervalMillis <= 0)
+                throw new IllegalArgumentException("检查点间隔必须大于0！");
+            this.checkpointFile = new File(checkpointFile);
+            this.checkpointIntervalMillis = intervalMillis;
+            return this;
+        }
+
+        /**
+         * 存在有效的检查点时只读取没有处理完的部分，源文件的长度或修改时间变化后检查点失效，从头读取
+         *
+         * @param resume
+         * @return
+         */
+        public Builder withResume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * 设置记录的切分方式，默认按文本行切分；跟随模式只支持文本行
+         *
+         * @param framing
+         * @return
+         */
+        public Builder withRecordFraming(RecordFraming framing) {
+            if (framing == null)
+                throw new IllegalArgumentException("记录格式不能为空！");
+            this.framing = framing;
+            return this;
+        }
+
+        /**
+         * 设置读取分片的方式，默认MMAP
+         *
+         * @param ioEngine
+         * @return
+         */
+        public Builder withIoEngine(IoEngine ioEngine) {
+            return withIoEngine(ioEngine, DEFAULT_READ_WINDOW_SIZE);
+        }
+
+        /**
+         * 设置读取分片的方式
+         *
+         * @param ioEngine
+         * @param readWindowSize PREAD和ASYNC每次读取的字节数，也是池中直接缓冲区的大小；MMAP的窗口由withMapWindowSize设置
+         * @return
+         */
+        public Builder withIoEngine(IoEngine ioEngine, int readWindowSize) {
+            if (ioEngine == null)
+                throw new IllegalArgumentException("IoEngine不能为空！");
+            if (readWindowSize <= 0)
+                throw new IllegalArgumentException("读取窗口大小必须大于0！");
+            this.ioEngine = ioEngine;
+            this.readWindowSize = readWindowSize;
+            return this;
+        }
+
+        /**
+         * 每个分片在一个虚拟线程中读取，分片数仍由withTreahdSize决定；JDK不支持虚拟线程时使用普通的线程池
+         *
+         * @param virtualThreads
+         * @return
+         */
+        public Builder withVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * 开启动态分块，块的大小在64K到256M之间自动调整
+         *
+         * @param targetMillis 每块的目标耗时
+         * @return
+         */
+        public Builder withAdaptiveChunks(long targetMillis) {
+            return withAdaptiveChunks(targetMillis, 64 * 1024, DEFAULT_MAP_WINDOW_SIZE);
+        }
+
+        /**
+         * 开启动态分块，文件切成很多小块由空闲的线程领取，块的大小按测得的吞吐量调整到接近目标耗时
+         *
+         * @param targetMillis 每块的目标耗时
+         * @param minChunkSize 块的最小字节数
+         * @param maxChunkSize 块的最大字节数
+         * @return
+         */
+        public Builder withAdaptiveChunks(long targetMillis, long minChunkSize, long maxChunkSize) {
+            if (targetMillis <= 0)
+                throw new IllegalArgumentException("目标耗时必须大于0！");
+            if (minChunkSize <= 0 || maxChunkSize < minChunkSize)
+                throw new IllegalArgumentException("块大小的范围不正确！");
+            this.chunkTargetMillis = targetMillis;
+            this.minChunkSize = minChunkSize;
+            this.maxChunkSize = maxChunkSize;
+            return this;
+        }
+
+        /**
+         * 设置每次映射的窗口大小，分片大于窗口时按窗口逐段映射
+         *
+         * @param mapWindowSize 不能超过Integer.MAX_VALUE
+         * @return
+         */
+        public Builder withMapWindowSize(long mapWindowSize) {
+            this.mapWindowSize = ReaderSupport.checkMapWindowSize(mapWindowSize);
+            return this;
+        }
+
+        // 以下三个方法是最早公开的，保留返回Builder的签名，已经编译好的调用方不需要重新编译
+
+        @Override
+        public Builder withTreahdSize(int size) {
+            return super.withTreahdSize(size);
+        }
+
+        @Override
+        public Builder withCharset(String charset) {
+            return super.withCharset(charset);
+        }
+
+        @Override
         public Builder withBufferSize(int bufferSize) {
-            this.bufferSize = bufferSize;
+            return super.withBufferSize(bufferSize);
+        }
+
+        @Override
+        Builder self() {
             return this;
         }
 
         public BigFileReader build() {
-            return new BigFileReader(this.file, this.handle, this.charset,
-                    this.bufferSize, this.threadSize);
+            int handles = lineHandles() + (this.orderedHandle != null ? 1 : 0) + (this.batchHandle != null ? 1 : 0);
+            if (handles == 0)
+                throw new IllegalStateException("没有设置处理每一行的handle！");
+            if (handles > 1)
+                throw new IllegalStateException("只能设置一种handle！");
+            if (this.orderedHandle != null && this.pipelineThreads > 0)
+                throw new IllegalStateException("有序模式不能和流水线模式同时使用！");
+            if (this.followIntervalMillis > 0 && this.pipelineThreads > 0)
+                throw new IllegalStateException("跟随模式不能和流水线模式同时使用！");
+            if (this.followIntervalMillis > 0 && !this.framing.isLines())
+                throw new IllegalStateException("跟随模式只支持按文本行切分！");
+            if (this.checkpointFile != null && (this.orderedHandle != null || this.pipelineThreads > 0
+                    || this.followIntervalMillis > 0))
+                throw new IllegalStateException("检查点只支持handle、byteLineHandle、charSequenceHandle和batchHandle！");
+            if (this.chunkTargetMillis > 0 && (this.orderedHandle != null || this.checkpointFile != null))
+                throw new IllegalStateException("动态分块不能和有序模式、检查点同时使用！");
+            if (this.resume && this.checkpointFile == null)
+                throw new IllegalStateException("resume需要先开启检查点！");
+            checkThreadSize();
+            return new BigFileReader(this);
         }
     }
 }
\ No newline at end of file
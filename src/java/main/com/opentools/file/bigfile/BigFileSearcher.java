@@ -0,0 +1,257 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 在大文件中并行查找包含指定字符串的行，相当于多线程的grep -F
+ * <p>
+ * 模式先按charset编码成字节，各分片线程直接在映射的缓冲区上用Boyer-Moore-Horspool查找，
+ * 只有匹配的行才会解码成String交给MatchHandle，其它行既不解码也不拷贝。
+ * 映射窗口的结束位置对齐到换行符，行和匹配都不会跨窗口。
+ * 行以\n或\r分隔，所以模式中不能包含换行符
+ *
+ * @author Aaron
+ */
+public class BigFileSearcher {
+
+    private final File file;
+    private final int threadSize;
+    private final long mapWindowSize;
+    private final Charset charset;
+    private final HorspoolMatcher matcher;
+    private final ExecutorService executorService;
+
+    private BigFileSearcher(Builder builder) {
+        this.file = builder.file;
+        this.threadSize = builder.threadSize;
+        this.mapWindowSize = builder.mapWindowSize;
+        this.charset = builder.charset == null ? Charset.defaultCharset() : Charset.forName(builder.charset);
+        byte[][] patterns = new byte[builder.patterns.size()][];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = builder.patterns.get(i).getBytes(this.charset);
+        }
+        this.matcher = new HorspoolMatcher(patterns);
+        this.executorService = Executors.newFixedThreadPool(threadSize);
+    }
+
+    /**
+     * 查找所有匹配的行，每行只交出一次
+     *
+     * @param handle 在各分片线程中并发调用
+     * @return 全部查找完后完成，值为匹配的行数
+     */
+    public CompletableFuture<Long> search(MatchHandle handle) {
+        return run(handle);
+    }
+
+    /**
+     * 只统计匹配的行数，不解码
+     *
+     * @return
+     */
+    public CompletableFuture<Long> count() {
+        return run(null);
+    }
+
+    private CompletableFuture<Long> run(final MatchHandle handle) {
+        final RandomAccessFile rAccessFile;
+        final List<StartEndPair> startEndPairs;
+        try {
+            rAccessFile = new RandomAccessFile(file, "r");
+        } catch (IOException e) {
+            return ReaderSupport.failed(e);
+        }
+        final FileChannel channel = rAccessFile.getChannel();
+        try {
+            startEndPairs = FileSlicer.slice(channel, channel.size(), threadSize);
+        } catch (IOException e) {
+            ReaderSupport.close(rAccessFile);
+            return ReaderSupport.failed(e);
+        }
+        final List<CompletableFuture<Long>> slices = new ArrayList<CompletableFuture<Long>>(startEndPairs.size());
+        for (final StartEndPair pair : startEndPairs) {
+            slices.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return new SliceSearch(channel, handle).search(pair.start, pair.end);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executorService));
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[slices.size()]));
+        all.whenComplete((v, e) -> ReaderSupport.close(rAccessFile));
+        return all.thenApply(v -> {
+            long matches = 0;
+            for (CompletableFuture<Long> slice : slices) {
+                matches += slice.join();
+            }
+            return matches;
+        });
+    }
+
+    /**
+     * 停止线程池
+     */
+    public void shutdown() {
+        this.executorService.shutdown();
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * 在一个分片中查找，一个实例只在一个线程中使用
+     */
+    private class SliceSearch {
+        private final FileChannel channel;
+        private final MatchHandle handle;
+        private byte[] scratch = new byte[256];
+
+        SliceSearch(FileChannel channel, MatchHandle handle) {
+            this.channel = channel;
+            this.handle = handle;
+        }
+
+        long search(long start, long end) throws IOException {
+            long matches = 0;
+            long position = start;
+            while (position <= end) {
+                long size = Math.min(mapWindowSize, end - position + 1);
+                MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, size);
+                int limit = (int) size;
+                if (position + size <= end) {
+                    // 不是最后一个窗口时退回到最后一个换行符之后，没有换行符说明一行比窗口还长，扩大窗口
+                    limit = lastSeparator(window, limit) + 1;
+                    while (limit == 0) {
+                        MappedBufferCleaner.unmap(window);
+                        if (size >= Integer.MAX_VALUE)
+                            throw new IOException("单行超过" + Integer.MAX_VALUE + "字节，位置：" + position);
+                        size = Math.min(Math.min(size * 2, Integer.MAX_VALUE), end - position + 1);
+                        window = channel.map(MapMode.READ_ONLY, position, size);
+                        limit = position + size <= end ? lastSeparator(window, (int) size) + 1 : (int) size;
+                    }
+                }
+                try {
+                    matches += searchWindow(window, limit, position);
+                } finally {
+                    MappedBufferCleaner.unmap(window);
+                }
+                position += limit;
+            }
+            return matches;
+        }
+
+        private long searchWindow(MappedByteBuffer window, int limit, long windowBase) {
+            long matches = 0;
+            int from = 0;
+            int match;
+            while (from < limit && (match = matcher.indexOf(window, from, limit)) >= 0) {
+                int lineStart = match;
+                while (lineStart > 0 && !isSeparator(window.get(lineStart - 1))) {
+                    lineStart--;
+                }
+                int lineEnd = match;
+                while (lineEnd < limit && !isSeparator(window.get(lineEnd))) {
+                    lineEnd++;
+                }
+                matches++;
+                if (handle != null) {
+                    int length = lineEnd - lineStart;
+                    if (scratch.length < length) {
+                        scratch = new byte[Math.max(length, scratch.length * 2)];
+                    }
+                    window.position(lineStart);
+                    window.get(scratch, 0, length);
+                    handle.handle(windowBase + lineStart, new String(scratch, 0, length, charset));
+                }
+                // 同一行只交出一次
+                from = lineEnd + 1;
+            }
+            return matches;
+        }
+
+        private int lastSeparator(MappedByteBuffer window, int limit) {
+            for (int i = limit - 1; i >= 0; i--) {
+                if (isSeparator(window.get(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public static class Builder {
+        private int threadSize = 1;
+        private String charset = null;
+        private long mapWindowSize = BigFileReader.DEFAULT_MAP_WINDOW_SIZE;
+        private List<String> patterns = new ArrayList<String>();
+        private File file;
+
+        public Builder(String file) {
+            this.file = ReaderSupport.existingFile(file);
+        }
+
+        /**
+         * 增加一个要查找的字符串，多个字符串之间是或的关系
+         *
+         * @param pattern 不能为空，不能包含换行符
+         * @return
+         */
+        public Builder withPattern(String pattern) {
+            if (pattern == null || pattern.isEmpty())
+                throw new IllegalArgumentException("模式不能为空！");
+            if (pattern.indexOf('\n') >= 0 || pattern.indexOf('\r') >= 0)
+                throw new IllegalArgumentException("模式不能包含换行符！");
+            this.patterns.add(pattern);
+            return this;
+        }
+
+        public Builder withTreahdSize(int size) {
+            this.threadSize = size;
+            return this;
+        }
+
+        /**
+         * 模式编码和匹配行解码使用的编码，为null时使用平台默认编码
+         *
+         * @param charset
+         * @return
+         */
+        public Builder withCharset(String charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * 设置每次映射的窗口大小
+         *
+         * @param mapWindowSize 不能超过Integer.MAX_VALUE
+         * @return
+         */
+        public Builder withMapWindowSize(long mapWindowSize) {
+            this.mapWindowSize = ReaderSupport.checkMapWindowSize(mapWindowSize);
+            return this;
+        }
+
+        public BigFileSearcher build() {
+            if (this.patterns.isEmpty())
+                throw new IllegalStateException("没有设置要查找的字符串！");
+            if (this.threadSize <= 0)
+                throw new IllegalStateException("线程数必须大于0！");
+            return new BigFileSearcher(this);
+        }
+    }
+}
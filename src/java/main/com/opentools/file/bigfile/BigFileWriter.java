@@ -0,0 +1,441 @@
+package com.opentools.file.bigfile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大文件并行写入，和BigFileReader对应，多个线程可以同时写同一个文件
+ * <p>
+ * 默认模式下每个线程先把数据攒在自己的缓冲区中，攒满后通过原子计数器在输出文件中预留一段位置，
+ * 再直接拷贝进按区域映射的文件，线程之间只有一次CAS的竞争。一个线程每次交出的数据是连续的，
+ * 不同线程之间的先后顺序不确定。一个映射区域的每个字节都写入之后立即刷盘并释放映射，
+ * 同时映射的只有正在写入的几个区域。
+ * <p>
+ * 有序模式下每个段写入自己的临时文件，close()时按段的序号依次拼接到输出文件中。
+ * 可以用segment(index)显式指定段，比如处理第i个分片的线程写第i段，输出的顺序就和输入一致；
+ * 直接调用writeLine时每个线程使用自己的段，序号按第一次写入的先后分配。
+ * <p>
+ * 所有写入的线程都结束后再调用close()，close()会交出各线程缓冲区中剩下的数据，并把文件截断到实际长度
+ *
+ * @author Aaron
+ */
+public class BigFileWriter implements Closeable {
+
+    /**
+     * 默认每个映射区域64M
+     */
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+    private final Charset charset;
+    private final byte[] lineSeparator;
+    private final boolean ordered;
+    private final int bufferSize;
+    private final int regionSize;
+    private final RandomAccessFile rAccessFile;
+    private final FileChannel channel;
+    private final AtomicLong position = new AtomicLong();
+    private final AtomicLong nextSegment = new AtomicLong();
+    private final List<Segment> segments = new ArrayList<Segment>();
+    /**
+     * 各线程自己的段，属于writer本身，close()时清空，不会像ThreadLocal那样随线程池的线程一直存活
+     */
+    private final Map<Thread, Segment> threadSegments = new ConcurrentHashMap<Thread, Segment>();
+    /**
+     * 写时复制，新的区域总是放进新数组后再通过volatile发布，无锁读取时不会看到没有构造完的映射
+     */
+    private volatile Region[] regions = new Region[0];
+    private volatile boolean closed;
+
+    private BigFileWriter(Builder builder) throws IOException {
+        this.file = builder.file;
+        this.charset = builder.charset == null ? Charset.defaultCharset() : Charset.forName(builder.charset);
+        this.lineSeparator = builder.lineSeparator.getBytes(this.charset);
+        this.ordered = builder.ordered;
+        this.bufferSize = builder.bufferSize;
+        this.regionSize = builder.regionSize;
+        this.rAccessFile = new RandomAccessFile(file, "rw");
+        this.rAccessFile.setLength(0);
+        this.channel = rAccessFile.getChannel();
+    }
+
+    /**
+     * 写入一行，自动加上换行符
+     *
+     * @param line
+     * @throws IOException
+     */
+    public void writeLine(String line) throws IOException {
+        currentSegment().writeLine(line);
+    }
+
+    /**
+     * 写入一段字节，同一次调用写入的内容在文件中总是连续的
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws IOException
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        currentSegment().write(bytes, offset, length);
+    }
+
+    /**
+     * 取得指定序号的段，有序模式下close()时按序号从小到大拼接；默认模式下序号不起作用。
+     * 一个段同时只能在一个线程中使用
+     *
+     * @param index
+     * @return
+     * @throws IOException
+     */
+    public Segment segment(long index) throws IOException {
+        synchronized (segments) {
+            for (Segment segment : segments) {
+                if (segment.index == index) {
+                    return segment;
+                }
+            }
+            return newSegment(index);
+        }
+    }
+
+    private Segment currentSegment() throws IOException {
+        Thread thread = Thread.currentThread();
+        Segment segment = threadSegments.get(thread);
+        if (segment == null) {
+            synchronized (segments) {
+                segment = newSegment(nextSegment.getAndIncrement());
+            }
+            threadSegments.put(thread, segment);
+        }
+        return segment;
+    }
+
+    private Segment newSegment(long index) throws IOException {
+        if (closed)
+            throw new IllegalStateException("writer已经关闭！");
+        Segment segment = new Segment(index);
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * 在输出文件中预留length字节，把数据拷贝到对应的映射区域中
+     */
+    private void append(byte[] bytes, int offset, int length) throws IOException {
+        long start = position.getAndAdd(length);
+        while (length > 0) {
+            int index = (int) (start / regionSize);
+            int inRegion = (int) (start % regionSize);
+            int count = Math.min(length, regionSize - inRegion);
+            Region region = region(index);
+            ByteBuffer target = region.buffer.duplicate();
+            target.position(inRegion);
+            target.put(bytes, offset, count);
+            region.written(count);
+            start += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * 取得第index个映射区域，不存在时映射，文件随之扩展
+     */
+    private Region region(int index) throws IOException {
+        Region[] current = regions;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = regions;
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            Region[] copy = Arrays.copyOf(current, Math.max(current.length, index + 1));
+            copy[index] = new Region(channel.map(MapMode.READ_WRITE, (long) index * regionSize, regionSize));
+            regions = copy;
+            return copy[index];
+        }
+    }
+
+    /**
+     * 交出所有段中剩下的数据，有序模式下拼接所有段，截断文件并关闭
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            synchronized (segments) {
+                if (ordered) {
+                    Collections.sort(segments, new Comparator<Segment>() {
+                        @Override
+                        public int compare(Segment o1, Segment o2) {
+                            return Long.compare(o1.index, o2.index);
+                        }
+                    });
+                }
+                for (Segment segment : segments) {
+                    segment.flush();
+                    if (ordered) {
+                        segment.transferTo(channel);
+                    }
+                }
+            }
+            if (!ordered) {
+                for (Region region : regions) {
+                    if (region != null) {
+                        region.release();
+                    }
+                }
+                regions = new Region[0];
+                // 去掉最后一个映射区域中没有用到的部分
+                channel.truncate(position.get());
+            }
+        } finally {
+            synchronized (segments) {
+                for (Segment segment : segments) {
+                    segment.delete();
+                }
+                segments.clear();
+            }
+            threadSegments.clear();
+            rAccessFile.close();
+        }
+    }
+
+    /**
+     * @return 已经写入的字节数，有序模式下只有close()之后才准确
+     */
+    public long getLength() {
+        return position.get();
+    }
+
+    /**
+     * 一个映射区域，记录已经写入的字节数，写满时刷盘并释放映射
+     */
+    private class Region {
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger written = new AtomicInteger();
+        private boolean released;
+
+        Region(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * 区域中的位置只会被预留一次，写满之后不会再有线程访问这个映射
+         */
+        void written(int count) {
+            if (written.addAndGet(count) == regionSize) {
+                release();
+            }
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                buffer.force();
+                MappedBufferCleaner.unmap(buffer);
+            }
+        }
+    }
+
+    /**
+     * 输出文件中的一段，内容在文件中连续；默认模式下攒满缓冲区后写入输出文件，有序模式下写入自己的临时文件
+     */
+    public class Segment {
+        private final long index;
+        private final byte[] buffer;
+        private int size;
+        private File tmpFile;
+        private RandomAccessFile tmp;
+
+        private Segment(long index) throws IOException {
+            this.index = index;
+            this.buffer = new byte[bufferSize];
+            if (ordered) {
+                this.tmpFile = File.createTempFile(file.getName() + ".", ".segment", file.getAbsoluteFile().getParentFile());
+                this.tmp = new RandomAccessFile(tmpFile, "rw");
+            }
+        }
+
+        /**
+         * 写入一行，自动加上换行符
+         *
+         * @param line
+         * @throws IOException
+         */
+        public void writeLine(String line) throws IOException {
+            byte[] bytes = line.getBytes(charset);
+            if (size + bytes.length + lineSeparator.length <= buffer.length) {
+                System.arraycopy(bytes, 0, buffer, size, bytes.length);
+                size += bytes.length;
+                System.arraycopy(lineSeparator, 0, buffer, size, lineSeparator.length);
+                size += lineSeparator.length;
+                return;
+            }
+            byte[] withSeparator = new byte[bytes.length + lineSeparator.length];
+            System.arraycopy(bytes, 0, withSeparator, 0, bytes.length);
+            System.arraycopy(lineSeparator, 0, withSeparator, bytes.length, lineSeparator.length);
+            write(withSeparator, 0, withSeparator.length);
+        }
+
+        /**
+         * 写入一段字节，同一次调用写入的内容在文件中总是连续的
+         *
+         * @param bytes
+         * @param offset
+         * @param length
+         * @throws IOException
+         */
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (size + length > buffer.length) {
+                flush();
+            }
+            if (length > buffer.length) {
+                // 比缓冲区还大的直接交出
+                emit(bytes, offset, length);
+                return;
+            }
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        /**
+         * 交出缓冲区中的数据
+         *
+         * @throws IOException
+         */
+        public void flush() throws IOException {
+            if (size > 0) {
+                emit(buffer, 0, size);
+                size = 0;
+            }
+        }
+
+        private void emit(byte[] bytes, int offset, int length) throws IOException {
+            if (tmp != null) {
+                tmp.write(bytes, offset, length);
+            } else {
+                append(bytes, offset, length);
+            }
+        }
+
+        private void transferTo(FileChannel target) throws IOException {
+            FileChannel source = tmp.getChannel();
+            long length = source.size();
+            long transferred = 0;
+            while (transferred < length) {
+                transferred += source.transferTo(transferred, length - transferred, target);
+            }
+            position.addAndGet(length);
+        }
+
+        private void delete() {
+            if (tmp != null) {
+                try {
+                    tmp.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                tmpFile.delete();
+            }
+        }
+    }
+
+    public static class Builder {
+        private File file;
+        private String charset = null;
+        private String lineSeparator = "\n";
+        private boolean ordered;
+        private int bufferSize = 64 * 1024;
+        private int regionSize = DEFAULT_REGION_SIZE;
+
+        /**
+         * @param file 已经存在时会被覆盖
+         */
+        public Builder(String file) {
+            this.file = new File(file);
+        }
+
+        public Builder withCharset(String charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * 设置writeLine使用的换行符，默认\n
+         *
+         * @param lineSeparator
+         * @return
+         */
+        public Builder withLineSeparator(String lineSeparator) {
+            this.lineSeparator = lineSeparator;
+            return this;
+        }
+
+        /**
+         * 有序模式，每个段写入临时文件，close()时按段的序号拼接
+         *
+         * @param ordered
+         * @return
+         */
+        public Builder withOrdered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * 设置每个线程（段）的缓冲区大小
+         *
+         * @param bufferSize
+         * @return
+         */
+        public Builder withBufferSize(int bufferSize) {
+            if (bufferSize <= 0)
+                throw new IllegalArgumentException("缓冲区大小必须大于0！");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * 设置每次映射的区域大小，文件按区域扩展
+         *
+         * @param regionSize
+         * @return
+         */
+        public Builder withRegionSize(int regionSize) {
+            if (regionSize <= 0)
+                throw new IllegalArgumentException("映射区域大小必须大于0！");
+            this.regionSize = regionSize;
+            return this;
+        }
+
+        public BigFileWriter build() throws IOException {
+            return new BigFileWriter(this);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 近似去重：堆外的布隆过滤器，不保存行的位置，内存只和预计行数、误判率有关
+ * <p>
+ * 误判时一个没有出现过的行会被当成重复丢掉，重复的行一定会被识别出来。
+ * 过滤器按哈希的高位分成多个分区，一行的k个位都落在同一个分区中，检查和设置在分区锁内一次完成
+ *
+ * @author Aaron
+ */
+final class BloomFingerprintSet implements FingerprintSet {
+
+    private static final long MAX_PARTITION_BITS = 1L << 33;
+    private static final int MIN_PARTITIONS = 256;
+
+    private final OffHeapStore store;
+    private final ByteBuffer[] partitions;
+    private final int partitionShift;
+    private final long bitMask;
+    private final int hashes;
+
+    /**
+     * @param store
+     * @param expectedLines     预计的不同行数
+     * @param falsePositiveRate 误判率，比如0.001
+     * @throws IOException
+     */
+    BloomFingerprintSet(OffHeapStore store, long expectedLines, double falsePositiveRate) throws IOException {
+        this.store = store;
+        long n = Math.max(expectedLines, 1);
+        double bits = -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.hashes = Math.max(1, (int) Math.round(bits / n * Math.log(2)));
+        long totalBits = Long.highestOneBit(Math.max((long) Math.ceil(bits), 64) - 1) << 1;
+        int count = MIN_PARTITIONS;
+        while (totalBits / count > MAX_PARTITION_BITS) {
+            count <<= 1;
+        }
+        long partitionBits = Math.max(64, totalBits / count);
+        this.partitions = new ByteBuffer[count];
+        this.partitionShift = 64 - Integer.numberOfTrailingZeros(count);
+        this.bitMask = partitionBits - 1;
+        for (int i = 0; i < count; i++) {
+            partitions[i] = store.allocate((int) (partitionBits >>> 3));
+        }
+    }
+
+    @Override
+    public boolean add(ByteBuffer line, long hash, long offset) {
+        ByteBuffer partition = partitions[(int) (hash >>> partitionShift)];
+        // 双重哈希生成k个位置
+        long h2 = Long.rotateLeft(hash * 0x9E3779B97F4A7C15L, 31) | 1;
+        boolean added = false;
+        synchronized (partition) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = (hash + i * h2) & bitMask;
+                int index = (int) (bit >>> 3);
+                byte b = partition.get(index);
+                int flag = 1 << (bit & 7);
+                if ((b & flag) == 0) {
+                    partition.put(index, (byte) (b | flag));
+                    added = true;
+                }
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
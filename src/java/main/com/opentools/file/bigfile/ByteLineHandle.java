@@ -0,0 +1,20 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按字节处理每一行，不做解码也不创建String，适合只需要过滤、计数的场景
+ *
+ * @author Aaron
+ */
+public interface ByteLineHandle {
+
+    /**
+     * 处理一行数据
+     *
+     * @param line 复用的只读视图，position到limit之间是这一行的内容（不含换行符），
+     *             只在本次调用内有效，需要保留时自行拷贝
+     */
+    public void handle(ByteBuffer line);
+
+}
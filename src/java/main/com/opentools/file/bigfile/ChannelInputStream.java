@@ -0,0 +1,48 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 从文件的指定位置开始按位置读取的输入流，不改变channel的position，多个流可以在不同线程中共用同一个channel
+ *
+ * @author Aaron
+ */
+final class ChannelInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private long position;
+
+    ChannelInputStream(FileChannel channel, long position) {
+        this.channel = channel;
+        this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    /**
+     * 返回文件中剩余的字节数，GZIPInputStream读完一个成员后靠它判断后面是否还有成员，返回0时会把剩下的成员当作文件末尾
+     */
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - position));
+    }
+}
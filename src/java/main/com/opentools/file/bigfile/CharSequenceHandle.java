@@ -0,0 +1,17 @@
+package com.opentools.file.bigfile;
+
+/**
+ * 按字符处理每一行，不创建String，适合解析、比较等不需要保留整行的场景
+ *
+ * @author Aaron
+ */
+public interface CharSequenceHandle {
+
+    /**
+     * 处理一行数据
+     *
+     * @param line 复用的CharBuffer，只在本次调用内有效，需要保留时调用toString()
+     */
+    public void handle(CharSequence line);
+
+}
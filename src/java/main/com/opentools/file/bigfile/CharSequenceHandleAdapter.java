@@ -0,0 +1,36 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 把按字节处理的行解码到每个线程复用的CharBuffer中，交给CharSequenceHandle
+ *
+ * @author Aaron
+ */
+public class CharSequenceHandleAdapter implements ByteLineHandle {
+
+    private final CharSequenceHandle handle;
+    private final Charset charset;
+    private final ThreadLocal<LineDecoder> decoder = new ThreadLocal<LineDecoder>();
+
+    /**
+     * @param handle
+     * @param charset 为null时使用平台默认编码
+     */
+    public CharSequenceHandleAdapter(CharSequenceHandle handle, String charset) {
+        this.handle = handle;
+        this.charset = charset == null ? Charset.defaultCharset() : Charset.forName(charset);
+    }
+
+    @Override
+    public void handle(ByteBuffer line) {
+        LineDecoder current = decoder.get();
+        if (current == null) {
+            current = new LineDecoder(charset);
+            decoder.set(current);
+        }
+        this.handle.handle(current.decodeChars(line));
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 断点续读的检查点文件，记录每个分片已经处理完的位置
+ * <p>
+ * 文件格式为properties，记录源文件的长度和修改时间，源文件变化后检查点失效。
+ * 每个分片一行：slice.N=起始位置,结束位置,已处理到的位置
+ *
+ * @author Aaron
+ */
+final class Checkpoint {
+
+    private final File sidecar;
+    private final File file;
+    private final long fileLength;
+    private final long lastModified;
+    private final List<StartEndPair> slices;
+    private final AtomicLongArray committed;
+    /**
+     * 检查点已经删除，之后的save不再写文件
+     */
+    private boolean deleted;
+
+    /**
+     * @param sidecar      检查点文件
+     * @param file         源文件
+     * @param fileLength   本次读取的文件长度
+     * @param slices       本次读取的分片
+     */
+    Checkpoint(File sidecar, File file, long fileLength, List<StartEndPair> slices) {
+        this.sidecar = sidecar;
+        this.file = file;
+        this.fileLength = fileLength;
+        this.lastModified = file.lastModified();
+        this.slices = slices;
+        this.committed = new AtomicLongArray(slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            this.committed.set(i, slices.get(i).start);
+        }
+    }
+
+    /**
+     * 第slice个分片中position之前的行已经处理完
+     *
+     * @param slice
+     * @param position 下一行的起始位置
+     */
+    void commit(int slice, long position) {
+        committed.lazySet(slice, position);
+    }
+
+    /**
+     * 先写临时文件再改名，写到一半崩溃也不会留下损坏的检查点
+     *
+     * @throws IOException
+     */
+    synchronized void save() throws IOException {
+        if (deleted) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("file", file.getAbsolutePath());
+        properties.setProperty("length", String.valueOf(fileLength));
+        properties.setProperty("modified", String.valueOf(lastModified));
+        properties.setProperty("slices", String.valueOf(slices.size()));
+        for (int i = 0; i < slices.size(); i++) {
+            StartEndPair pair = slices.get(i);
+            properties.setProperty("slice." + i, pair.start + "," + pair.end + "," + committed.get(i));
+        }
+        File tmp = new File(sidecar.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            properties.store(out, "BigFileReader checkpoint");
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 全部读完后删除检查点；和save互斥，正在进行的save完成后才删除，之后的save不再重新创建检查点
+     */
+    synchronized void delete() {
+        deleted = true;
+        sidecar.delete();
+    }
+
+    /**
+     * 读取检查点中还没有处理完的范围
+     *
+     * @param sidecar
+     * @param file
+     * @param fileLength 当前的文件长度
+     * @return 检查点不存在或者源文件已经变化时返回null
+     * @throws IOException
+     */
+    static List<StartEndPair> unfinished(File sidecar, File file, long fileLength) throws IOException {
+        if (!sidecar.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(sidecar);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        if (!String.valueOf(fileLength).equals(properties.getProperty("length"))
+                || !String.valueOf(file.lastModified()).equals(properties.getProperty("modified"))) {
+            return null;
+        }
+        int count = Integer.parseInt(properties.getProperty("slices", "0"));
+        List<StartEndPair> ranges = new ArrayList<StartEndPair>(count);
+        for (int i = 0; i < count; i++) {
+            String[] values = properties.getProperty("slice." + i).split(",");
+            StartEndPair range = new StartEndPair();
+            range.start = Long.parseLong(values[2]);
+            range.end = Long.parseLong(values[1]);
+            if (range.start <= range.end) {
+                ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,97 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * 动态分块模式下所有读线程共用的游标，空闲的线程从这里领取下一块
+ * <p>
+ * 块的大小根据已经读完的块测得的吞吐量调整，使每块的耗时接近目标耗时；
+ * 接近文件末尾时块逐渐变小（不超过剩余量除以线程数的一半），最后一批块同时结束，
+ * 整体耗时取决于平均的块而不是最慢的一个分片
+ *
+ * @author Aaron
+ */
+final class ChunkCursor {
+
+    /**
+     * 吞吐量的指数加权系数
+     */
+    private static final double ALPHA = 0.3;
+
+    private final FileChannel channel;
+    private final RecordFraming framing;
+    private final long limit;
+    private final int threads;
+    private final long targetNanos;
+    private final long minChunkSize;
+    private final long maxChunkSize;
+    private long position;
+    private long chunkSize;
+    /**
+     * 每纳秒处理的字节数，还没有测量时为0
+     */
+    private double throughput;
+    private int chunks;
+
+    /**
+     * @param channel
+     * @param framing      块的结束位置按它对齐到记录边界
+     * @param start        第一块的起始位置
+     * @param limit        结束位置（不包含）
+     * @param threads      领取块的线程数
+     * @param targetNanos  每块的目标耗时
+     * @param minChunkSize
+     * @param maxChunkSize
+     */
+    ChunkCursor(FileChannel channel, RecordFraming framing, long start, long limit, int threads,
+                long targetNanos, long minChunkSize, long maxChunkSize) {
+        this.channel = channel;
+        this.framing = framing;
+        this.position = start;
+        this.limit = limit;
+        this.threads = threads;
+        this.targetNanos = targetNanos;
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        // 还没有测量时，先让每个线程大约领到16块
+        this.chunkSize = clamp((limit - start) / (threads * 16L));
+    }
+
+    /**
+     * 领取下一块
+     *
+     * @param chunk 输出：块的起始和结束位置（包含）
+     * @return 块的序号，没有剩余时返回-1
+     * @throws IOException
+     */
+    synchronized int claim(StartEndPair chunk) throws IOException {
+        if (position >= limit) {
+            return -1;
+        }
+        long size = Math.min(chunkSize, Math.max(minChunkSize, (limit - position) / (threads * 2L)));
+        chunk.start = position;
+        chunk.end = framing.nextEnd(channel, limit, position, size);
+        position = chunk.end + 1;
+        return chunks++;
+    }
+
+    /**
+     * 一块读完后报告耗时，用来调整之后的块大小
+     *
+     * @param bytes
+     * @param elapsedNanos
+     */
+    synchronized void report(long bytes, long elapsedNanos) {
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        double sample = (double) bytes / elapsedNanos;
+        throughput = throughput == 0 ? sample : ALPHA * sample + (1 - ALPHA) * throughput;
+        chunkSize = clamp((long) (throughput * targetNanos));
+    }
+
+    private long clamp(long size) {
+        return Math.max(minChunkSize, Math.min(maxChunkSize, size));
+    }
+}
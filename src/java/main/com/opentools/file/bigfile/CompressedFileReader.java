@@ -0,0 +1,367 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 直接读取gzip和zip压缩文件中的行，不需要先解压到磁盘，行的切分规则和BigFileReader一致
+ * <p>
+ * 按文件头自动识别格式：
+ * <ul>
+ * <li>BGZF格式的gzip（每个成员记录了自己的大小）：成员按解压后的大小分组，各组在线程池中并行解压和切分，
+ * 跨组的行由前一组读完</li>
+ * <li>普通的gzip（包括多成员）：成员的边界只有解压后才知道，由一个线程解压，另一个线程同时切分行，两者通过有界队列衔接</li>
+ * <li>zip：每个条目一个任务，并行解压和切分</li>
+ * </ul>
+ * handle在多个线程中并发调用，不保证行的顺序
+ *
+ * @author Aaron
+ */
+public class CompressedFileReader {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int PIPELINE_CHUNKS = 4;
+
+    private final File file;
+    private final int threadSize;
+    private final int bufferSize;
+    private final ByteLineHandle handle;
+    private final ExecutorService executorService;
+
+    private CompressedFileReader(Builder builder) {
+        this.file = builder.file;
+        this.threadSize = builder.threadSize;
+        this.bufferSize = builder.bufferSize;
+        this.handle = builder.lineHandle();
+        // 普通gzip需要解压和切分两个线程
+        this.executorService = Executors.newFixedThreadPool(Math.max(threadSize, 2));
+    }
+
+    /**
+     * 开始读取，立即返回
+     *
+     * @return 所有行处理完后完成，每个分组、流或条目是结果中的一个分片，字节数为解压后的字节数
+     */
+    public CompletableFuture<ReadResult> start() {
+        final RandomAccessFile rAccessFile;
+        try {
+            rAccessFile = new RandomAccessFile(file, "r");
+        } catch (IOException e) {
+            return ReaderSupport.failed(e);
+        }
+        final long startTime = System.nanoTime();
+        List<CompletableFuture<ReadResult.SliceResult>> slices;
+        ZipFile zipFile = null;
+        try {
+            FileChannel channel = rAccessFile.getChannel();
+            int magic = readMagic(channel);
+            if (magic == 0x1F8B) {
+                List<long[]> blocks = GzipBlocks.bgzfBlocks(channel);
+                slices = blocks != null ? readBgzf(channel, blocks) : readGzip(channel);
+            } else if (magic == 0x504B) {
+                zipFile = new ZipFile(file);
+                slices = readZip(zipFile, channel);
+            } else {
+                throw new IOException("不是gzip或zip文件：" + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            ReaderSupport.close(rAccessFile);
+            ReaderSupport.close(zipFile);
+            return ReaderSupport.failed(e);
+        }
+        final ZipFile openZip = zipFile;
+        final List<CompletableFuture<ReadResult.SliceResult>> sliceFutures = slices;
+        CompletableFuture<Void> all = CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[slices.size()]));
+        all.whenComplete((v, e) -> {
+            ReaderSupport.close(rAccessFile);
+            ReaderSupport.close(openZip);
+        });
+        return all.thenApply(v -> {
+            List<ReadResult.SliceResult> results = new ArrayList<ReadResult.SliceResult>(sliceFutures.size());
+            for (CompletableFuture<ReadResult.SliceResult> future : sliceFutures) {
+                results.add(future.join());
+            }
+            return new ReadResult(results, System.nanoTime() - startTime, null);
+        });
+    }
+
+    /**
+     * BGZF：把成员分成大约threadSize * 4组，每组从自己的第一个成员开始解压
+     */
+    private List<CompletableFuture<ReadResult.SliceResult>> readBgzf(final FileChannel channel, List<long[]> blocks) {
+        long total = 0;
+        for (long[] block : blocks) {
+            total += block[1];
+        }
+        long groupSize = Math.max(1, total / (threadSize * 4L));
+        List<CompletableFuture<ReadResult.SliceResult>> slices = new ArrayList<CompletableFuture<ReadResult.SliceResult>>();
+        int first = 0;
+        while (first < blocks.size()) {
+            int last = first;
+            long uncompressed = blocks.get(first)[1];
+            while (last + 1 < blocks.size() && uncompressed < groupSize) {
+                uncompressed += blocks.get(++last)[1];
+            }
+            final int index = slices.size();
+            final long start = blocks.get(first)[0];
+            final long end = last + 1 < blocks.size() ? blocks.get(last + 1)[0] - 1 : fileLength(channel) - 1;
+            final long limit = uncompressed;
+            slices.add(CompletableFuture.supplyAsync(() -> {
+                long startTime = System.nanoTime();
+                StreamLineScanner scanner = new StreamLineScanner(bufferSize);
+                try {
+                    InputStream in = new GZIPInputStream(new ChannelInputStream(channel, start), GZIP_BUFFER_SIZE);
+                    try {
+                        long lines = scanner.scan(in, index > 0, limit, handle);
+                        return new ReadResult.SliceResult(index, start, end, scanner.bytes(), lines,
+                                System.nanoTime() - startTime);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executorService));
+            first = last + 1;
+        }
+        return slices;
+    }
+
+    /**
+     * 普通gzip：一个线程解压，另一个线程切分
+     */
+    private List<CompletableFuture<ReadResult.SliceResult>> readGzip(final FileChannel channel) {
+        final ChunkStream chunks = new ChunkStream();
+        CompletableFuture<Void> inflater = CompletableFuture.runAsync(() -> {
+            try {
+                InputStream in = new GZIPInputStream(new ChannelInputStream(channel, 0), GZIP_BUFFER_SIZE);
+                try {
+                    while (true) {
+                        byte[] chunk = new byte[Math.max(bufferSize, GZIP_BUFFER_SIZE)];
+                        int size = 0;
+                        int n;
+                        while (size < chunk.length && (n = in.read(chunk, size, chunk.length - size)) >= 0) {
+                            size += n;
+                        }
+                        if (size == 0) {
+                            break;
+                        }
+                        chunks.put(size == chunk.length ? chunk : Arrays.copyOf(chunk, size));
+                        if (size < chunk.length) {
+                            break;
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+                chunks.finish(null);
+            } catch (IOException | RuntimeException e) {
+                chunks.finish(e);
+                throw new CompletionException(e);
+            }
+        }, executorService);
+        final long fileLength = fileLength(channel);
+        CompletableFuture<ReadResult.SliceResult> lines = CompletableFuture.supplyAsync(() -> {
+            long startTime = System.nanoTime();
+            StreamLineScanner scanner = new StreamLineScanner(bufferSize);
+            try {
+                long count = scanner.scan(chunks, false, Long.MAX_VALUE, handle);
+                return new ReadResult.SliceResult(0, 0, fileLength - 1, scanner.bytes(), count,
+                        System.nanoTime() - startTime);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                chunks.abort();
+            }
+        }, executorService);
+        List<CompletableFuture<ReadResult.SliceResult>> slices = new ArrayList<CompletableFuture<ReadResult.SliceResult>>(1);
+        slices.add(lines.thenCombine(inflater, (result, v) -> result));
+        return slices;
+    }
+
+    /**
+     * zip：每个条目一个任务，分片的起止位置是条目的压缩数据在zip文件中的位置，
+     * 读不出中央目录时和普通gzip一样是整个文件
+     */
+    private List<CompletableFuture<ReadResult.SliceResult>> readZip(final ZipFile zipFile, FileChannel channel)
+            throws IOException {
+        Map<String, long[]> ranges = ZipEntries.dataRanges(channel);
+        long[] wholeFile = {0, channel.size() - 1};
+        List<CompletableFuture<ReadResult.SliceResult>> slices = new ArrayList<CompletableFuture<ReadResult.SliceResult>>();
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory()) {
+                continue;
+            }
+            final int index = slices.size();
+            long[] range = ranges != null ? ranges.get(entry.getName()) : null;
+            final long[] position = range != null ? range : wholeFile;
+            slices.add(CompletableFuture.supplyAsync(() -> {
+                long startTime = System.nanoTime();
+                StreamLineScanner scanner = new StreamLineScanner(bufferSize);
+                try {
+                    InputStream in = zipFile.getInputStream(entry);
+                    try {
+                        long lines = scanner.scan(in, false, Long.MAX_VALUE, handle);
+                        return new ReadResult.SliceResult(index, position[0], position[1],
+                                scanner.bytes(), lines, System.nanoTime() - startTime);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executorService));
+        }
+        return slices;
+    }
+
+    /**
+     * 停止线程池
+     */
+    public void shutdown() {
+        this.executorService.shutdown();
+    }
+
+    private static int readMagic(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) {
+                return -1;
+            }
+        }
+        return magic.getShort(0) & 0xFFFF;
+    }
+
+    private static long fileLength(FileChannel channel) {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * 解压线程和切分线程之间的有界队列，切分线程把它当作输入流读取
+     */
+    private static class ChunkStream extends InputStream {
+        private static final byte[] END = new byte[0];
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(PIPELINE_CHUNKS);
+        private volatile Throwable error;
+        private volatile boolean aborted;
+        private byte[] current;
+        private int position;
+
+        void put(byte[] chunk) throws IOException {
+            try {
+                while (!aborted) {
+                    if (queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+                throw new IOException("切分线程已经退出");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * 解压结束
+         *
+         * @param e 解压失败时的异常
+         */
+        void finish(Throwable e) {
+            this.error = e;
+            try {
+                while (!aborted && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    // 等待切分线程取走数据
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * 切分线程退出，让解压线程不再等待
+         */
+        void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (current == END) {
+                return -1;
+            }
+            if (current == null || position == current.length) {
+                try {
+                    current = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                position = 0;
+                if (current == END) {
+                    if (error != null) {
+                        throw new IOException("解压失败", error);
+                    }
+                    return -1;
+                }
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    public static class Builder extends LineReaderBuilder<Builder> {
+        private File file;
+
+        public Builder(String file) {
+            this.file = ReaderSupport.existingFile(file);
+        }
+
+        @Override
+        Builder self() {
+            return this;
+        }
+
+        public CompressedFileReader build() {
+            int handles = lineHandles();
+            if (handles == 0)
+                throw new IllegalStateException("没有设置处理每一行的handle！");
+            if (handles > 1)
+                throw new IllegalStateException("只能设置一种handle！");
+            checkThreadSize();
+            return new CompressedFileReader(this);
+        }
+    }
+}
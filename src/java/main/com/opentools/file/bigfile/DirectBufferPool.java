@@ -0,0 +1,52 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 固定大小的直接缓冲区池，多个线程共用；比池中缓冲区大的请求临时分配，用完立即释放
+ *
+ * @author Aaron
+ */
+final class DirectBufferPool {
+
+    private final int bufferSize;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    DirectBufferPool(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param size
+     * @return position为0、limit为size的缓冲区
+     */
+    ByteBuffer acquire(int size) {
+        ByteBuffer buffer = size <= bufferSize ? buffers.poll() : null;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, bufferSize));
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            buffers.offer(buffer);
+        } else {
+            MappedBufferCleaner.unmap(buffer);
+        }
+    }
+
+    /**
+     * 释放池中所有的缓冲区
+     */
+    void clear() {
+        ByteBuffer buffer;
+        while ((buffer = buffers.poll()) != null) {
+            MappedBufferCleaner.unmap(buffer);
+        }
+    }
+}
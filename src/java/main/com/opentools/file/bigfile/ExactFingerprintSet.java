@@ -0,0 +1,158 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 精确去重：堆外的开放寻址哈希表，每个槽16字节，保存64位指纹和这一行在文件中的位置
+ * <p>
+ * 指纹相同时回到文件中比较原始内容，不同的行即使指纹冲突也不会被当成重复。
+ * 表按哈希的高位分成多个分区，每个分区有自己的锁和内存块，负载超过3/4时分区单独扩容
+ *
+ * @author Aaron
+ */
+final class ExactFingerprintSet implements FingerprintSet {
+
+    private static final int SLOT_SIZE = 16;
+    /**
+     * 单个分区最多的槽数，对应1G内存
+     */
+    private static final int MAX_SLOTS = 1 << 26;
+    private static final int MIN_SLOTS = 1 << 10;
+    private static final int MIN_PARTITIONS = 256;
+
+    private final OffHeapStore store;
+    private final FileChannel channel;
+    private final Partition[] partitions;
+    private final int partitionShift;
+    private final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>();
+
+    /**
+     * @param store         分配内存
+     * @param channel       源文件，用来比较指纹相同的行
+     * @param expectedLines 预计的不同行数，决定初始容量
+     * @throws IOException
+     */
+    ExactFingerprintSet(OffHeapStore store, FileChannel channel, long expectedLines) throws IOException {
+        this.store = store;
+        this.channel = channel;
+        long totalSlots = Long.highestOneBit(Math.max(expectedLines, 1) * 2 - 1) << 1;
+        int count = MIN_PARTITIONS;
+        while (totalSlots / count > MAX_SLOTS / 2) {
+            count <<= 1;
+        }
+        this.partitions = new Partition[count];
+        this.partitionShift = 64 - Integer.numberOfTrailingZeros(count);
+        int slots = (int) Math.max(MIN_SLOTS, totalSlots / count);
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(slots);
+        }
+    }
+
+    @Override
+    public boolean add(ByteBuffer line, long hash, long offset) {
+        Partition partition = partitions[(int) (hash >>> partitionShift)];
+        try {
+            synchronized (partition) {
+                return partition.add(line, hash, offset);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    /**
+     * 比较文件中offset处的行和line是否相同
+     */
+    private boolean sameLine(ByteBuffer line, long offset) throws IOException {
+        int length = line.remaining();
+        ByteBuffer buffer = scratch.get();
+        if (buffer == null || buffer.capacity() < length + 1) {
+            buffer = ByteBuffer.allocate(Math.max(length + 1, 256));
+            scratch.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(length + 1);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                break;
+            }
+        }
+        if (buffer.position() < length) {
+            return false;
+        }
+        if (buffer.position() > length) {
+            // 文件中那一行必须在这里结束
+            byte next = buffer.get(length);
+            if (next != '\n' && next != '\r') {
+                return false;
+            }
+        }
+        int position = line.position();
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(i) != line.get(position + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class Partition {
+        private ByteBuffer table;
+        private int mask;
+        private int size;
+
+        Partition(int slots) throws IOException {
+            this.table = store.allocate(slots * SLOT_SIZE);
+            this.mask = slots - 1;
+        }
+
+        boolean add(ByteBuffer line, long hash, long offset) throws IOException {
+            int slot = (int) hash & mask;
+            long stored;
+            // 位置保存为offset + 1，0表示空槽
+            while ((stored = table.getLong(slot * SLOT_SIZE + 8)) != 0) {
+                if (table.getLong(slot * SLOT_SIZE) == hash && sameLine(line, stored - 1)) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table.putLong(slot * SLOT_SIZE, hash);
+            table.putLong(slot * SLOT_SIZE + 8, offset + 1);
+            if (++size > (mask + 1) / 4 * 3) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() throws IOException {
+            int slots = mask + 1;
+            if (slots >= MAX_SLOTS)
+                throw new IllegalStateException("去重集合的分区已满，请调大预计行数！");
+            ByteBuffer old = table;
+            table = store.allocate(slots * 2 * SLOT_SIZE);
+            mask = slots * 2 - 1;
+            for (int i = 0; i < slots; i++) {
+                long stored = old.getLong(i * SLOT_SIZE + 8);
+                if (stored == 0) {
+                    continue;
+                }
+                long hash = old.getLong(i * SLOT_SIZE);
+                int slot = (int) hash & mask;
+                while (table.getLong(slot * SLOT_SIZE + 8) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table.putLong(slot * SLOT_SIZE, hash);
+                table.putLong(slot * SLOT_SIZE + 8, stored);
+            }
+            store.release(old);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+
+/**
+ * 多文件读取时，一个文件的所有行都处理完后调用
+ *
+ * @author Aaron
+ */
+public interface FileCompleteListener {
+
+    /**
+     * 在处理这个文件最后一个工作单元的线程中调用，不同文件的回调可能并发
+     *
+     * @param file
+     * @param lines 这个文件的行数
+     */
+    public void complete(File file, long lines);
+
+}
@@ -0,0 +1,203 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 跟随模式：从指定位置开始轮询文件大小，只映射新追加的部分，完整的行交给sink
+ * <p>
+ * 文件变小视为被截断，从头开始读；同一路径指向了新文件视为被轮转，
+ * 先读完旧文件剩下的内容（包括没有换行符的最后一行），再从头读新文件。
+ * 新文件按fileKey判断，fileKey不可用时（比如Windows）按创建时间判断；
+ * 另外路径上的文件比已经打开的文件小时，路径指向的也一定是另一个文件
+ *
+ * @author Aaron
+ */
+final class FileFollower implements Supplier<ReadResult.SliceResult> {
+
+    private final File file;
+    private final SliceSink sink;
+    private final SliceScanner scanner;
+    private final long pollIntervalNanos;
+    private final int index;
+    private final long tailStart;
+    private FileChannel channel;
+    private RandomAccessFile ownFile;
+    /**
+     * 打开的文件的标识，fileKey或者创建时间
+     */
+    private Object fileKey;
+    private long position;
+    private long bytes;
+    private long lines;
+    private volatile boolean stopped;
+
+    /**
+     * @param index              在结果中作为第几个分片
+     * @param file
+     * @param channel            已经打开的文件，由调用方负责关闭
+     * @param position           从哪里开始跟随，必须是一行的开头
+     * @param sink
+     * @param scanner
+     * @param pollIntervalMillis 没有新内容时的轮询间隔
+     */
+    FileFollower(int index, File file, FileChannel channel, long position, SliceSink sink,
+                 SliceScanner scanner, long pollIntervalMillis) {
+        this.index = index;
+        this.file = file;
+        this.channel = channel;
+        this.position = position;
+        this.tailStart = position;
+        this.sink = sink;
+        this.scanner = scanner;
+        this.pollIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis);
+        this.fileKey = currentFileKey();
+    }
+
+    /**
+     * 停止跟随，get()在处理完当前这一轮后返回
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public ReadResult.SliceResult get() {
+        long startTime = System.nanoTime();
+        try {
+            while (!stopped) {
+                if (rotated()) {
+                    // 读完旧文件剩下的内容再切换
+                    long size = channel.size();
+                    if (size > position) {
+                        read(position, size);
+                    }
+                    switchFile();
+                    continue;
+                }
+                long size = channel.size();
+                if (size < position) {
+                    position = 0;
+                }
+                long end = completeLength(channel, position, size);
+                if (end > position) {
+                    read(position, end);
+                } else {
+                    LockSupport.parkNanos(pollIntervalNanos);
+                }
+            }
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            sink.finish();
+            closeOwnFile();
+        }
+        return new ReadResult.SliceResult(index, tailStart, position - 1, bytes, lines,
+                System.nanoTime() - startTime);
+    }
+
+    private void read(long start, long end) throws IOException {
+        lines += scanner.scan(channel, start, end - 1, sink);
+        // 每一轮结束都让sink交出攒着的行，保证延迟
+        sink.finish();
+        bytes += end - start;
+        position = end;
+    }
+
+    private boolean rotated() throws IOException {
+        // 先取打开的文件的大小，文件一直在追加时路径上的大小不会比它小
+        long openSize = channel.size();
+        BasicFileAttributes attributes = attributes();
+        if (attributes == null) {
+            return false;
+        }
+        Object key = identity(attributes);
+        if (fileKey != null && !key.equals(fileKey)) {
+            return true;
+        }
+        return attributes.size() < openSize;
+    }
+
+    private void switchFile() throws IOException {
+        closeOwnFile();
+        ownFile = new RandomAccessFile(file, "r");
+        channel = ownFile.getChannel();
+        fileKey = currentFileKey();
+        position = 0;
+    }
+
+    private Object currentFileKey() {
+        BasicFileAttributes attributes = attributes();
+        return attributes == null ? null : identity(attributes);
+    }
+
+    private static Object identity(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key : attributes.creationTime();
+    }
+
+    private BasicFileAttributes attributes() {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // 轮转过程中文件可能暂时不存在，继续读旧文件
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void closeOwnFile() {
+        if (ownFile != null) {
+            try {
+                ownFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            ownFile = null;
+        }
+    }
+
+    /**
+     * 找到[from, size)范围内最后一个换行符之后的位置，没有换行符时返回from
+     *
+     * @param channel
+     * @param from
+     * @param size
+     * @return
+     * @throws IOException
+     */
+    static long completeLength(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long end = size;
+        while (end > from) {
+            int length = (int) Math.min(buffer.capacity(), end - from);
+            buffer.clear();
+            buffer.limit(length);
+            long start = end - length;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    return from;
+                }
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                byte tmp = buffer.get(i);
+                if (tmp == '\n' || tmp == '\r') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return from;
+    }
+}
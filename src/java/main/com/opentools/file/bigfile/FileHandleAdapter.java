@@ -0,0 +1,40 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 把按字节处理的行解码成String后交给FileHandle，每个线程使用自己的LineDecoder，纯ASCII的行走快速路径
+ *
+ * @author Aaron
+ */
+public class FileHandleAdapter implements ByteLineHandle {
+
+    private final FileHandle handle;
+    private final Charset charset;
+    private final ThreadLocal<LineDecoder> decoder = new ThreadLocal<LineDecoder>();
+
+    /**
+     * @param handle
+     * @param charset 为null时使用平台默认编码
+     */
+    public FileHandleAdapter(FileHandle handle, String charset) {
+        this.handle = handle;
+        this.charset = charset == null ? Charset.defaultCharset() : Charset.forName(charset);
+    }
+
+    @Override
+    public void handle(ByteBuffer line) {
+        this.handle.handle(decoder().decode(line));
+    }
+
+    private LineDecoder decoder() {
+        LineDecoder current = decoder.get();
+        if (current == null) {
+            current = new LineDecoder(charset);
+            decoder.set(current);
+        }
+        return current;
+    }
+
+}
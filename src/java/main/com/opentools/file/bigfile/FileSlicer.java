@@ -0,0 +1,103 @@
+package com.opentools.file.bigfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把文件划分成分片，分片的结束位置对齐到换行符（\r\n不会被拆开），BigFileReader和基于它的各种工具共用
+ *
+ * @author Aaron
+ */
+final class FileSlicer {
+
+    private FileSlicer() {
+    }
+
+    /**
+     * 把整个文件大致均分成threadSize个分片
+     *
+     * @param channel
+     * @param fileLength
+     * @param threadSize
+     * @return
+     * @throws IOException
+     */
+    static List<StartEndPair> slice(FileChannel channel, long fileLength, int threadSize)
+            throws IOException {
+        List<StartEndPair> startEndPairs = new ArrayList<StartEndPair>();
+        calculateStartEnd(channel, startEndPairs, fileLength, 0, Math.max(1, fileLength / threadSize));
+        return startEndPairs;
+    }
+
+    /**
+     * 从start开始按size把[start, fileLength)划分成分片，分片的结束位置对齐到换行符
+     *
+     * @param channel
+     * @param startEndPairs 划分出的分片按顺序加入这里
+     * @param fileLength    划分范围的结束位置（不包含）
+     * @param start
+     * @param size
+     * @throws IOException
+     */
+    static void calculateStartEnd(FileChannel channel, List<StartEndPair> startEndPairs,
+                                  long fileLength, long start, long size) throws IOException {
+        while (start <= fileLength - 1) {
+            StartEndPair pair = new StartEndPair();
+            pair.start = start;
+            pair.end = alignEnd(channel, fileLength, start, size);
+            startEndPairs.add(pair);
+            start = pair.end + 1;
+        }
+    }
+
+    /**
+     * 从start开始大约size个字节的分片的结束位置（包含），对齐到换行符
+     *
+     * @param channel
+     * @param fileLength 划分范围的结束位置（不包含）
+     * @param start
+     * @param size
+     * @return
+     * @throws IOException
+     */
+    static long alignEnd(FileChannel channel, long fileLength, long start, long size) throws IOException {
+        long endPosition = start + size - 1;
+        if (endPosition >= fileLength - 1) {
+            return fileLength - 1;
+        }
+
+        byte tmp = readByte(channel, endPosition);
+        while (tmp != '\n' && tmp != '\r') {
+            endPosition++;
+            if (endPosition >= fileLength - 1) {
+                return fileLength - 1;
+            }
+            tmp = readByte(channel, endPosition);
+        }
+        if (tmp == '\r' && endPosition < fileLength - 1 && readByte(channel, endPosition + 1) == '\n') {
+            // 不把\r\n拆到两个分片中
+            endPosition++;
+        }
+        return endPosition;
+    }
+
+    /**
+     * 按位置读取一个字节，不改变文件指针，可以并发调用
+     *
+     * @param channel
+     * @param position
+     * @return
+     * @throws IOException
+     */
+    static byte readByte(FileChannel channel, long position) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        if (channel.read(one, position) <= 0) {
+            throw new EOFException("读取位置超出文件末尾：" + position);
+        }
+        return one.get(0);
+    }
+}
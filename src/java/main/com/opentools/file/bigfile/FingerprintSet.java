@@ -0,0 +1,26 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 去重用的行指纹集合，可以在多个线程中并发调用
+ *
+ * @author Aaron
+ */
+interface FingerprintSet {
+
+    /**
+     * 加入一行
+     *
+     * @param line   这一行的内容，不改变position和limit
+     * @param hash   LineHasher.hash(line)
+     * @param offset 这一行在文件中的起始位置
+     * @return 之前没有出现过时返回true
+     */
+    boolean add(ByteBuffer line, long hash, long offset);
+
+    /**
+     * 释放占用的堆外内存
+     */
+    void close();
+}
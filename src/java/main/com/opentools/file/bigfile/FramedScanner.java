@@ -0,0 +1,95 @@
+package com.opentools.file.bigfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 按RecordFraming（LINES以外的格式）扫描文件的一段范围，通过复用的视图交出每条记录
+ * <p>
+ * 每个窗口只处理完整的记录，下一个窗口从最后一条完整记录之后开始映射，记录不会跨窗口；
+ * 一条记录比窗口还大时窗口加倍，直到能容纳这条记录
+ *
+ * @author Aaron
+ */
+final class FramedScanner implements RecordReader {
+
+    private final RecordFraming framing;
+    private final long mapWindowSize;
+    private final WindowSource source;
+    private final int[] bounds = new int[3];
+    private long lineStart;
+    private long lineEnd;
+
+    FramedScanner(RecordFraming framing, WindowSource source, long mapWindowSize) {
+        this.framing = framing;
+        this.source = source;
+        this.mapWindowSize = mapWindowSize;
+    }
+
+    @Override
+    public long lineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public long lineEnd() {
+        return lineEnd;
+    }
+
+    @Override
+    public long scan(FileChannel channel, long start, long end, SliceSink sink) throws IOException {
+        long records = 0;
+        long position = start;
+        long limit = end + 1;
+        long windowSize = mapWindowSize;
+        while (position < limit) {
+            long size = Math.min(windowSize, limit - position);
+            boolean last = position + size == limit;
+            ByteBuffer window = source.open(channel, position, (int) size, limit);
+            int consumed;
+            try {
+                ByteBuffer view = window.duplicate();
+                int from = 0;
+                while (from < size && framing.frame(window, from, (int) size, bounds)) {
+                    deliver(sink, view, position, from);
+                    records++;
+                    from = bounds[2];
+                }
+                if (from < size && last) {
+                    if (!framing.acceptsTrailingRecord()) {
+                        throw new EOFException("文件末尾的记录不完整，位置：" + (position + from));
+                    }
+                    // 最后一条记录没有分隔符
+                    bounds[0] = from;
+                    bounds[1] = (int) size;
+                    bounds[2] = (int) size;
+                    deliver(sink, view, position, from);
+                    records++;
+                    from = (int) size;
+                }
+                consumed = from;
+            } finally {
+                source.release(window);
+            }
+            if (consumed == 0) {
+                if (windowSize >= Integer.MAX_VALUE)
+                    throw new IOException("单条记录超过" + Integer.MAX_VALUE + "字节，位置：" + position);
+                windowSize = Math.min(windowSize * 2, Integer.MAX_VALUE);
+                continue;
+            }
+            windowSize = mapWindowSize;
+            position += consumed;
+        }
+        return records;
+    }
+
+    private void deliver(SliceSink sink, ByteBuffer view, long windowBase, int from) {
+        lineStart = windowBase + from;
+        lineEnd = windowBase + bounds[2];
+        view.limit(bounds[1]);
+        view.position(bounds[0]);
+        sink.handle(view);
+    }
+}
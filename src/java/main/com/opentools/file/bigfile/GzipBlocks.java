@@ -0,0 +1,82 @@
+package com.opentools.file.bigfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读取BGZF格式（每个gzip成员的扩展字段BC中记录了成员的大小）的所有成员的位置和解压后的大小，
+ * 只读取每个成员的头部和尾部，不解压
+ *
+ * @author Aaron
+ */
+final class GzipBlocks {
+
+    private static final int HEADER_SIZE = 12;
+    private static final int FEXTRA = 4;
+
+    private GzipBlocks() {
+    }
+
+    /**
+     * @param channel
+     * @return 每个成员的{压缩数据中的起始位置, 解压后的大小}，不是BGZF格式时返回null
+     * @throws IOException
+     */
+    static List<long[]> bgzfBlocks(FileChannel channel) throws IOException {
+        long fileLength = channel.size();
+        List<long[]> blocks = new ArrayList<long[]>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 0xFFFF).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        long position = 0;
+        while (position < fileLength) {
+            header.clear();
+            header.limit((int) Math.min(HEADER_SIZE, fileLength - position));
+            read(channel, header, position);
+            if (header.limit() < HEADER_SIZE || (header.get(0) & 0xFF) != 0x1F || (header.get(1) & 0xFF) != 0x8B
+                    || header.get(2) != 8 || (header.get(3) & FEXTRA) == 0) {
+                return null;
+            }
+            int extraLength = header.getShort(10) & 0xFFFF;
+            header.clear();
+            header.limit(extraLength);
+            read(channel, header, position + HEADER_SIZE);
+            long blockSize = blockSize(header, extraLength);
+            if (blockSize < 0 || position + blockSize > fileLength) {
+                return null;
+            }
+            trailer.clear();
+            read(channel, trailer, position + blockSize - 4);
+            blocks.add(new long[]{position, trailer.getInt(0) & 0xFFFFFFFFL});
+            position += blockSize;
+        }
+        return blocks.isEmpty() ? null : blocks;
+    }
+
+    /**
+     * 在扩展字段中查找BC子字段
+     */
+    private static long blockSize(ByteBuffer extra, int extraLength) {
+        int offset = 0;
+        while (offset + 4 <= extraLength) {
+            int subfieldLength = extra.getShort(offset + 2) & 0xFFFF;
+            if (extra.get(offset) == 'B' && extra.get(offset + 1) == 'C' && subfieldLength == 2) {
+                return (extra.getShort(offset + 4) & 0xFFFF) + 1L;
+            }
+            offset += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("gzip成员不完整，位置：" + position);
+            }
+        }
+    }
+}
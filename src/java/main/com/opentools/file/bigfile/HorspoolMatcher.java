@@ -0,0 +1,80 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool字节串查找，支持同时查找多个模式
+ * <p>
+ * 多个模式时按最短模式的长度m建跳转表：对齐窗口最后一个字节在任一模式前m个字节中出现的最靠右位置决定跳过多少，
+ * 每次对齐后逐个比较所有模式。模式不多时跳转距离接近单模式，大部分字节不需要比较。
+ * 实例创建后只读，可以在多个线程中共用
+ *
+ * @author Aaron
+ */
+final class HorspoolMatcher {
+
+    private final byte[][] patterns;
+    private final int minLength;
+    private final int[] shift = new int[256];
+
+    /**
+     * @param patterns 不能为空，每个模式至少一个字节
+     */
+    HorspoolMatcher(byte[][] patterns) {
+        if (patterns.length == 0)
+            throw new IllegalArgumentException("至少需要一个模式！");
+        int minLength = Integer.MAX_VALUE;
+        for (byte[] pattern : patterns) {
+            if (pattern.length == 0)
+                throw new IllegalArgumentException("模式不能为空！");
+            minLength = Math.min(minLength, pattern.length);
+        }
+        this.patterns = patterns;
+        this.minLength = minLength;
+        Arrays.fill(shift, minLength);
+        for (byte[] pattern : patterns) {
+            for (int i = 0; i < minLength - 1; i++) {
+                shift[pattern[i] & 0xFF] = Math.min(shift[pattern[i] & 0xFF], minLength - 1 - i);
+            }
+        }
+    }
+
+    /**
+     * 在buffer的[from, to)范围内查找第一个出现的模式
+     *
+     * @param buffer 按绝对位置读取，不改变position
+     * @param from
+     * @param to
+     * @return 匹配的起始位置，没有时返回-1
+     */
+    int indexOf(ByteBuffer buffer, int from, int to) {
+        int last = minLength - 1;
+        int i = from;
+        while (i + last < to) {
+            for (byte[] pattern : patterns) {
+                if (matches(buffer, i, to, pattern)) {
+                    return i;
+                }
+            }
+            i += shift[buffer.get(i + last) & 0xFF];
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int position, int to, byte[] pattern) {
+        if (position + pattern.length > to) {
+            return false;
+        }
+        // 先比较最后一个字节，不同的话大多能马上排除
+        if (buffer.get(position + pattern.length - 1) != pattern[pattern.length - 1]) {
+            return false;
+        }
+        for (int j = 0; j < pattern.length - 1; j++) {
+            if (buffer.get(position + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
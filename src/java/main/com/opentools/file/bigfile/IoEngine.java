@@ -0,0 +1,25 @@
+package com.opentools.file.bigfile;
+
+/**
+ * BigFileReader读取分片的方式，可以按存储类型分别测试后选择
+ *
+ * @author Aaron
+ */
+public enum IoEngine {
+
+    /**
+     * 默认，按窗口内存映射，本地磁盘上最快；页面缺失时阻塞读线程，时间不可预测
+     */
+    MMAP,
+
+    /**
+     * FileChannel按位置读取到池化的直接缓冲区，每次读取一个窗口，适合网络文件系统和冷数据
+     */
+    PREAD,
+
+    /**
+     * AsynchronousFileChannel读取到池化的直接缓冲区，按文本行切分时处理当前窗口的同时预读下一个窗口
+     */
+    ASYNC
+
+}
@@ -0,0 +1,126 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 一批行的字节拷贝，所有行连续存放在同一个数组中，批次本身可以反复复用
+ * <p>
+ * 交给BatchLineHandle的批次只在本次调用内有效，调用结束后会被清空并继续装入后面的行
+ *
+ * @author Aaron
+ */
+public class LineBatch {
+
+    private final Charset charset;
+    private final int maxBytes;
+    private final int[] ends;
+    private byte[] data;
+    private ByteBuffer view;
+    private int size;
+    private int used;
+    private LineDecoder decoder;
+
+    /**
+     * @param maxLines 每批最多的行数
+     * @param maxBytes 每批最多的字节数，单行超过时这一行单独成批
+     * @param charset  getLine解码使用的编码
+     */
+    LineBatch(int maxLines, int maxBytes, Charset charset) {
+        this.charset = charset;
+        this.maxBytes = maxBytes;
+        this.ends = new int[maxLines];
+        this.data = new byte[(int) Math.max(16, Math.min(maxBytes, maxLines * 128L))];
+        this.view = ByteBuffer.wrap(data);
+    }
+
+    /**
+     * 追加一行，不改变line的position
+     *
+     * @param line
+     * @return 批次已满时返回false
+     */
+    boolean add(ByteBuffer line) {
+        int length = line.remaining();
+        if (size == ends.length || (size > 0 && used + length > maxBytes)) {
+            return false;
+        }
+        if (used + length > data.length) {
+            byte[] bigger = new byte[Math.max(data.length * 2, used + length)];
+            System.arraycopy(data, 0, bigger, 0, used);
+            data = bigger;
+            view = ByteBuffer.wrap(data);
+        }
+        line.duplicate().get(data, used, length);
+        used += length;
+        ends[size++] = used;
+        return true;
+    }
+
+    void clear() {
+        size = 0;
+        used = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return 行数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 所有行的字节数之和
+     */
+    public int getByteSize() {
+        return used;
+    }
+
+    /**
+     * 解码第index行
+     *
+     * @param index
+     * @return
+     */
+    public String getLine(int index) {
+        if (decoder == null) {
+            decoder = new LineDecoder(charset);
+        }
+        return decoder.decode(data, getStart(index), getLength(index));
+    }
+
+    /**
+     * 第index行的字节视图，每次调用返回同一个复用的对象，position到limit之间是这一行的内容
+     *
+     * @param index
+     * @return
+     */
+    public ByteBuffer getBuffer(int index) {
+        view.limit(getEnd(index));
+        view.position(getStart(index));
+        return view;
+    }
+
+    /**
+     * @return 存放所有行的数组，配合getStart/getEnd直接访问
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getStart(int index) {
+        return index == 0 ? 0 : ends[index - 1];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    public int getLength(int index) {
+        return getEnd(index) - getStart(index);
+    }
+}
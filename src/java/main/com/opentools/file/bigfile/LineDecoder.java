@@ -0,0 +1,193 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 行解码的快速路径，一个实例只能在一个线程中使用
+ * <p>
+ * 编码兼容ASCII（UTF-8、GBK、ISO-8859-1等）时先每次8个字节检查这一行是不是纯ASCII，
+ * 纯ASCII的行不经过CharsetDecoder，直接按Latin-1构造String，JDK9以上只有一次数组拷贝；
+ * 其它行用缓存的CharsetDecoder解码到复用的CharBuffer中，非法字节替换成替换字符，和new String的行为一致
+ *
+ * @author Aaron
+ */
+final class LineDecoder {
+
+    private static final long NON_ASCII = 0x8080808080808080L;
+
+    private final boolean asciiCompatible;
+    private final CharsetDecoder decoder;
+    private byte[] bytes = new byte[256];
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    LineDecoder(Charset charset) {
+        this.asciiCompatible = isAsciiCompatible(charset);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * 解码一行，不改变line的position和limit
+     *
+     * @param line
+     * @return
+     */
+    String decode(ByteBuffer line) {
+        if (line.hasArray()) {
+            return decode(line.array(), line.arrayOffset() + line.position(), line.remaining());
+        }
+        if (asciiCompatible && isAscii(line)) {
+            // 映射的缓冲区没有底层数组，先拷贝到复用的数组
+            int length = line.remaining();
+            ensureBytes(length);
+            line.duplicate().get(bytes, 0, length);
+            return latin1(bytes, 0, length);
+        }
+        return decodeChars(line).toString();
+    }
+
+    /**
+     * 解码数组中的一行
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return
+     */
+    String decode(byte[] data, int offset, int length) {
+        if (asciiCompatible && isAscii(data, offset, length)) {
+            return latin1(data, offset, length);
+        }
+        return decodeChars(ByteBuffer.wrap(data, offset, length)).toString();
+    }
+
+    /**
+     * 解码到复用的CharBuffer中，不改变line的position和limit
+     *
+     * @param line
+     * @return 下次调用前有效，position到limit之间是这一行的字符
+     */
+    CharBuffer decodeChars(ByteBuffer line) {
+        int length = line.remaining();
+        if (asciiCompatible && isAscii(line)) {
+            ensureChars(length);
+            char[] array = chars.array();
+            int position = line.position();
+            for (int i = 0; i < length; i++) {
+                array[i] = (char) line.get(position + i);
+            }
+            chars.clear();
+            chars.limit(length);
+            return chars;
+        }
+        ensureChars((int) (length * (double) decoder.maxCharsPerByte()) + 1);
+        while (true) {
+            ByteBuffer in = line.duplicate();
+            chars.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(in, chars, true);
+            if (!result.isOverflow()) {
+                result = decoder.flush(chars);
+            }
+            if (!result.isOverflow()) {
+                chars.flip();
+                return chars;
+            }
+            ensureChars(chars.capacity() * 2);
+        }
+    }
+
+    /**
+     * 每次检查8个字节的最高位
+     *
+     * @param line
+     * @return
+     */
+    static boolean isAscii(ByteBuffer line) {
+        int i = line.position();
+        int limit = line.limit();
+        for (; i + 8 <= limit; i += 8) {
+            if ((line.getLong(i) & NON_ASCII) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (line.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 数组上没有按long读取的办法，每8个字节合并后检查一次最高位，JIT可以把这个循环展开
+     *
+     * @param data
+     * @param offset
+     * @param length
+     * @return
+     */
+    static boolean isAscii(byte[] data, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            if ((data[i] | data[i + 1] | data[i + 2] | data[i + 3]
+                    | data[i + 4] | data[i + 5] | data[i + 6] | data[i + 7]) < 0) {
+                return false;
+            }
+        }
+        for (; i < end; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String latin1(byte[] data, int offset, int length) {
+        // 高字节为0时每个字节直接作为一个字符
+        return new String(data, 0, offset, length);
+    }
+
+    /**
+     * 0到127的每个字节都解码成同样的字符时，纯ASCII的行可以跳过解码器
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        String decoded = new String(ascii, charset);
+        if (decoded.length() != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length; i++) {
+            if (decoded.charAt(i) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureBytes(int length) {
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+    }
+
+    private void ensureChars(int length) {
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 大文件按行去重，每个不同的行只交出一次
+ * <p>
+ * 和BigFileReader一样分片并行扫描，每行计算64位指纹后放入堆外的集合，堆的占用和文件大小无关：
+ * <ul>
+ * <li>精确模式（默认）：开放寻址哈希表保存指纹和行的位置，指纹相同时回到文件中比较原始内容，结果完全准确</li>
+ * <li>近似模式：布隆过滤器，每行只占约10~20位，误判的行会被丢掉</li>
+ * </ul>
+ * 集合默认放在直接内存中，超过物理内存时可以映射到文件上。
+ * 各分片并发交出不重复的行，同一行出现多次时交出的是哪一次不确定；空行忽略
+ *
+ * @author Aaron
+ */
+public class LineDeduplicator {
+
+    private final File file;
+    private final int threadSize;
+    private final int bufferSize;
+    private final long mapWindowSize;
+    private final long expectedLines;
+    private final double falsePositiveRate;
+    private final File storeFile;
+    private final ExecutorService executorService;
+
+    private LineDeduplicator(Builder builder) {
+        this.file = builder.file;
+        this.threadSize = builder.threadSize;
+        this.bufferSize = builder.bufferSize;
+        this.mapWindowSize = builder.mapWindowSize;
+        this.expectedLines = builder.expectedLines;
+        this.falsePositiveRate = builder.falsePositiveRate;
+        this.storeFile = builder.storeFile;
+        this.executorService = Executors.newFixedThreadPool(threadSize);
+    }
+
+    /**
+     * 找出所有不同的行
+     *
+     * @param handle 在各分片线程中并发调用，只交出第一次遇到的行
+     * @return 全部处理完后完成，值为不同的行数
+     */
+    public CompletableFuture<Long> distinct(final ByteLineHandle handle) {
+        final RandomAccessFile rAccessFile;
+        final List<StartEndPair> startEndPairs;
+        final FingerprintSet set;
+        try {
+            rAccessFile = new RandomAccessFile(file, "r");
+        } catch (IOException e) {
+            return ReaderSupport.failed(e);
+        }
+        final FileChannel channel = rAccessFile.getChannel();
+        try {
+            startEndPairs = FileSlicer.slice(channel, channel.size(), threadSize);
+            OffHeapStore store = new OffHeapStore(storeFile);
+            try {
+                set = falsePositiveRate > 0
+                        ? new BloomFingerprintSet(store, expectedLines, falsePositiveRate)
+                        : new ExactFingerprintSet(store, channel, expectedLines);
+            } catch (IOException | RuntimeException e) {
+                store.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            ReaderSupport.close(rAccessFile);
+            return ReaderSupport.failed(e);
+        }
+        final List<CompletableFuture<Long>> slices = new ArrayList<CompletableFuture<Long>>(startEndPairs.size());
+        for (final StartEndPair pair : startEndPairs) {
+            slices.add(CompletableFuture.supplyAsync(() -> {
+                SliceScanner scanner = new SliceScanner(mapWindowSize,
+                        (int) Math.min(bufferSize, pair.end - pair.start + 1));
+                DistinctSink sink = new DistinctSink(set, scanner, handle);
+                try {
+                    scanner.scan(channel, pair.start, pair.end, sink);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                return sink.distinct;
+            }, executorService));
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[slices.size()]));
+        all.whenComplete((v, e) -> {
+            set.close();
+            ReaderSupport.close(rAccessFile);
+        });
+        return all.thenApply(v -> {
+            long distinct = 0;
+            for (CompletableFuture<Long> slice : slices) {
+                distinct += slice.join();
+            }
+            return distinct;
+        });
+    }
+
+    /**
+     * 解码后交出不同的行
+     *
+     * @param handle
+     * @param charset 为null时使用平台默认编码
+     * @return
+     */
+    public CompletableFuture<Long> distinct(FileHandle handle, String charset) {
+        return distinct(new FileHandleAdapter(handle, charset));
+    }
+
+    /**
+     * 停止线程池
+     */
+    public void shutdown() {
+        this.executorService.shutdown();
+    }
+
+    private static class DistinctSink implements SliceSink {
+        private final FingerprintSet set;
+        private final SliceScanner scanner;
+        private final ByteLineHandle handle;
+        private long distinct;
+
+        DistinctSink(FingerprintSet set, SliceScanner scanner, ByteLineHandle handle) {
+            this.set = set;
+            this.scanner = scanner;
+            this.handle = handle;
+        }
+
+        @Override
+        public void handle(ByteBuffer line) {
+            if (set.add(line, LineHasher.hash(line), scanner.lineStart())) {
+                distinct++;
+                handle.handle(line);
+            }
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+
+    public static class Builder {
+        private int threadSize = 1;
+        private int bufferSize = 1024 * 1024;
+        private long mapWindowSize = BigFileReader.DEFAULT_MAP_WINDOW_SIZE;
+        private long expectedLines = 1024 * 1024;
+        private double falsePositiveRate;
+        private File storeFile;
+        private File file;
+
+        public Builder(String file) {
+            this.file = ReaderSupport.existingFile(file);
+        }
+
+        public Builder withTreahdSize(int size) {
+            this.threadSize = size;
+            return this;
+        }
+
+        /**
+         * 预计的不同行数，精确模式下决定初始容量（超过后会扩容），近似模式下决定过滤器大小
+         *
+         * @param lines
+         * @return
+         */
+        public Builder withExpectedLines(long lines) {
+            if (lines <= 0)
+                throw new IllegalArgumentException("预计行数必须大于0！");
+            this.expectedLines = lines;
+            return this;
+        }
+
+        /**
+         * 使用布隆过滤器近似去重
+         *
+         * @param falsePositiveRate 一个新行被误判为重复的概率
+         * @return
+         */
+        public Builder withBloomFilter(double falsePositiveRate) {
+            if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+                throw new IllegalArgumentException("误判率必须在0到1之间！");
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * 把去重集合映射到文件上，结束后删除这个文件
+         *
+         * @param storeFile
+         * @return
+         */
+        public Builder withStoreFile(String storeFile) {
+            this.storeFile = new File(storeFile);
+            return this;
+        }
+
+        /**
+         * 设置跨窗口行缓冲的初始大小
+         *
+         * @param bufferSize
+         * @return
+         */
+        public Builder withBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * 设置每次映射的窗口大小
+         *
+         * @param mapWindowSize 不能超过Integer.MAX_VALUE
+         * @return
+         */
+        public Builder withMapWindowSize(long mapWindowSize) {
+            this.mapWindowSize = ReaderSupport.checkMapWindowSize(mapWindowSize);
+            return this;
+        }
+
+        public LineDeduplicator build() {
+            if (this.threadSize <= 0)
+                throw new IllegalStateException("线程数必须大于0！");
+            return new LineDeduplicator(this);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 行内容的64位哈希，每次处理8个字节，再用MurmurHash3的fmix64打散
+ *
+ * @author Aaron
+ */
+final class LineHasher {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long M = 0xC6A4A7935BD1E995L;
+
+    private LineHasher() {
+    }
+
+    /**
+     * @param line position到limit之间的内容，不改变position和limit
+     * @return
+     */
+    static long hash(ByteBuffer line) {
+        int position = line.position();
+        int limit = line.limit();
+        long h = SEED ^ ((limit - position) * M);
+        for (; position + 8 <= limit; position += 8) {
+            long k = line.getLong(position) * M;
+            k ^= k >>> 47;
+            h = (h ^ k * M) * M;
+        }
+        if (position < limit) {
+            long k = 0;
+            for (int shift = 0; position < limit; position++, shift += 8) {
+                k |= (line.get(position) & 0xFFL) << shift;
+            }
+            h = (h ^ k) * M;
+        }
+        return fmix64(h);
+    }
+
+    private static long fmix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,550 @@
+package com.opentools.file.bigfile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * 大文件的稀疏行偏移索引，用来随机读取第N行或者第N到M行，不需要从头扫描
+ * <p>
+ * 行以\n分隔（行尾的\r会去掉），空行也算一行，行号从0开始。建索引时沿用BigFileReader的分片方式并行扫描，
+ * 每个分片从自己的第一行开始每隔interval行记录一次偏移；查找时先定位分片和采样点，
+ * 再从采样点开始按窗口映射文件，向后最多扫描interval行。
+ * <p>
+ * 第一次查找时打开源文件，之后一直复用同一个channel，多个线程可以同时查找，不再使用时调用close()。
+ * <p>
+ * 索引以差值编码保存在源文件旁边（文件名加.lidx），记录了源文件的长度和修改时间，源文件变化后索引失效
+ *
+ * @author Aaron
+ */
+public class LineIndex implements Closeable {
+
+    /**
+     * 默认每1024行记录一次偏移
+     */
+    public static final int DEFAULT_INTERVAL = 1024;
+
+    private static final int MAGIC = 0x4C494458;
+    private static final int VERSION = 1;
+    /**
+     * 查找时每次映射的窗口大小，一行比窗口大时窗口加倍
+     */
+    private static final int WINDOW_SIZE = 1024 * 1024;
+
+    private final File file;
+    private final long fileLength;
+    private final long lastModified;
+    private final int interval;
+    /**
+     * 每个分片第一行的行号，第0行单独处理
+     */
+    private final long[] baseLines;
+    private final long[] lineCounts;
+    private final long[][] samples;
+    private final long lines;
+    /**
+     * 第一次查找时打开
+     */
+    private RandomAccessFile rAccessFile;
+
+    private LineIndex(File file, long fileLength, long lastModified, int interval,
+                      long[] baseLines, long[] lineCounts, long[][] samples) {
+        this.file = file;
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.interval = interval;
+        this.baseLines = baseLines;
+        this.lineCounts = lineCounts;
+        this.samples = samples;
+        long lines = fileLength > 0 ? 1 : 0;
+        for (long count : lineCounts) {
+            lines += count;
+        }
+        this.lines = lines;
+    }
+
+    /**
+     * 加载有效的索引，没有或已经失效时并行重建并保存
+     *
+     * @param file
+     * @param threadSize 建索引的线程数
+     * @return
+     * @throws IOException
+     */
+    public static LineIndex open(String file, int threadSize) throws IOException {
+        File source = new File(file);
+        LineIndex index = load(source);
+        if (index == null) {
+            index = build(source, threadSize, DEFAULT_INTERVAL);
+            index.save();
+        }
+        return index;
+    }
+
+    /**
+     * 并行扫描整个文件建立索引，不保存
+     *
+     * @param file
+     * @param threadSize
+     * @param interval   每隔多少行记录一次偏移
+     * @return
+     * @throws IOException
+     */
+    public static LineIndex build(File file, int threadSize, int interval) throws IOException {
+        if (interval <= 0)
+            throw new IllegalArgumentException("采样间隔必须大于0！");
+        long lastModified = file.lastModified();
+        RandomAccessFile rAccessFile = new RandomAccessFile(file, "r");
+        ExecutorService executorService = Executors.newFixedThreadPool(threadSize);
+        try {
+            final FileChannel channel = rAccessFile.getChannel();
+            long fileLength = channel.size();
+            List<StartEndPair> startEndPairs = FileSlicer.slice(channel, fileLength, threadSize);
+            List<CompletableFuture<SliceSamples>> futures =
+                    new ArrayList<CompletableFuture<SliceSamples>>(startEndPairs.size());
+            for (StartEndPair pair : startEndPairs) {
+                futures.add(CompletableFuture.supplyAsync(
+                        new SampleTask(channel, pair, fileLength, interval), executorService));
+            }
+            int count = futures.size();
+            long[] baseLines = new long[count];
+            long[] lineCounts = new long[count];
+            long[][] samples = new long[count][];
+            long base = 1;
+            for (int i = 0; i < count; i++) {
+                SliceSamples slice;
+                try {
+                    slice = futures.get(i).join();
+                } catch (CompletionException e) {
+                    throw unwrap(e);
+                }
+                baseLines[i] = base;
+                lineCounts[i] = slice.lines;
+                samples[i] = slice.offsets;
+                base += slice.lines;
+            }
+            return new LineIndex(file, fileLength, lastModified, interval, baseLines, lineCounts, samples);
+        } finally {
+            executorService.shutdown();
+            rAccessFile.close();
+        }
+    }
+
+    /**
+     * 加载保存在源文件旁边的索引
+     *
+     * @param file
+     * @return 索引不存在或者源文件已经变化时返回null
+     * @throws IOException
+     */
+    public static LineIndex load(File file) throws IOException {
+        File indexFile = indexFile(file);
+        if (!indexFile.exists()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileLength = in.readLong();
+            long lastModified = in.readLong();
+            if (fileLength != file.length() || lastModified != file.lastModified()) {
+                return null;
+            }
+            int interval = in.readInt();
+            int count = in.readInt();
+            long[] baseLines = new long[count];
+            long[] lineCounts = new long[count];
+            long[][] samples = new long[count][];
+            for (int i = 0; i < count; i++) {
+                baseLines[i] = in.readLong();
+                lineCounts[i] = in.readLong();
+                long[] offsets = new long[in.readInt()];
+                long previous = 0;
+                for (int j = 0; j < offsets.length; j++) {
+                    previous += readVarLong(in);
+                    offsets[j] = previous;
+                }
+                samples[i] = offsets;
+            }
+            return new LineIndex(file, fileLength, lastModified, interval, baseLines, lineCounts, samples);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 保存到源文件旁边，偏移按差值变长编码
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        File indexFile = indexFile(file);
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileLength);
+            out.writeLong(lastModified);
+            out.writeInt(interval);
+            out.writeInt(samples.length);
+            for (int i = 0; i < samples.length; i++) {
+                out.writeLong(baseLines[i]);
+                out.writeLong(lineCounts[i]);
+                out.writeInt(samples[i].length);
+                long previous = 0;
+                for (long offset : samples[i]) {
+                    writeVarLong(out, offset - previous);
+                    previous = offset;
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return 源文件的长度和修改时间是否和建索引时一致
+     */
+    public boolean isValid() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return attributes.size() == fileLength && attributes.lastModifiedTime().toMillis() == lastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return 总行数
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * 第n行在文件中的起始位置
+     *
+     * @param n 从0开始
+     * @return
+     * @throws IOException
+     */
+    public long getOffset(long n) throws IOException {
+        checkLine(n);
+        LineCursor cursor = seek(n);
+        try {
+            return cursor.position;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 读取第n行
+     *
+     * @param n
+     * @param charset
+     * @return
+     * @throws IOException
+     */
+    public String getLine(long n, Charset charset) throws IOException {
+        return getLines(n, 1, charset).get(0);
+    }
+
+    /**
+     * 读取从第from行开始的count行，超出文件末尾的部分忽略
+     *
+     * @param from
+     * @param count
+     * @param charset
+     * @return
+     * @throws IOException
+     */
+    public List<String> getLines(long from, int count, Charset charset) throws IOException {
+        checkLine(from);
+        int total = (int) Math.min(count, lines - from);
+        List<String> result = new ArrayList<String>(total);
+        LineCursor cursor = seek(from);
+        try {
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < total; i++) {
+                // lineEnd()可能重新映射，之后再取行首在窗口中的位置
+                int end = cursor.lineEnd();
+                int start = (int) (cursor.position - cursor.windowStart);
+                int length = end - start;
+                if (length > 0 && cursor.window.get(end - 1) == '\r') {
+                    length--;
+                }
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                ByteBuffer line = cursor.window.duplicate();
+                line.position(start);
+                line.get(bytes, 0, length);
+                result.add(new String(bytes, 0, length, charset));
+                cursor.skipLine(end);
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    /**
+     * 关闭查找时打开的源文件，之后再查找会重新打开
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (rAccessFile != null) {
+            rAccessFile.close();
+            rAccessFile = null;
+        }
+    }
+
+    /**
+     * 定位到第n行的开头：从采样点向后跳过最多interval - 1行
+     */
+    private LineCursor seek(long n) throws IOException {
+        if (n == 0) {
+            return new LineCursor(channel(), 0);
+        }
+        int slice = findSlice(n);
+        long local = n - baseLines[slice];
+        LineCursor cursor = new LineCursor(channel(), samples[slice][(int) (local / interval)]);
+        try {
+            int skip = (int) (local % interval);
+            for (int i = 0; i < skip; i++) {
+                cursor.skipLine(cursor.lineEnd());
+            }
+        } catch (IOException | RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        return cursor;
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (rAccessFile == null) {
+            rAccessFile = new RandomAccessFile(file, "r");
+        }
+        return rAccessFile.getChannel();
+    }
+
+    private void checkLine(long n) {
+        if (!isValid()) {
+            throw new IllegalStateException("源文件已经变化，索引失效：" + file);
+        }
+        if (n < 0 || n >= lines) {
+            throw new IndexOutOfBoundsException("行号超出范围：" + n + "，总行数：" + lines);
+        }
+    }
+
+    private int findSlice(long n) {
+        int slice = Arrays.binarySearch(baseLines, n);
+        if (slice < 0) {
+            slice = -slice - 2;
+        }
+        // 跳过没有行的分片
+        while (lineCounts[slice] == 0 || n >= baseLines[slice] + lineCounts[slice]) {
+            slice++;
+        }
+        return slice;
+    }
+
+    /**
+     * 和ExternalSort一样，把分片任务中的IOException还原出来
+     */
+    private static IOException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof UncheckedIOException)
+            return ((UncheckedIOException) cause).getCause();
+        if (cause instanceof IOException)
+            return (IOException) cause;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+        throw e;
+    }
+
+    private static File indexFile(File file) {
+        return new File(file.getPath() + ".lidx");
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * 从某一行开始向后逐行移动，按窗口映射文件；当前行总是完整地落在窗口中，
+     * 行在窗口末尾没有结束时从行首重新映射，一行比窗口还大时窗口加倍
+     */
+    private final class LineCursor {
+        private final FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private int windowSize = WINDOW_SIZE;
+        /**
+         * 当前行的起始位置
+         */
+        private long position;
+
+        LineCursor(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        /**
+         * @return 当前行的\n在窗口中的位置，最后一行没有\n时返回窗口末尾
+         * @throws IOException
+         */
+        int lineEnd() throws IOException {
+            if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+                remap();
+            }
+            while (true) {
+                int from = (int) (position - windowStart);
+                int limit = window.limit();
+                int i = from;
+                while (i < limit && window.get(i) != '\n') {
+                    i++;
+                }
+                if (i < limit || windowStart + limit >= fileLength) {
+                    return i;
+                }
+                if (from == 0) {
+                    if (windowSize == Integer.MAX_VALUE)
+                        throw new IOException("单行超过" + Integer.MAX_VALUE + "字节，位置：" + position);
+                    windowSize = (int) Math.min(windowSize * 2L, Integer.MAX_VALUE);
+                }
+                remap();
+            }
+        }
+
+        /**
+         * 移动到下一行
+         *
+         * @param end 当前行的lineEnd()
+         */
+        void skipLine(int end) {
+            position = windowStart + end + 1;
+        }
+
+        private void remap() throws IOException {
+            close();
+            windowStart = position;
+            window = channel.map(MapMode.READ_ONLY, position, Math.min(windowSize, fileLength - position));
+        }
+
+        void close() {
+            if (window != null) {
+                MappedBufferCleaner.unmap(window);
+                window = null;
+            }
+        }
+    }
+
+    private static class SliceSamples {
+        private long lines;
+        private long[] offsets;
+    }
+
+    /**
+     * 扫描一个分片，分片中每个\n之后开始一行，按分片内的行号每隔interval行记录一次偏移
+     */
+    private static class SampleTask implements Supplier<SliceSamples> {
+        private final FileChannel channel;
+        private final StartEndPair pair;
+        private final long fileLength;
+        private final int interval;
+
+        SampleTask(FileChannel channel, StartEndPair pair, long fileLength, int interval) {
+            this.channel = channel;
+            this.pair = pair;
+            this.fileLength = fileLength;
+            this.interval = interval;
+        }
+
+        @Override
+        public SliceSamples get() {
+            long[] offsets = new long[16];
+            int size = 0;
+            long lines = 0;
+            long sliceSize = pair.end - pair.start + 1;
+            try {
+                for (long windowStart = 0; windowStart < sliceSize;
+                     windowStart += BigFileReader.DEFAULT_MAP_WINDOW_SIZE) {
+                    long windowSize = Math.min(BigFileReader.DEFAULT_MAP_WINDOW_SIZE, sliceSize - windowStart);
+                    long windowBase = pair.start + windowStart;
+                    MappedByteBuffer window = channel.map(MapMode.READ_ONLY, windowBase, windowSize);
+                    try {
+                        int limit = window.limit();
+                        for (int i = 0; i < limit; i++) {
+                            if (window.get(i) != '\n' || windowBase + i + 1 >= fileLength) {
+                                continue;
+                            }
+                            if (lines % interval == 0) {
+                                if (size == offsets.length) {
+                                    offsets = Arrays.copyOf(offsets, size * 2);
+                                }
+                                offsets[size++] = windowBase + i + 1;
+                            }
+                            lines++;
+                        }
+                    } finally {
+                        MappedBufferCleaner.unmap(window);
+                    }
+                }
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            SliceSamples samples = new SliceSamples();
+            samples.lines = lines;
+            samples.offsets = Arrays.copyOf(offsets, size);
+            return samples;
+        }
+    }
+}
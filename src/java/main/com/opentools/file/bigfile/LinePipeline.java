@@ -0,0 +1,227 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流水线模式：扫描线程把行按批拷贝后放入有界的环形缓冲区，独立的处理线程池取出后交给handle
+ * <p>
+ * 批次从空闲池中取用，处理完再放回，整个过程不产生新的批次；缓冲区满时扫描线程阻塞，形成背压
+ *
+ * @author Aaron
+ */
+final class LinePipeline {
+
+    private final BatchLineHandle handle;
+    private final int handlerThreads;
+    private final BlockingQueue<LineBatch> ring;
+    private final BlockingQueue<LineBatch> free;
+    private final PipelineStats stats;
+    private volatile boolean aborted;
+    private volatile boolean closed;
+
+    /**
+     * @param handle         ByteLineHandle可以通过lines()转换
+     * @param scannerThreads 扫描线程数，每个扫描线程同时占用一个批次
+     * @param handlerThreads 处理线程数
+     * @param ringSize       环形缓冲区能容纳的批次数
+     * @param batchLines     每批的行数
+     */
+    LinePipeline(BatchLineHandle handle, int scannerThreads, int handlerThreads,
+                 int ringSize, int batchLines, int batchBytes, Charset charset) {
+        this.handle = handle;
+        this.handlerThreads = handlerThreads;
+        this.ring = new ArrayBlockingQueue<LineBatch>(ringSize);
+        int batches = ringSize + scannerThreads + handlerThreads;
+        this.free = new ArrayBlockingQueue<LineBatch>(batches);
+        for (int i = 0; i < batches; i++) {
+            this.free.add(new LineBatch(batchLines, batchBytes, charset));
+        }
+        this.stats = new PipelineStats(ringSize);
+    }
+
+    /**
+     * 把逐行处理的handle包装成按批处理
+     *
+     * @param handle
+     * @return
+     */
+    static BatchLineHandle lines(final ByteLineHandle handle) {
+        return new BatchLineHandle() {
+
+            @Override
+            public void handle(LineBatch batch) {
+                for (int i = 0; i < batch.size(); i++) {
+                    handle.handle(batch.getBuffer(i));
+                }
+            }
+        };
+    }
+
+    PipelineStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 启动处理线程
+     *
+     * @param executor
+     * @return 所有处理线程结束后完成
+     */
+    CompletableFuture<Void> startHandlers(ExecutorService executor) {
+        List<CompletableFuture<Void>> handlers = new ArrayList<CompletableFuture<Void>>(handlerThreads);
+        for (int i = 0; i < handlerThreads; i++) {
+            handlers.add(CompletableFuture.runAsync(new HandlerTask(), executor));
+        }
+        return CompletableFuture.allOf(handlers.toArray(new CompletableFuture<?>[handlers.size()]));
+    }
+
+    /**
+     * 所有扫描线程结束后调用，通知处理线程退出
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * 一个扫描线程的接收端
+     *
+     * @return
+     */
+    SliceSink sink() {
+        return new PipelineSink();
+    }
+
+    private LineBatch acquire() {
+        LineBatch batch = free.poll();
+        if (batch != null) {
+            return batch;
+        }
+        long startTime = System.nanoTime();
+        try {
+            while (!aborted) {
+                batch = free.poll(100, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    return batch;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待空闲批次时被中断", e);
+        } finally {
+            stats.producerStalled(System.nanoTime() - startTime);
+        }
+    }
+
+    private void publish(LineBatch batch) {
+        stats.published(ring.size());
+        if (ring.offer(batch)) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            while (!aborted) {
+                if (ring.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待环形缓冲区时被中断", e);
+        } finally {
+            stats.producerStalled(System.nanoTime() - startTime);
+        }
+    }
+
+    private class PipelineSink implements SliceSink {
+        private LineBatch batch;
+
+        @Override
+        public void handle(ByteBuffer line) {
+            if (aborted) {
+                return;
+            }
+            if (batch == null) {
+                batch = acquire();
+            }
+            if (batch != null && !batch.add(line)) {
+                publish(batch);
+                batch = acquire();
+                if (batch != null) {
+                    batch.add(line);
+                }
+            }
+        }
+
+        @Override
+        public void finish() {
+            if (batch == null) {
+                return;
+            }
+            if (batch.isEmpty() || aborted) {
+                free.offer(batch);
+            } else {
+                publish(batch);
+            }
+            batch = null;
+        }
+    }
+
+    private class HandlerTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    LineBatch batch = take();
+                    if (batch == null) {
+                        return;
+                    }
+                    if (!aborted) {
+                        handle.handle(batch);
+                    }
+                    batch.clear();
+                    free.offer(batch);
+                }
+            } catch (RuntimeException e) {
+                // 处理失败后让扫描线程不再阻塞，其余处理线程只回收批次直到结束
+                aborted = true;
+                throw e;
+            }
+        }
+
+        /**
+         * @return 扫描结束且缓冲区已空时返回null
+         */
+        private LineBatch take() {
+            LineBatch batch = ring.poll();
+            if (batch != null) {
+                return batch;
+            }
+            long startTime = System.nanoTime();
+            try {
+                // close()在所有批次发布之后调用，看到closed后缓冲区为空就不会再有批次
+                while (!closed) {
+                    batch = ring.poll(10, TimeUnit.MILLISECONDS);
+                    if (batch != null) {
+                        return batch;
+                    }
+                }
+                return ring.poll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待环形缓冲区时被中断", e);
+            } finally {
+                stats.consumerStalled(System.nanoTime() - startTime);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.opentools.file.bigfile;
+
+/**
+ * 在ReaderBuilder的基础上加上FileHandle、ByteLineHandle和CharSequenceHandle三种处理每一行的方式，
+ * BigFileReader和CompressedFileReader共用
+ *
+ * @author Aaron
+ */
+abstract class LineReaderBuilder<B extends LineReaderBuilder<B>> extends ReaderBuilder<B> {
+    FileHandle handle;
+    ByteLineHandle byteLineHandle;
+    CharSequenceHandle charSequenceHandle;
+
+    public B withHandle(FileHandle handle) {
+        this.handle = handle;
+        return self();
+    }
+
+    /**
+     * 按字节接收每一行，不做解码，设置的charset不起作用
+     *
+     * @param handle
+     * @return
+     */
+    public B withByteLineHandle(ByteLineHandle handle) {
+        this.byteLineHandle = handle;
+        return self();
+    }
+
+    /**
+     * 解码到每个线程复用的CharBuffer中交给handle，不为每一行创建String，使用设置的charset解码
+     *
+     * @param handle
+     * @return
+     */
+    public B withCharSequenceHandle(CharSequenceHandle handle) {
+        this.charSequenceHandle = handle;
+        return self();
+    }
+
+    /**
+     * 设置了几种按行处理的handle
+     */
+    int lineHandles() {
+        return (this.handle != null ? 1 : 0) + (this.byteLineHandle != null ? 1 : 0)
+                + (this.charSequenceHandle != null ? 1 : 0);
+    }
+
+    /**
+     * 把设置的handle统一成按字节处理的ByteLineHandle，没有设置时返回null
+     */
+    ByteLineHandle lineHandle() {
+        if (this.byteLineHandle != null) {
+            return this.byteLineHandle;
+        } else if (this.charSequenceHandle != null) {
+            return new CharSequenceHandleAdapter(this.charSequenceHandle, this.charset);
+        } else if (this.handle != null) {
+            return new FileHandleAdapter(this.handle, this.charset);
+        }
+        return null;
+    }
+}
@@ -15,7 +15,12 @@ public class Main {
 		builder.withTreahdSize(10).withCharset("utf8")
 				.withBufferSize(1024 * 1024);
 		BigFileReader bigFileReader = builder.build();
-		bigFileReader.start();
+		ReadResult result = bigFileReader.start().join();
+		for (ReadResult.SliceResult slice : result.getSlices()) {
+			System.out.println(slice);
+		}
+		System.out.println(result);
+		bigFileReader.shutdown();
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+package com.opentools.file.bigfile;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * 及时释放内存映射，避免已经读完的映射窗口一直驻留到GC时才被回收
+ * <p>
+ * JDK9及以上通过sun.misc.Unsafe#invokeCleaner释放，JDK8通过DirectBuffer#cleaner释放，
+ * 都不可用时什么也不做，交给GC回收
+ *
+ * @author Aaron
+ */
+final class MappedBufferCleaner {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception e) {
+            // JDK8没有invokeCleaner，走cleaner()的方式
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private MappedBufferCleaner() {
+    }
+
+    /**
+     * 释放直接内存或内存映射，调用后buffer不能再被访问
+     *
+     * @param buffer
+     */
+    static void unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // 释放失败时交给GC回收
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.opentools.file.bigfile;
+
+/**
+ * 处理BigFileSearcher找到的行
+ *
+ * @author Aaron
+ */
+public interface MatchHandle {
+
+    /**
+     * 处理一行匹配的数据，在各分片线程中并发调用，不保证文件顺序
+     *
+     * @param offset 这一行在文件中的起始位置
+     * @param line   解码后的整行内容（不含换行符）
+     */
+    public void handle(long offset, String line);
+
+}
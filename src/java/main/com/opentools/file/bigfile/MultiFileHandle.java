@@ -0,0 +1,20 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+
+/**
+ * 多文件读取时处理每一行，同时告诉handle这一行来自哪个文件
+ *
+ * @author Aaron
+ */
+public interface MultiFileHandle {
+
+    /**
+     * 处理一行数据，多个线程并发调用
+     *
+     * @param file 这一行所在的文件
+     * @param line
+     */
+    public void handle(File file, String line);
+
+}
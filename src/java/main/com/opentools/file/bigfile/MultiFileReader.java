@@ -0,0 +1,378 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 并行读取多个文件（文件列表或者目录加glob），适合大量大小不一的文件
+ * <p>
+ * 每个文件按目标大小切成工作单元（结束位置对齐到记录边界），所有文件的工作单元按大小从大到小排成一列，
+ * 每个线程读完一个单元就领取剩下的最大的单元，小文件不会让线程闲着，直到最后一个字节读完所有线程都在工作；
+ * 大的单元先开始，尾部只剩小单元。
+ * 所有文件先切分完再开始读取，每个单元读取时才打开文件、读完就关闭，同时打开的文件数不超过线程数
+ * <p>
+ * handle会收到每一行所在的文件，一个文件的所有单元处理完后调用FileCompleteListener
+ *
+ * @author Aaron
+ */
+public class MultiFileReader {
+
+    /**
+     * 默认工作单元大小64M
+     */
+    public static final long DEFAULT_UNIT_SIZE = 64L * 1024 * 1024;
+
+    private final List<File> files;
+    private final long unitSize;
+    private final int bufferSize;
+    private final long mapWindowSize;
+    private final RecordFraming framing;
+    private final MultiFileHandle handle;
+    private final FileCompleteListener listener;
+    private final Charset charset;
+    private final ThreadLocal<LineDecoder> decoder = new ThreadLocal<LineDecoder>();
+    private final int threadSize;
+    private final ForkJoinPool pool;
+
+    private MultiFileReader(Builder builder) {
+        this.files = builder.files;
+        this.unitSize = builder.unitSize;
+        this.bufferSize = builder.bufferSize;
+        this.mapWindowSize = builder.mapWindowSize;
+        this.framing = builder.framing;
+        this.handle = builder.handle;
+        this.listener = builder.listener;
+        this.charset = builder.charset == null ? Charset.defaultCharset() : Charset.forName(builder.charset);
+        this.threadSize = builder.threadSize;
+        this.pool = new ForkJoinPool(builder.threadSize);
+    }
+
+    /**
+     * 开始读取，立即返回
+     *
+     * @return 所有文件读完后完成，结果中每个工作单元是一个分片，分片的位置是在所属文件中的位置；
+     * 任一文件读取失败时以异常完成
+     */
+    public CompletableFuture<ReadResult> start() {
+        final long startTime = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            // 先把所有文件切成工作单元，切分时打开的文件切完就关闭，不会在等待其它任务时一直打开
+            List<SplitTask> splits = new ArrayList<SplitTask>(files.size());
+            for (File file : files) {
+                splits.add(new SplitTask(file));
+            }
+            RecursiveAction.invokeAll(splits);
+            List<UnitTask> units = new ArrayList<UnitTask>();
+            for (SplitTask split : splits) {
+                if (split.startEndPairs.isEmpty()) {
+                    // 空文件没有工作单元
+                    if (listener != null) {
+                        listener.complete(split.file, 0);
+                    }
+                    continue;
+                }
+                FileProgress progress = new FileProgress(split.file, split.startEndPairs.size());
+                for (StartEndPair pair : split.startEndPairs) {
+                    units.add(new UnitTask(progress, pair, units.size()));
+                }
+            }
+            // 按单元大小从大到小领取，大小相同时保持文件的顺序
+            List<UnitTask> queue = new ArrayList<UnitTask>(units);
+            queue.sort(Comparator.comparingLong(UnitTask::size).reversed());
+            AtomicInteger next = new AtomicInteger();
+            List<UnitWorker> workers = new ArrayList<UnitWorker>(threadSize);
+            for (int i = 0; i < threadSize; i++) {
+                workers.add(new UnitWorker(queue, next));
+            }
+            RecursiveAction.invokeAll(workers);
+            List<ReadResult.SliceResult> results = new ArrayList<ReadResult.SliceResult>(units.size());
+            for (UnitTask unit : units) {
+                results.add(unit.result);
+            }
+            return new ReadResult(results, System.nanoTime() - startTime, null);
+        }, pool);
+    }
+
+    /**
+     * 停止线程池
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    private LineDecoder decoder() {
+        LineDecoder current = decoder.get();
+        if (current == null) {
+            current = new LineDecoder(charset);
+            decoder.set(current);
+        }
+        return current;
+    }
+
+    private static void close(RandomAccessFile rAccessFile) {
+        if (rAccessFile != null) {
+            try {
+                rAccessFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 把一个文件切成工作单元，切完后马上关闭文件
+     */
+    private class SplitTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final File file;
+        private final List<StartEndPair> startEndPairs = new ArrayList<StartEndPair>();
+
+        SplitTask(File file) {
+            this.file = file;
+        }
+
+        @Override
+        protected void compute() {
+            RandomAccessFile rAccessFile = null;
+            try {
+                rAccessFile = new RandomAccessFile(file, "r");
+                FileChannel channel = rAccessFile.getChannel();
+                framing.slice(channel, startEndPairs, channel.size(), 0, unitSize);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                close(rAccessFile);
+            }
+        }
+    }
+
+    /**
+     * 一个文件还没有读完的工作单元，最后一个单元读完时调用FileCompleteListener
+     */
+    private class FileProgress {
+        private final File file;
+        private final AtomicInteger remaining;
+        private final AtomicLong lines = new AtomicLong();
+
+        FileProgress(File file, int units) {
+            this.file = file;
+            this.remaining = new AtomicInteger(units);
+        }
+
+        void unitDone(long unitLines) {
+            long total = lines.addAndGet(unitLines);
+            if (remaining.decrementAndGet() == 0 && listener != null) {
+                listener.complete(file, total);
+            }
+        }
+    }
+
+    /**
+     * 一个线程的任务，按顺序领取剩下的最大的单元，直到没有剩余
+     */
+    private class UnitWorker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<UnitTask> queue;
+        private final AtomicInteger next;
+
+        UnitWorker(List<UnitTask> queue, AtomicInteger next) {
+            this.queue = queue;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            int index;
+            try {
+                while ((index = next.getAndIncrement()) < queue.size()) {
+                    queue.get(index).read();
+                }
+            } catch (RuntimeException | Error e) {
+                // 一个单元失败后其它线程不再领取新的单元
+                next.set(queue.size());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 读取一个工作单元，自己打开和关闭文件，读取期间不等待其它任务
+     */
+    private class UnitTask implements SliceSink {
+        private final FileProgress progress;
+        private final long start;
+        private final long end;
+        private final int index;
+        private ReadResult.SliceResult result;
+
+        UnitTask(FileProgress progress, StartEndPair pair, int index) {
+            this.progress = progress;
+            this.start = pair.start;
+            this.end = pair.end;
+            this.index = index;
+        }
+
+        long size() {
+            return end - start + 1;
+        }
+
+        void read() {
+            long startTime = System.nanoTime();
+            RecordReader scanner = framing.newReader(mapWindowSize, (int) Math.min(bufferSize, end - start + 1));
+            RandomAccessFile rAccessFile = null;
+            long lines;
+            try {
+                rAccessFile = new RandomAccessFile(progress.file, "r");
+                lines = scanner.scan(rAccessFile.getChannel(), start, end, this);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                close(rAccessFile);
+            }
+            result = new ReadResult.SliceResult(index, start, end, lines, System.nanoTime() - startTime);
+            progress.unitDone(lines);
+        }
+
+        @Override
+        public void handle(ByteBuffer line) {
+            handle.handle(progress.file, decoder().decode(line));
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+
+    public static class Builder extends ReaderBuilder<Builder> {
+        private long mapWindowSize = BigFileReader.DEFAULT_MAP_WINDOW_SIZE;
+        private long unitSize = DEFAULT_UNIT_SIZE;
+        private RecordFraming framing = RecordFraming.LINES;
+        private MultiFileHandle handle;
+        private FileCompleteListener listener;
+        private List<File> files;
+
+        /**
+         * 读取文件列表中的所有文件
+         *
+         * @param files
+         */
+        public Builder(List<String> files) {
+            this.files = new ArrayList<File>(files.size());
+            for (String name : files) {
+                File file = new File(name);
+                if (!file.isFile())
+                    throw new IllegalArgumentException("文件不存在！" + name);
+                this.files.add(file);
+            }
+            sortBySize();
+        }
+
+        /**
+         * 读取目录下（包括子目录）所有匹配glob的文件，glob按相对于目录的路径匹配，比如"*.log"、"**&#47;*.csv"
+         *
+         * @param directory
+         * @param glob
+         */
+        public Builder(String directory, String glob) {
+            final Path root = new File(directory).toPath();
+            if (!Files.isDirectory(root))
+                throw new IllegalArgumentException("目录不存在！");
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            try (Stream<Path> paths = Files.walk(root)) {
+                this.files = paths.filter(path -> Files.isRegularFile(path) && matcher.matches(root.relativize(path)))
+                        .map(Path::toFile).collect(Collectors.toList());
+            } catch (IOException e) {
+                throw new IllegalArgumentException("读取目录失败！", e);
+            }
+            sortBySize();
+        }
+
+        private void sortBySize() {
+            this.files.sort(Comparator.comparingLong(File::length).reversed());
+        }
+
+        public Builder withHandle(MultiFileHandle handle) {
+            this.handle = handle;
+            return this;
+        }
+
+        /**
+         * 每个文件读完后回调
+         *
+         * @param listener
+         * @return
+         */
+        public Builder withFileCompleteListener(FileCompleteListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * 设置工作单元的目标大小，单元的结束位置对齐到记录边界
+         *
+         * @param unitSize
+         * @return
+         */
+        public Builder withUnitSize(long unitSize) {
+            if (unitSize <= 0)
+                throw new IllegalArgumentException("工作单元大小必须大于0！");
+            this.unitSize = unitSize;
+            return this;
+        }
+
+        /**
+         * 设置记录的切分方式，默认按文本行切分
+         *
+         * @param framing
+         * @return
+         */
+        public Builder withRecordFraming(RecordFraming framing) {
+            if (framing == null)
+                throw new IllegalArgumentException("记录格式不能为空！");
+            this.framing = framing;
+            return this;
+        }
+
+        /**
+         * 设置每次映射的窗口大小
+         *
+         * @param mapWindowSize 不能超过Integer.MAX_VALUE
+         * @return
+         */
+        public Builder withMapWindowSize(long mapWindowSize) {
+            this.mapWindowSize = ReaderSupport.checkMapWindowSize(mapWindowSize);
+            return this;
+        }
+
+        @Override
+        Builder self() {
+            return this;
+        }
+
+        public MultiFileReader build() {
+            if (this.handle == null)
+                throw new IllegalStateException("没有设置处理每一行的handle！");
+            checkThreadSize();
+            return new MultiFileReader(this);
+        }
+    }
+}
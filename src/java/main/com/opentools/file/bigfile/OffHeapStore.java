@@ -0,0 +1,86 @@
+package com.opentools.file.bigfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分配堆外的内存块，直接内存或者映射到文件上。映射文件时内存块按顺序追加在文件末尾，
+ * 数据量超过物理内存时由操作系统换页，堆的大小不受影响
+ * <p>
+ * 分配的内存块都初始化为0，close()时全部释放，映射文件同时删除
+ *
+ * @author Aaron
+ */
+final class OffHeapStore {
+
+    private final File file;
+    private final RandomAccessFile rAccessFile;
+    private final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+    private long fileLength;
+
+    /**
+     * @param file 为null时使用直接内存
+     * @throws IOException
+     */
+    OffHeapStore(File file) throws IOException {
+        this.file = file;
+        this.rAccessFile = file == null ? null : new RandomAccessFile(file, "rw");
+        if (rAccessFile != null) {
+            rAccessFile.setLength(0);
+        }
+    }
+
+    /**
+     * @param size 不能超过Integer.MAX_VALUE
+     * @return 全部为0的内存块
+     * @throws IOException
+     */
+    synchronized ByteBuffer allocate(int size) throws IOException {
+        ByteBuffer block;
+        if (rAccessFile == null) {
+            block = ByteBuffer.allocateDirect(size);
+        } else {
+            // 文件扩展出来的部分读出来都是0
+            block = rAccessFile.getChannel().map(MapMode.READ_WRITE, fileLength, size);
+            fileLength += size;
+        }
+        blocks.add(block);
+        return block;
+    }
+
+    /**
+     * 提前释放不再使用的内存块，映射文件中对应的区域不会回收
+     *
+     * @param block
+     */
+    synchronized void release(ByteBuffer block) {
+        // ByteBuffer.equals比较的是内容，这里按引用查找
+        for (int i = 0; i < blocks.size(); i++) {
+            if (blocks.get(i) == block) {
+                blocks.remove(i);
+                MappedBufferCleaner.unmap(block);
+                return;
+            }
+        }
+    }
+
+    synchronized void close() {
+        for (ByteBuffer block : blocks) {
+            MappedBufferCleaner.unmap(block);
+        }
+        blocks.clear();
+        if (rAccessFile != null) {
+            try {
+                rAccessFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            file.delete();
+        }
+    }
+}
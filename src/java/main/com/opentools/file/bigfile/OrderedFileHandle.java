@@ -0,0 +1,18 @@
+package com.opentools.file.bigfile;
+
+/**
+ * 按文件中的顺序处理每一行，配合BigFileReader的有序模式使用
+ *
+ * @author Aaron
+ */
+public interface OrderedFileHandle {
+
+    /**
+     * 处理一行数据，总是在同一个线程中按文件顺序调用
+     *
+     * @param sequence 行序号，从0开始单调递增，空行不计
+     * @param line
+     */
+    public void handle(long sequence, String line);
+
+}
@@ -0,0 +1,93 @@
+package com.opentools.file.bigfile;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流水线模式的统计，用来分别调整扫描线程和处理线程的数量
+ * <p>
+ * 扫描端等待时间长说明处理线程不够，处理端等待时间长说明扫描（I/O）跟不上
+ *
+ * @author Aaron
+ */
+public class PipelineStats {
+
+    private final int ringSize;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder depthSum = new LongAdder();
+    private final AtomicLong maxDepth = new AtomicLong();
+    private final LongAdder producerStallNanos = new LongAdder();
+    private final LongAdder consumerStallNanos = new LongAdder();
+
+    PipelineStats(int ringSize) {
+        this.ringSize = ringSize;
+    }
+
+    void published(int depth) {
+        batches.increment();
+        depthSum.add(depth);
+        long max = maxDepth.get();
+        while (depth > max && !maxDepth.compareAndSet(max, depth)) {
+            max = maxDepth.get();
+        }
+    }
+
+    void producerStalled(long nanos) {
+        producerStallNanos.add(nanos);
+    }
+
+    void consumerStalled(long nanos) {
+        consumerStallNanos.add(nanos);
+    }
+
+    /**
+     * @return 环形缓冲区的容量（批次数）
+     */
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    /**
+     * @return 扫描线程发布的批次数
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return 发布批次时缓冲区中排队批次数的最大值
+     */
+    public long getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * @return 发布批次时缓冲区中排队批次数的平均值
+     */
+    public double getAverageQueueDepth() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) depthSum.sum() / count;
+    }
+
+    /**
+     * @return 所有扫描线程因缓冲区满或没有空闲批次而等待的总时间
+     */
+    public long getProducerStallMillis() {
+        return producerStallNanos.sum() / 1000000;
+    }
+
+    /**
+     * @return 所有处理线程因缓冲区空而等待的总时间
+     */
+    public long getConsumerStallMillis() {
+        return consumerStallNanos.sum() / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return "batches=" + getBatches() + ";ring size=" + ringSize + ";max depth=" + getMaxQueueDepth()
+                + ";avg depth=" + String.format("%.2f", getAverageQueueDepth())
+                + ";producer stall=" + getProducerStallMillis() + "ms;consumer stall="
+                + getConsumerStallMillis() + "ms";
+    }
+}
@@ -0,0 +1,159 @@
+package com.opentools.file.bigfile;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次读取的统计结果，包含每个分片和总体的字节数、行数、耗时和吞吐量
+ *
+ * @author Aaron
+ */
+public class ReadResult {
+
+    private final List<SliceResult> slices;
+    private final long bytes;
+    private final long lines;
+    private final long elapsedNanos;
+    private final PipelineStats pipelineStats;
+
+    ReadResult(List<SliceResult> slices, long elapsedNanos, PipelineStats pipelineStats) {
+        long bytes = 0;
+        long lines = 0;
+        for (SliceResult slice : slices) {
+            bytes += slice.getBytes();
+            lines += slice.getLines();
+        }
+        this.slices = Collections.unmodifiableList(slices);
+        this.bytes = bytes;
+        this.lines = lines;
+        this.elapsedNanos = elapsedNanos;
+        this.pipelineStats = pipelineStats;
+    }
+
+    /**
+     * 按文件顺序排列的各分片统计
+     *
+     * @return
+     */
+    public List<SliceResult> getSlices() {
+        return slices;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    public double getMbPerSecond() {
+        return mbPerSecond(bytes, elapsedNanos);
+    }
+
+    public double getLinesPerSecond() {
+        return perSecond(lines, elapsedNanos);
+    }
+
+    /**
+     * @return 流水线模式的统计，没有开启流水线模式时为null
+     */
+    public PipelineStats getPipelineStats() {
+        return pipelineStats;
+    }
+
+    @Override
+    public String toString() {
+        return "bytes=" + bytes + ";lines=" + lines + ";use time=" + getElapsedMillis()
+                + "ms;" + String.format("%.2f", getMbPerSecond()) + "MB/s;"
+                + String.format("%.0f", getLinesPerSecond()) + "lines/s";
+    }
+
+    static double mbPerSecond(long bytes, long elapsedNanos) {
+        return perSecond(bytes, elapsedNanos) / (1024 * 1024);
+    }
+
+    static double perSecond(long count, long elapsedNanos) {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return count * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * 单个分片的统计
+     */
+    public static class SliceResult {
+        private final int index;
+        private final long start;
+        private final long end;
+        private final long bytes;
+        private final long lines;
+        private final long elapsedNanos;
+
+        SliceResult(int index, long start, long end, long lines, long elapsedNanos) {
+            this(index, start, end, end - start + 1, lines, elapsedNanos);
+        }
+
+        SliceResult(int index, long start, long end, long bytes, long lines, long elapsedNanos) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.bytes = bytes;
+            this.lines = lines;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return 分片在文件中的起始位置（包含）
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return 分片在文件中的结束位置（包含）
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return 读取的字节数，跟随模式下文件被截断或轮转后会大于end - start + 1
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000;
+        }
+
+        public double getMbPerSecond() {
+            return mbPerSecond(getBytes(), elapsedNanos);
+        }
+
+        public double getLinesPerSecond() {
+            return perSecond(lines, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "slice " + index + ":star=" + start + ";end=" + end + ";lines=" + lines
+                    + ";use time=" + getElapsedMillis() + "ms;"
+                    + String.format("%.2f", getMbPerSecond()) + "MB/s";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.opentools.file.bigfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 用FileChannel按位置读取到池化的直接缓冲区，不改变文件指针，多个线程可以共用同一个channel
+ *
+ * @author Aaron
+ */
+final class ReadWindowSource implements WindowSource {
+
+    private final DirectBufferPool pool;
+
+    ReadWindowSource(DirectBufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public ByteBuffer open(FileChannel channel, long position, int size, long limit) throws IOException {
+        ByteBuffer window = pool.acquire(size);
+        try {
+            while (window.hasRemaining()) {
+                if (channel.read(window, position + window.position()) < 0) {
+                    throw new EOFException("读取位置超出文件末尾：" + (position + window.position()));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.release(window);
+            throw e;
+        }
+        window.flip();
+        return window;
+    }
+
+    @Override
+    public void release(ByteBuffer window) {
+        pool.release(window);
+    }
+}
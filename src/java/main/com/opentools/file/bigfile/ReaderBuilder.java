@@ -0,0 +1,40 @@
+package com.opentools.file.bigfile;
+
+/**
+ * 各个reader的Builder共用的线程数、编码和缓冲区设置
+ *
+ * @author Aaron
+ */
+abstract class ReaderBuilder<B extends ReaderBuilder<B>> {
+    int threadSize = 1;
+    String charset = null;
+    int bufferSize = 1024 * 1024;
+
+    public B withTreahdSize(int size) {
+        this.threadSize = size;
+        return self();
+    }
+
+    public B withCharset(String charset) {
+        this.charset = charset;
+        return self();
+    }
+
+    /**
+     * 设置跨窗口行缓冲的初始大小
+     *
+     * @param bufferSize
+     * @return
+     */
+    public B withBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return self();
+    }
+
+    void checkThreadSize() {
+        if (this.threadSize <= 0)
+            throw new IllegalStateException("线程数必须大于0！");
+    }
+
+    abstract B self();
+}
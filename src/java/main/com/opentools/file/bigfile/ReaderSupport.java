@@ -0,0 +1,64 @@
+package com.opentools.file.bigfile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * BigFileReader和基于它的各种工具共用的小方法
+ *
+ * @author Aaron
+ */
+final class ReaderSupport {
+
+    private ReaderSupport() {
+    }
+
+    /**
+     * 检查要读取的文件是否存在
+     *
+     * @param file
+     * @return
+     */
+    static File existingFile(String file) {
+        File existing = new File(file);
+        if (!existing.exists())
+            throw new IllegalArgumentException("文件不存在！");
+        return existing;
+    }
+
+    /**
+     * 检查映射窗口大小，MappedByteBuffer不能超过Integer.MAX_VALUE
+     *
+     * @param mapWindowSize
+     * @return
+     */
+    static long checkMapWindowSize(long mapWindowSize) {
+        if (mapWindowSize <= 0 || mapWindowSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("映射窗口大小必须在1到" + Integer.MAX_VALUE + "之间！");
+        return mapWindowSize;
+    }
+
+    /**
+     * 关闭并忽略异常，closeable为null时什么也不做
+     *
+     * @param closeable
+     */
+    static void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> failed = new CompletableFuture<T>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+}
@@ -0,0 +1,325 @@
+package com.opentools.file.bigfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * 记录的切分方式，决定分片边界怎么对齐以及每条记录怎么从字节中切出来
+ * <ul>
+ * <li>{@link #LINES}：默认，按\n、\r或\r\n分隔的文本行，空行跳过</li>
+ * <li>{@link #delimiter(byte[])}：任意的多字节分隔符，比如NUL分隔的导出文件，空记录也会交出</li>
+ * <li>{@link #fixedLength(int)}：定长的二进制记录</li>
+ * <li>{@link #lengthPrefixed(int, ByteOrder)}：每条记录前面带有内容长度</li>
+ * </ul>
+ * 除了LINES以外，记录不会跨映射窗口拼接，窗口的结束位置对齐到最后一条完整的记录，记录比窗口大时窗口自动扩大。
+ * 长度前缀格式只有从头逐条跳过才能找到记录边界，划分分片时会顺序读取所有的长度前缀（不读内容）
+ *
+ * @author Aaron
+ */
+public final class RecordFraming {
+
+    /**
+     * 文本行
+     */
+    public static final RecordFraming LINES = new RecordFraming(Kind.LINES, null, 0, 0, null);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    enum Kind {
+        LINES, DELIMITER, FIXED_LENGTH, LENGTH_PREFIXED
+    }
+
+    private final Kind kind;
+    private final byte[] delimiter;
+    private final HorspoolMatcher matcher;
+    private final int recordLength;
+    private final int prefixBytes;
+    private final ByteOrder order;
+
+    private RecordFraming(Kind kind, byte[] delimiter, int recordLength, int prefixBytes, ByteOrder order) {
+        this.kind = kind;
+        this.delimiter = delimiter;
+        this.matcher = delimiter == null ? null : new HorspoolMatcher(new byte[][]{delimiter});
+        this.recordLength = recordLength;
+        this.prefixBytes = prefixBytes;
+        this.order = order;
+    }
+
+    /**
+     * 按分隔符切分，分隔符不能和自身重叠（比如"aa"），否则从分片中间对齐时可能错位
+     *
+     * @param delimiter
+     * @return
+     */
+    public static RecordFraming delimiter(byte[] delimiter) {
+        if (delimiter == null || delimiter.length == 0)
+            throw new IllegalArgumentException("分隔符不能为空！");
+        return new RecordFraming(Kind.DELIMITER, delimiter.clone(), 0, 0, null);
+    }
+
+    /**
+     * 按分隔符切分
+     *
+     * @param delimiter
+     * @param charset   分隔符的编码，为null时使用平台默认编码
+     * @return
+     */
+    public static RecordFraming delimiter(String delimiter, String charset) {
+        return delimiter(delimiter.getBytes(charset == null ? Charset.defaultCharset() : Charset.forName(charset)));
+    }
+
+    /**
+     * 定长记录，文件末尾不满一条记录时读取失败
+     *
+     * @param recordLength
+     * @return
+     */
+    public static RecordFraming fixedLength(int recordLength) {
+        if (recordLength <= 0)
+            throw new IllegalArgumentException("记录长度必须大于0！");
+        return new RecordFraming(Kind.FIXED_LENGTH, null, recordLength, 0, null);
+    }
+
+    /**
+     * 长度前缀记录，前缀是无符号整数，表示后面内容的字节数（不包括前缀本身），交出的只有内容
+     *
+     * @param prefixBytes 前缀的字节数，1、2、4或8
+     * @param order       前缀的字节序
+     * @return
+     */
+    public static RecordFraming lengthPrefixed(int prefixBytes, ByteOrder order) {
+        if (prefixBytes != 1 && prefixBytes != 2 && prefixBytes != 4 && prefixBytes != 8)
+            throw new IllegalArgumentException("长度前缀只能是1、2、4或8个字节！");
+        return new RecordFraming(Kind.LENGTH_PREFIXED, null, 0, prefixBytes, order);
+    }
+
+    boolean isLines() {
+        return kind == Kind.LINES;
+    }
+
+    /**
+     * 创建按这种格式扫描的reader
+     *
+     * @param mapWindowSize
+     * @param carrySize     LINES格式跨窗口行缓冲的初始大小
+     * @return
+     */
+    RecordReader newReader(long mapWindowSize, int carrySize) {
+        return newReader(WindowSource.MAPPED, mapWindowSize, carrySize);
+    }
+
+    /**
+     * 创建按这种格式扫描的reader
+     *
+     * @param source     窗口的读取方式
+     * @param windowSize
+     * @param carrySize  LINES格式跨窗口行缓冲的初始大小
+     * @return
+     */
+    RecordReader newReader(WindowSource source, long windowSize, int carrySize) {
+        if (kind == Kind.LINES) {
+            return new SliceScanner(source, windowSize, carrySize);
+        }
+        return new FramedScanner(this, source, windowSize);
+    }
+
+    /**
+     * 从start开始按size把[start, limit)划分成分片，分片的结束位置对齐到记录边界
+     *
+     * @param channel
+     * @param startEndPairs 划分出的分片按顺序加入这里
+     * @param limit         划分范围的结束位置（不包含）
+     * @param start         必须是一条记录的开头
+     * @param size
+     * @throws IOException
+     */
+    void slice(FileChannel channel, List<StartEndPair> startEndPairs, long limit, long start, long size)
+            throws IOException {
+        if (kind == Kind.LINES) {
+            FileSlicer.calculateStartEnd(channel, startEndPairs, limit, start, size);
+            return;
+        }
+        while (start < limit) {
+            long end = nextEnd(channel, limit, start, size);
+            addPair(startEndPairs, start, end);
+            start = end + 1;
+        }
+    }
+
+    /**
+     * 从start开始大约size个字节的一个分片的结束位置（包含），对齐到记录边界
+     *
+     * @param channel
+     * @param limit   划分范围的结束位置（不包含）
+     * @param start   必须是一条记录的开头
+     * @param size
+     * @return
+     * @throws IOException
+     */
+    long nextEnd(FileChannel channel, long limit, long start, long size) throws IOException {
+        switch (kind) {
+            case LINES:
+                return FileSlicer.alignEnd(channel, limit, start, size);
+            case FIXED_LENGTH:
+                long aligned = Math.max(recordLength, size - size % recordLength);
+                return Math.min(start + aligned, limit) - 1;
+            case DELIMITER:
+                return delimiterEnd(channel, limit, start, size);
+            default:
+                return prefixEnd(channel, limit, start, size);
+        }
+    }
+
+    /**
+     * 在window的[from, limit)中找出从from开始的一条完整记录
+     *
+     * @param window
+     * @param from
+     * @param limit
+     * @param bounds 输出：内容的起始位置、内容的结束位置（不包含）、下一条记录的起始位置
+     * @return 记录不完整时返回false
+     * @throws IOException 长度前缀非法
+     */
+    boolean frame(ByteBuffer window, int from, int limit, int[] bounds) throws IOException {
+        switch (kind) {
+            case DELIMITER:
+                int index = matcher.indexOf(window, from, limit);
+                if (index < 0) {
+                    return false;
+                }
+                return setBounds(bounds, from, index, index + delimiter.length);
+            case FIXED_LENGTH:
+                if (limit - from < recordLength) {
+                    return false;
+                }
+                return setBounds(bounds, from, from + recordLength, from + recordLength);
+            case LENGTH_PREFIXED:
+                if (limit - from < prefixBytes) {
+                    return false;
+                }
+                long length = readPrefix(window, from);
+                if (length > Integer.MAX_VALUE - prefixBytes)
+                    throw new IOException("记录长度非法：" + length);
+                if (limit - from - prefixBytes < length) {
+                    return false;
+                }
+                int contentStart = from + prefixBytes;
+                return setBounds(bounds, contentStart, contentStart + (int) length, contentStart + (int) length);
+            default:
+                throw new IllegalStateException("LINES格式由SliceScanner扫描！");
+        }
+    }
+
+    /**
+     * @return 文件末尾不完整的记录能不能作为最后一条记录交出
+     */
+    boolean acceptsTrailingRecord() {
+        return kind == Kind.DELIMITER;
+    }
+
+    private static boolean setBounds(int[] bounds, int contentStart, int contentEnd, int next) {
+        bounds[0] = contentStart;
+        bounds[1] = contentEnd;
+        bounds[2] = next;
+        return true;
+    }
+
+    /**
+     * 读取position处的长度前缀，按无符号数处理
+     */
+    private long readPrefix(ByteBuffer buffer, int position) {
+        ByteOrder original = buffer.order();
+        buffer.order(order);
+        try {
+            switch (prefixBytes) {
+                case 1:
+                    return buffer.get(position) & 0xFFL;
+                case 2:
+                    return buffer.getShort(position) & 0xFFFFL;
+                case 4:
+                    return buffer.getInt(position) & 0xFFFFFFFFL;
+                default:
+                    long length = buffer.getLong(position);
+                    return length < 0 ? Long.MAX_VALUE : length;
+            }
+        } finally {
+            buffer.order(original);
+        }
+    }
+
+    /**
+     * 分片的结束位置对齐到名义结束位置之后（或者跨过它）的第一个分隔符的末尾
+     */
+    private long delimiterEnd(FileChannel channel, long limit, long start, long size) throws IOException {
+        long nominal = start + size - 1;
+        if (nominal >= limit - 1) {
+            return limit - 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(READ_BUFFER_SIZE, delimiter.length * 2));
+        // 从能覆盖名义结束位置的最早位置开始找，分隔符不会被拆开
+        long from = Math.max(start, nominal - delimiter.length + 1);
+        while (from < limit) {
+            buffer.clear();
+            int length = (int) Math.min(buffer.capacity(), limit - from);
+            buffer.limit(length);
+            readFully(channel, buffer, from);
+            int index = matcher.indexOf(buffer, 0, length);
+            if (index >= 0) {
+                return from + index + delimiter.length - 1;
+            }
+            if (from + length >= limit) {
+                break;
+            }
+            // 相邻两次读取重叠delimiter.length - 1个字节
+            from += length - delimiter.length + 1;
+        }
+        return limit - 1;
+    }
+
+    /**
+     * 从start开始逐条跳过记录，累计达到size后结束一个分片
+     */
+    private long prefixEnd(FileChannel channel, long limit, long start, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long bufferStart = 0;
+        buffer.limit(0);
+        long position = start;
+        while (position < limit && position - start < size) {
+            if (limit - position < prefixBytes) {
+                throw new EOFException("文件末尾的记录不完整，位置：" + position);
+            }
+            if (position < bufferStart || position + prefixBytes > bufferStart + buffer.limit()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), limit - position));
+                readFully(channel, buffer, position);
+                bufferStart = position;
+            }
+            long length = readPrefix(buffer, (int) (position - bufferStart));
+            if (length > limit - position - prefixBytes) {
+                throw new EOFException("文件末尾的记录不完整，位置：" + position);
+            }
+            position += prefixBytes + length;
+        }
+        return position - 1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("读取位置超出文件末尾：" + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static void addPair(List<StartEndPair> startEndPairs, long start, long end) {
+        StartEndPair pair = new StartEndPair();
+        pair.start = start;
+        pair.end = end;
+        startEndPairs.add(pair);
+    }
+}
@@ -0,0 +1,38 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * 按某种记录格式扫描文件的一段范围，把每条记录交给sink，一个实例只能在一个线程中使用
+ *
+ * @author Aaron
+ */
+interface RecordReader {
+
+    /**
+     * 扫描[start, end]范围内的所有记录，不调用sink.finish()
+     *
+     * @param channel
+     * @param start   起始位置（包含），必须是一条记录的开头
+     * @param end     结束位置（包含）
+     * @param sink
+     * @return 交出的记录数
+     * @throws IOException
+     */
+    long scan(FileChannel channel, long start, long end, SliceSink sink) throws IOException;
+
+    /**
+     * 在sink.handle中调用，返回当前记录在文件中的起始位置
+     *
+     * @return
+     */
+    long lineStart();
+
+    /**
+     * 在sink.handle中调用，返回当前记录（包括分隔符）之后的文件位置，也就是下一条记录的起始位置
+     *
+     * @return
+     */
+    long lineEnd();
+}
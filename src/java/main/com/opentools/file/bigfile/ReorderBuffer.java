@@ -0,0 +1,169 @@
+package com.opentools.file.bigfile;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有序模式的重排缓冲区
+ * <p>
+ * 各分片并行解码，解码出的行按块放入各自的有界队列，消费线程按分片顺序逐个取出后交给OrderedFileHandle。
+ * 队列满时分片线程阻塞，所以即使某个分片很慢，缓冲的行数也不会超过 分片数 * 每片块数 * 每块行数。
+ * 某个分片读取失败时消费线程停在这个分片，后面分片的行不再交出，序号始终和文件中的行对应
+ *
+ * @author Aaron
+ */
+final class ReorderBuffer implements Runnable {
+
+    private static final String[] END_OF_SLICE = new String[0];
+    private static final String[] FAILED_SLICE = new String[0];
+
+    private final OrderedFileHandle handle;
+    private final String charset;
+    private final int chunkLines;
+    private final List<BlockingQueue<String[]>> queues;
+    private volatile boolean aborted;
+    private long sequence;
+
+    ReorderBuffer(OrderedFileHandle handle, String charset, int sliceCount,
+                  int chunksPerSlice, int chunkLines) {
+        this.handle = handle;
+        this.charset = charset;
+        this.chunkLines = chunkLines;
+        this.queues = new ArrayList<BlockingQueue<String[]>>(sliceCount);
+        for (int i = 0; i < sliceCount; i++) {
+            this.queues.add(new ArrayBlockingQueue<String[]>(chunksPerSlice));
+        }
+    }
+
+    /**
+     * 第index个分片的接收端，只能在一个线程中使用
+     *
+     * @param index
+     * @return
+     */
+    SliceSink sink(int index) {
+        return new SliceCollector(queues.get(index));
+    }
+
+    /**
+     * 所有分片消费完之后，在跟随模式下继续按顺序处理新追加的行，序号接着往下编
+     *
+     * @return 只能在一个线程中使用
+     */
+    SliceSink tailSink() {
+        final FileHandleAdapter decoder = new FileHandleAdapter(new FileHandle() {
+
+            @Override
+            public void handle(String line) {
+                handle.handle(sequence++, line);
+            }
+        }, charset);
+        return new SliceSink() {
+
+            @Override
+            public void handle(ByteBuffer line) {
+                decoder.handle(line);
+            }
+
+            @Override
+            public void finish() {
+            }
+        };
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (BlockingQueue<String[]> queue : queues) {
+                String[] chunk = queue.take();
+                while (chunk != END_OF_SLICE) {
+                    if (chunk == FAILED_SLICE) {
+                        // 读取的结果以分片的异常完成，其它分片也不再阻塞在队列上
+                        aborted = true;
+                        return;
+                    }
+                    for (String line : chunk) {
+                        handle.handle(sequence++, line);
+                    }
+                    chunk = queue.take();
+                }
+            }
+        } catch (InterruptedException e) {
+            aborted = true;
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("有序模式的消费线程被中断", e);
+        } catch (RuntimeException e) {
+            // 消费失败后让分片线程不再阻塞在队列上
+            aborted = true;
+            throw e;
+        }
+    }
+
+    private class SliceCollector implements SliceSink, FileHandle {
+        private final BlockingQueue<String[]> queue;
+        private final FileHandleAdapter decoder;
+        private String[] chunk = new String[chunkLines];
+        private int size;
+        private boolean failed;
+
+        SliceCollector(BlockingQueue<String[]> queue) {
+            this.queue = queue;
+            this.decoder = new FileHandleAdapter(this, charset);
+        }
+
+        @Override
+        public void handle(ByteBuffer line) {
+            if (aborted) {
+                return;
+            }
+            decoder.handle(line);
+        }
+
+        @Override
+        public void handle(String line) {
+            chunk[size++] = line;
+            if (size == chunkLines) {
+                publish(chunk);
+                chunk = new String[chunkLines];
+                size = 0;
+            }
+        }
+
+        @Override
+        public void abort() {
+            failed = true;
+        }
+
+        @Override
+        public void finish() {
+            if (failed) {
+                // 没有交出的行丢弃，消费线程停在这个分片
+                publish(FAILED_SLICE);
+                return;
+            }
+            if (size > 0) {
+                publish(Arrays.copyOf(chunk, size));
+                size = 0;
+            }
+            publish(END_OF_SLICE);
+        }
+
+        private void publish(String[] lines) {
+            try {
+                while (!aborted) {
+                    if (queue.offer(lines, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待重排缓冲区时被中断", e);
+            }
+        }
+    }
+}
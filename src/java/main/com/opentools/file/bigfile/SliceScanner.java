@@ -0,0 +1,150 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 在文件的一段范围内按窗口逐段映射（或者通过WindowSource读取），直接在窗口上查找换行符，通过复用的视图交出每一行
+ * <p>
+ * 跨窗口的行拼接在carry中，范围末尾没有换行符的最后一行也会交出；\r\n算作一个换行符，空行跳过。
+ * 一个实例只能在一个线程中使用，可以反复扫描不同的范围
+ *
+ * @author Aaron
+ */
+final class SliceScanner implements RecordReader {
+
+    private final long mapWindowSize;
+    private final WindowSource source;
+    /**
+     * 跨窗口的行先拼接在这里
+     */
+    private byte[] carry;
+    private int carryLength;
+    private ByteBuffer carryView;
+    private SliceSink sink;
+    private long lines;
+    private long windowBase;
+    private boolean afterCarriageReturn;
+    private long lineStart;
+    private long lineEnd;
+
+    /**
+     * @param mapWindowSize 每次映射的窗口大小
+     * @param carrySize     跨窗口行缓冲的初始大小
+     */
+    SliceScanner(long mapWindowSize, int carrySize) {
+        this(WindowSource.MAPPED, mapWindowSize, carrySize);
+    }
+
+    /**
+     * @param source        窗口的读取方式
+     * @param mapWindowSize 每个窗口的大小
+     * @param carrySize     跨窗口行缓冲的初始大小
+     */
+    SliceScanner(WindowSource source, long mapWindowSize, int carrySize) {
+        this.source = source;
+        this.mapWindowSize = mapWindowSize;
+        this.carry = new byte[Math.max(carrySize, 16)];
+        this.carryView = ByteBuffer.wrap(carry);
+    }
+
+    @Override
+    public long lineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public long lineEnd() {
+        return lineEnd;
+    }
+
+    @Override
+    public long scan(FileChannel channel, long start, long end, SliceSink sink) throws IOException {
+        this.sink = sink;
+        this.lines = 0;
+        this.carryLength = 0;
+        this.afterCarriageReturn = false;
+        long sliceSize = end - start + 1;
+        // 按窗口逐段映射，carry跨窗口保留未结束的行
+        for (long windowStart = 0; windowStart < sliceSize; windowStart += mapWindowSize) {
+            long windowSize = Math.min(mapWindowSize, sliceSize - windowStart);
+            windowBase = start + windowStart;
+            ByteBuffer window = source.open(channel, windowBase, (int) windowSize, end + 1);
+            try {
+                scanWindow(window);
+            } finally {
+                source.release(window);
+            }
+        }
+        if (carryLength > 0) {
+            lineEnd = end + 1;
+            handleCarry();
+        }
+        this.sink = null;
+        return lines;
+    }
+
+    private void handle(ByteBuffer line) {
+        if (line.hasRemaining()) {
+            sink.handle(line);
+            lines++;
+        }
+    }
+
+    private void scanWindow(ByteBuffer window) {
+        ByteBuffer view = window.duplicate();
+        int limit = window.limit();
+        int lineStart = 0;
+        for (int i = 0; i < limit; i++) {
+            byte tmp = window.get(i);
+            if (tmp == '\n' || tmp == '\r') {
+                if (tmp == '\n' && (i > 0 ? window.get(i - 1) == '\r' : afterCarriageReturn)) {
+                    // \r\n中的\n，前面的\r已经结束了这一行
+                    lineStart = i + 1;
+                    continue;
+                }
+                lineEnd = windowBase + i + 1;
+                if (carryLength > 0) {
+                    appendCarry(window, lineStart, i);
+                    handleCarry();
+                } else {
+                    this.lineStart = windowBase + lineStart;
+                    view.limit(i);
+                    view.position(lineStart);
+                    handle(view);
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < limit) {
+            appendCarry(window, lineStart, limit);
+        }
+        afterCarriageReturn = limit > 0 && window.get(limit - 1) == '\r';
+    }
+
+    private void appendCarry(ByteBuffer window, int from, int to) {
+        if (carryLength == 0) {
+            lineStart = windowBase + from;
+        }
+        int length = to - from;
+        if (carryLength + length > carry.length) {
+            byte[] bigger = new byte[Math.max(carry.length * 2, carryLength + length)];
+            System.arraycopy(carry, 0, bigger, 0, carryLength);
+            carry = bigger;
+            carryView = ByteBuffer.wrap(carry);
+        }
+        ByteBuffer src = window.duplicate();
+        src.limit(to);
+        src.position(from);
+        src.get(carry, carryLength, length);
+        carryLength += length;
+    }
+
+    private void handleCarry() {
+        carryView.limit(carryLength);
+        carryView.position(0);
+        handle(carryView);
+        carryLength = 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.opentools.file.bigfile;
+
+/**
+ * 接收一个分片内的所有行，分片读完后调用finish
+ *
+ * @author Aaron
+ */
+interface SliceSink extends ByteLineHandle {
+
+    /**
+     * 分片读取结束，无论成功还是失败都会调用
+     */
+    void finish();
+
+    /**
+     * 分片读取失败，在finish之前调用，之后不会再交出这个分片的行
+     */
+    default void abort() {
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 从输入流（通常是解压流）中切分文本行，通过复用的视图交出，规则和SliceScanner一致：
+ * \n、\r和\r\n都是换行符，空行跳过
+ * <p>
+ * 一个流被分成多段并行处理时，每段跳过第一个换行符之前的内容（除了第一段），
+ * 并一直读到下一段开头之后的第一个换行符为止，相邻的两段正好在同一个换行符处交接。
+ * 一个实例只能在一个线程中使用
+ *
+ * @author Aaron
+ */
+final class StreamLineScanner {
+
+    private byte[] buffer;
+    private ByteBuffer view;
+    private long bytes;
+
+    /**
+     * @param bufferSize 读缓冲区的初始大小，一行比它长时自动扩大
+     */
+    StreamLineScanner(int bufferSize) {
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.view = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * @return 上一次scan从流中读取的字节数
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * 读取并交出行，不关闭流
+     *
+     * @param in
+     * @param skipFirst 跳过第一个换行符（包括它）之前的内容
+     * @param limit     在流中位置不小于limit的换行符结束的那一行交出后停止，Long.MAX_VALUE表示读到流的末尾
+     * @param handle
+     * @return 交出的行数
+     * @throws IOException
+     */
+    long scan(InputStream in, boolean skipFirst, long limit, ByteLineHandle handle) throws IOException {
+        long lines = 0;
+        long base = 0;
+        int filled = 0;
+        int lineStart = 0;
+        boolean skipping = skipFirst;
+        boolean afterCarriageReturn = false;
+        bytes = 0;
+        while (true) {
+            if (filled == buffer.length) {
+                if (lineStart == 0) {
+                    // 一行比缓冲区还长
+                    byte[] bigger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, bigger, 0, filled);
+                    buffer = bigger;
+                    view = ByteBuffer.wrap(buffer);
+                } else {
+                    System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                    base += lineStart;
+                    filled -= lineStart;
+                    lineStart = 0;
+                }
+            }
+            int n = in.read(buffer, filled, buffer.length - filled);
+            if (n < 0) {
+                break;
+            }
+            bytes += n;
+            int end = filled + n;
+            for (int i = filled; i < end; i++) {
+                byte tmp = buffer[i];
+                if (tmp != '\n' && tmp != '\r') {
+                    afterCarriageReturn = false;
+                    continue;
+                }
+                boolean crlf = tmp == '\n' && afterCarriageReturn;
+                afterCarriageReturn = tmp == '\r';
+                boolean stop = base + i >= limit;
+                if (skipping) {
+                    skipping = false;
+                } else if (!crlf && i > lineStart) {
+                    view.limit(i);
+                    view.position(lineStart);
+                    handle.handle(view);
+                    lines++;
+                }
+                lineStart = i + 1;
+                if (stop) {
+                    return lines;
+                }
+            }
+            filled = end;
+        }
+        if (!skipping && filled > lineStart) {
+            view.limit(filled);
+            view.position(lineStart);
+            handle.handle(view);
+            lines++;
+        }
+        return lines;
+    }
+}
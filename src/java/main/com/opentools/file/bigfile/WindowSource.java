@@ -0,0 +1,47 @@
+package com.opentools.file.bigfile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 为扫描器提供文件某一段的内容，每个实例只在一个线程中使用
+ *
+ * @author Aaron
+ */
+interface WindowSource {
+
+    /**
+     * 按内存映射提供窗口，没有状态，可以共用
+     */
+    WindowSource MAPPED = new WindowSource() {
+        @Override
+        public ByteBuffer open(FileChannel channel, long position, int size, long limit) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+
+        @Override
+        public void release(ByteBuffer window) {
+            MappedBufferCleaner.unmap(window);
+        }
+    };
+
+    /**
+     * 取得[position, position + size)的内容
+     *
+     * @param channel
+     * @param position
+     * @param size
+     * @param limit    扫描范围的结束位置（不包含），可以据此预读下一个窗口
+     * @return position为0、limit为size的缓冲区，在release之前有效
+     * @throws IOException
+     */
+    ByteBuffer open(FileChannel channel, long position, int size, long limit) throws IOException;
+
+    /**
+     * 窗口用完后释放
+     *
+     * @param window
+     */
+    void release(ByteBuffer window);
+}
@@ -0,0 +1,164 @@
+package com.opentools.file.bigfile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 读取zip中每个条目的压缩数据在文件中的位置，ZipFile不提供这个信息；
+ * 只读取中央目录和各条目的本地文件头，支持zip64
+ *
+ * @author Aaron
+ */
+final class ZipEntries {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_SIZE = 30;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final long MASK32 = 0xFFFFFFFFL;
+
+    private ZipEntries() {
+    }
+
+    /**
+     * @param channel
+     * @return 条目名（按UTF-8解码，和ZipFile默认的一致）到{压缩数据的起始位置, 结束位置}的映射，两端都包含；
+     * 没有找到中央目录或格式不对时返回null
+     * @throws IOException
+     */
+    static Map<String, long[]> dataRanges(FileChannel channel) throws IOException {
+        long fileLength = channel.size();
+        long end = findEnd(channel, fileLength);
+        if (end < 0) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(ZIP64_END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        read(channel, record, end, END_SIZE);
+        long entries = record.getShort(10) & 0xFFFF;
+        long directorySize = record.getInt(12) & MASK32;
+        long directoryOffset = record.getInt(16) & MASK32;
+        if ((entries == 0xFFFF || directorySize == MASK32 || directoryOffset == MASK32) && end >= ZIP64_LOCATOR_SIZE) {
+            read(channel, record, end - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+            if (record.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                long zip64End = record.getLong(8);
+                if (zip64End < 0 || zip64End + ZIP64_END_SIZE > fileLength) {
+                    return null;
+                }
+                read(channel, record, zip64End, ZIP64_END_SIZE);
+                if (record.getInt(0) != ZIP64_END_SIGNATURE) {
+                    return null;
+                }
+                entries = record.getLong(32);
+                directorySize = record.getLong(40);
+                directoryOffset = record.getLong(48);
+            }
+        }
+        if (directoryOffset < 0 || directorySize < 0 || directoryOffset + directorySize > fileLength
+                || directorySize > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer directory = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        read(channel, directory, directoryOffset, (int) directorySize);
+        ByteBuffer local = ByteBuffer.allocate(LOCAL_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, long[]> ranges = new HashMap<String, long[]>();
+        int offset = 0;
+        for (long i = 0; i < entries; i++) {
+            if (offset + CENTRAL_SIZE > directorySize || directory.getInt(offset) != CENTRAL_SIGNATURE) {
+                return null;
+            }
+            long compressedSize = directory.getInt(offset + 20) & MASK32;
+            long uncompressedSize = directory.getInt(offset + 24) & MASK32;
+            int nameLength = directory.getShort(offset + 28) & 0xFFFF;
+            int extraLength = directory.getShort(offset + 30) & 0xFFFF;
+            int commentLength = directory.getShort(offset + 32) & 0xFFFF;
+            long localOffset = directory.getInt(offset + 42) & MASK32;
+            int next = offset + CENTRAL_SIZE + nameLength + extraLength + commentLength;
+            if (next > directorySize) {
+                return null;
+            }
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = directory.get(offset + CENTRAL_SIZE + j);
+            }
+            // zip64扩展字段中只有取值为0xFFFFFFFF的字段，顺序固定
+            int extra = offset + CENTRAL_SIZE + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xFFFF;
+                int size = directory.getShort(extra + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA) {
+                    int field = extra + 4;
+                    if (uncompressedSize == MASK32 && field + 8 <= extraEnd) {
+                        field += 8;
+                    }
+                    if (compressedSize == MASK32 && field + 8 <= extraEnd) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localOffset == MASK32 && field + 8 <= extraEnd) {
+                        localOffset = directory.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + size;
+            }
+            if (localOffset < 0 || localOffset + LOCAL_SIZE > fileLength) {
+                return null;
+            }
+            read(channel, local, localOffset, LOCAL_SIZE);
+            if (local.getInt(0) != LOCAL_SIGNATURE) {
+                return null;
+            }
+            // 本地文件头的扩展字段长度可以和中央目录中的不同
+            long start = localOffset + LOCAL_SIZE + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+            String key = new String(name, StandardCharsets.UTF_8);
+            if (!ranges.containsKey(key)) {
+                ranges.put(key, new long[]{start, start + compressedSize - 1});
+            }
+            offset = next;
+        }
+        return ranges;
+    }
+
+    /**
+     * 从文件末尾向前查找中央目录结束记录，记录后面最多有65535字节的注释
+     */
+    private static long findEnd(FileChannel channel, long fileLength) throws IOException {
+        if (fileLength < END_SIZE) {
+            return -1;
+        }
+        int tail = (int) Math.min(fileLength, END_SIZE + 0xFFFF);
+        ByteBuffer buffer = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+        long base = fileLength - tail;
+        read(channel, buffer, base, tail);
+        for (int i = tail - END_SIZE; i >= 0; i--) {
+            if (buffer.getInt(i) == END_SIGNATURE && i + END_SIZE + (buffer.getShort(i + 20) & 0xFFFF) == tail) {
+                return base + i;
+            }
+        }
+        return -1;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("zip文件不完整，位置：" + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package com.opentools.sort.string;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collector;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.opentools.file.bigfile.BigFileAggregator;
+import com.opentools.file.bigfile.RecordFraming;
+
+/**
+ * 外部排序, 用于排序比内存大得多的文本文件, 按行排序, 顺序和String.compareTo一致
+ *
+ * 第一步通过BigFileAggregator把文件分片并行读取, 每个分片线程把行攒在自己的内存中, 超过内存预算后用
+ * Quick3String/MSD/LSD 排序并写入溢出目录中的临时文件(一个有序的run), 所有分片的run排序是并行的
+ *
+ * 第二步用堆(优先队列)对所有run做k路归并, 每个run只保留一个读缓冲区, run太多时先分组归并成较大的run再归并,
+ * 归并阶段的内存也在预算之内
+ *
+ * run可以选择用gzip压缩, 磁盘I/O比CPU慢时能明显减少溢出的数据量.
+ *
+ * 行以\n分隔, 行尾的\r会去掉(\r\n结尾的文件也按行排序), 行中间单独的\r是行内容的一部分;
+ * 空行也参与排序, 输出的行数和输入一致, 每行都以\n结尾
+ *
+ * @author Aaron
+ */
+public class ExternalSort {
+
+	/**
+	 * 每个run使用的排序算法
+	 */
+	public enum Algorithm {
+		/**
+		 * 三向字符串快速排序, 适合任意字符, 默认
+		 */
+		QUICK3,
+		/**
+		 * 高位优先, 只适合字符都小于256的字符串
+		 */
+		MSD,
+		/**
+		 * 低位优先, 只适合所有行等长且字符都小于256的情况, 遇到不等长的行时失败
+		 */
+		LSD
+	}
+
+	/**
+	 * 估算一个String占用的内存: 对象头、数组头和引用大约40字节, 每个字符2字节
+	 */
+	private static final int STRING_OVERHEAD = 40;
+
+	private static final int MIN_MERGE_BUFFER = 8 * 1024;
+
+	private static final int MAX_MERGE_BUFFER = 1024 * 1024;
+
+	private final File input;
+
+	private final File output;
+
+	private final File spillDirectory;
+
+	private final int threadSize;
+
+	private final long memoryBudget;
+
+	private final int maxMergeFanIn;
+
+	private final boolean compress;
+
+	private final Algorithm algorithm;
+
+	private final String charset;
+
+	private ExternalSort(Builder builder) {
+
+		this.input = builder.input;
+		this.output = builder.output;
+		this.spillDirectory = builder.spillDirectory;
+		this.threadSize = builder.threadSize;
+		this.memoryBudget = builder.memoryBudget;
+		this.maxMergeFanIn = builder.maxMergeFanIn;
+		this.compress = builder.compress;
+		this.algorithm = builder.algorithm;
+		this.charset = builder.charset;
+
+	}
+
+	/**
+	 * 排序并写入输出文件, 结束后删除所有临时文件
+	 *
+	 * @return 输出的行数
+	 * @throws IOException
+	 */
+	public long sort() throws IOException {
+
+		List<File> runs = Collections.synchronizedList(new ArrayList<File>());
+		try {
+			createRuns(runs);
+			while (runs.size() > maxMergeFanIn) {
+				runs = mergePass(runs);
+			}
+			return merge(runs, output, Charset.forName(charset), false);
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+
+	}
+
+	/**
+	 * 并行读取并生成run, 每个分片线程最多占用 memoryBudget / threadSize
+	 *
+	 * @param runs 写出的run都加入这里, 失败时也能删除已经写出的run
+	 */
+	private void createRuns(final List<File> runs) throws IOException {
+
+		final long runBytes = Math.max(1, memoryBudget / threadSize);
+		// 只按\n切分, 空行和行中的\r都保留
+		BigFileAggregator aggregator = new BigFileAggregator.Builder(input.getPath())
+				.withTreahdSize(threadSize).withCharset(charset)
+				.withRecordFraming(RecordFraming.delimiter("\n", charset)).build();
+		ExecutorService executorService = Executors.newFixedThreadPool(threadSize);
+		try {
+			List<RunBuffer> buffers = aggregator.collectLines(Collector.of(() -> new RunBuffer(runBytes, runs),
+					RunBuffer::add, (a, b) -> {
+						RunBuffer tail = a;
+						while (tail.next != null) {
+							tail = tail.next;
+						}
+						tail.next = b;
+						return a;
+					}, (RunBuffer first) -> {
+						List<RunBuffer> all = new ArrayList<RunBuffer>();
+						for (RunBuffer buffer = first; buffer != null; buffer = buffer.next) {
+							all.add(buffer);
+						}
+						return all;
+					})).join();
+			// 各分片剩下不满一个run的行也并行排序写出
+			List<CompletableFuture<Void>> leftovers = new ArrayList<CompletableFuture<Void>>();
+			for (final RunBuffer buffer : buffers) {
+				if (!buffer.lines.isEmpty()) {
+					leftovers.add(CompletableFuture.runAsync(buffer::spill, executorService));
+				}
+			}
+			CompletableFuture.allOf(leftovers.toArray(new CompletableFuture<?>[leftovers.size()])).join();
+		} catch (CompletionException e) {
+			throw unwrap(e);
+		} finally {
+			executorService.shutdown();
+			aggregator.shutdown();
+		}
+
+	}
+
+	/**
+	 * 把run按maxMergeFanIn分组归并成较少的run
+	 */
+	private List<File> mergePass(List<File> runs) throws IOException {
+
+		List<File> merged = new ArrayList<File>();
+		try {
+			for (int from = 0; from < runs.size(); from += maxMergeFanIn) {
+				List<File> group = runs.subList(from, Math.min(from + maxMergeFanIn, runs.size()));
+				File run = createRunFile();
+				merged.add(run);
+				merge(group, run, StandardCharsets.UTF_8, compress);
+				for (File done : group) {
+					done.delete();
+				}
+			}
+		} catch (IOException e) {
+			for (File run : merged) {
+				run.delete();
+			}
+			throw e;
+		}
+		return merged;
+
+	}
+
+	/**
+	 * 用堆做k路归并
+	 */
+	private long merge(List<File> runs, File target, Charset targetCharset, boolean targetCompress)
+			throws IOException {
+
+		int bufferSize = (int) Math.max(MIN_MERGE_BUFFER,
+				Math.min(MAX_MERGE_BUFFER, memoryBudget / Math.max(1, runs.size() + 1)));
+		List<RunReader> readers = new ArrayList<RunReader>(runs.size());
+		BufferedWriter writer = null;
+		long lines = 0;
+		try {
+			PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>(Math.max(1, runs.size()));
+			for (File run : runs) {
+				RunReader reader = new RunReader(openRun(run), bufferSize);
+				readers.add(reader);
+				if (reader.advance()) {
+					heap.add(reader);
+				}
+			}
+			OutputStream out = new FileOutputStream(target);
+			if (targetCompress) {
+				out = new GZIPOutputStream(out, bufferSize);
+			}
+			writer = new BufferedWriter(new OutputStreamWriter(out, targetCharset), bufferSize);
+			while (!heap.isEmpty()) {
+				RunReader reader = heap.poll();
+				writer.write(reader.current);
+				writer.write('\n');
+				lines++;
+				if (reader.advance()) {
+					heap.add(reader);
+				}
+			}
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+			if (writer != null) {
+				writer.close();
+			}
+		}
+		return lines;
+
+	}
+
+	private InputStream openRun(File run) throws IOException {
+
+		InputStream in = new FileInputStream(run);
+		return compress ? new GZIPInputStream(in, MIN_MERGE_BUFFER) : in;
+
+	}
+
+	private File createRunFile() throws IOException {
+
+		return File.createTempFile("sort-run-", compress ? ".gz" : ".tmp", spillDirectory);
+
+	}
+
+	private static IOException unwrap(CompletionException e) {
+
+		Throwable cause = e.getCause();
+		if (cause instanceof UncheckedIOException)
+			return ((UncheckedIOException) cause).getCause();
+		if (cause instanceof IOException)
+			return (IOException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		throw e;
+
+	}
+
+	private void sortRun(String[] a) {
+
+		switch (algorithm) {
+		case MSD:
+			MSD.sort(a);
+			break;
+		case LSD:
+			int W = a[0].length();
+			for (String s : a) {
+				if (s.length() != W)
+					throw new IllegalStateException("LSD只能排序等长的行: " + s);
+			}
+			LSD.sort(a, W);
+			break;
+		default:
+			Quick3String.sort(a);
+		}
+
+	}
+
+	/**
+	 * 一个分片线程的内存缓冲区, 超过预算后排序写出一个run
+	 */
+	private class RunBuffer {
+
+		private final long runBytes;
+
+		private final List<String> lines = new ArrayList<String>();
+
+		private final List<File> runs;
+
+		private long bytes;
+
+		private RunBuffer next;
+
+		RunBuffer(long runBytes, List<File> runs) {
+
+			this.runBytes = runBytes;
+			this.runs = runs;
+
+		}
+
+		void add(String line) {
+
+			if (line.endsWith("\r")) {
+				line = line.substring(0, line.length() - 1);
+			}
+			lines.add(line);
+			bytes += STRING_OVERHEAD + 2L * line.length();
+			if (bytes >= runBytes) {
+				spill();
+			}
+
+		}
+
+		void spill() {
+
+			String[] a = lines.toArray(new String[lines.size()]);
+			lines.clear();
+			bytes = 0;
+			sortRun(a);
+			try {
+				File run = createRunFile();
+				runs.add(run);
+				OutputStream out = new FileOutputStream(run);
+				if (compress) {
+					out = new GZIPOutputStream(out, MIN_MERGE_BUFFER);
+				}
+				// run中统一用UTF-8, 和输入输出的编码无关
+				BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+						MAX_MERGE_BUFFER);
+				try {
+					for (String line : a) {
+						writer.write(line);
+						writer.write('\n');
+					}
+				} finally {
+					writer.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+		}
+
+	}
+
+	/**
+	 * 归并时读取一个run, 按当前行参与堆排序. run中的行只以\n分隔, 不能用readLine, 它把单独的\r也当作换行
+	 */
+	private static class RunReader implements Comparable<RunReader> {
+
+		private final Reader reader;
+
+		private final char[] buffer;
+
+		private final StringBuilder line = new StringBuilder();
+
+		private int position;
+
+		private int limit;
+
+		private String current;
+
+		RunReader(InputStream in, int bufferSize) {
+
+			this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+			this.buffer = new char[bufferSize];
+
+		}
+
+		boolean advance() throws IOException {
+
+			line.setLength(0);
+			while (true) {
+				if (position == limit) {
+					limit = reader.read(buffer, 0, buffer.length);
+					position = 0;
+					if (limit < 0) {
+						// run中每行都以\n结尾, 读到末尾时没有不完整的行
+						limit = 0;
+						current = null;
+						return false;
+					}
+				}
+				int start = position;
+				while (position < limit && buffer[position] != '\n') {
+					position++;
+				}
+				line.append(buffer, start, position - start);
+				if (position < limit) {
+					position++;
+					current = line.toString();
+					return true;
+				}
+			}
+
+		}
+
+		@Override
+		public int compareTo(RunReader o) {
+
+			return current.compareTo(o.current);
+
+		}
+
+		void close() {
+
+			try {
+				reader.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+		}
+
+	}
+
+	public static class Builder {
+
+		private File input;
+
+		private File output;
+
+		private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+		private int threadSize = Runtime.getRuntime().availableProcessors();
+
+		private long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+		private int maxMergeFanIn = 128;
+
+		private boolean compress;
+
+		private Algorithm algorithm = Algorithm.QUICK3;
+
+		private String charset = "UTF-8";
+
+		public Builder(String input, String output) {
+
+			this.input = new File(input);
+			if (!this.input.exists())
+				throw new IllegalArgumentException("文件不存在！");
+			this.output = new File(output);
+
+		}
+
+		public Builder withTreahdSize(int size) {
+
+			this.threadSize = size;
+			return this;
+
+		}
+
+		/**
+		 * 读取和归并阶段最多使用的内存(估算值), 默认为最大堆的1/4
+		 *
+		 * @param bytes
+		 * @return
+		 */
+		public Builder withMemoryBudget(long bytes) {
+
+			if (bytes <= 0)
+				throw new IllegalArgumentException("内存预算必须大于0！");
+			this.memoryBudget = bytes;
+			return this;
+
+		}
+
+		/**
+		 * 临时run文件存放的目录, 默认为java.io.tmpdir
+		 *
+		 * @param directory
+		 * @return
+		 */
+		public Builder withSpillDirectory(String directory) {
+
+			this.spillDirectory = new File(directory);
+			if (!this.spillDirectory.isDirectory())
+				throw new IllegalArgumentException("溢出目录不存在！");
+			return this;
+
+		}
+
+		/**
+		 * 一次最多归并多少个run, 超过时分多轮归并
+		 *
+		 * @param fanIn
+		 * @return
+		 */
+		public Builder withMaxMergeFanIn(int fanIn) {
+
+			if (fanIn < 2)
+				throw new IllegalArgumentException("归并路数至少为2！");
+			this.maxMergeFanIn = fanIn;
+			return this;
+
+		}
+
+		/**
+		 * run是否用gzip压缩
+		 *
+		 * @param compress
+		 * @return
+		 */
+		public Builder withCompression(boolean compress) {
+
+			this.compress = compress;
+			return this;
+
+		}
+
+		public Builder withAlgorithm(Algorithm algorithm) {
+
+			this.algorithm = algorithm;
+			return this;
+
+		}
+
+		/**
+		 * 输入和输出文件的编码, 默认UTF-8
+		 *
+		 * @param charset
+		 * @return
+		 */
+		public Builder withCharset(String charset) {
+
+			this.charset = charset;
+			return this;
+
+		}
+
+		public ExternalSort build() {
+
+			if (this.threadSize <= 0)
+				throw new IllegalStateException("线程数必须大于0！");
+			return new ExternalSort(this);
+
+		}
+
+	}
+
+}
@@ -22,8 +22,6 @@ public class MSD {
 
 	private static final int M = 15; // 小数组的切换阈值
 
-	private static String[] aux; // 辅助数组, 存储中间排序结果
-
 	private static int charAt(String s, int d) {
 
 		if (d < s.length())
@@ -40,15 +38,15 @@ public class MSD {
 
 		int N = a.length;
 
-		aux = new String[N];
+		String[] aux = new String[N]; // 辅助数组, 存储中间排序结果, 每次调用单独分配, 可以在多个线程中同时排序
 
-		sort(a, 0, N - 1, 0);
+		sort(a, aux, 0, N - 1, 0);
 
 	}
 
 	// 排序的内部实现, 以第d个字符为键将a[lo]至a[hi]排序, 递归过程
 
-	private static void sort(String[] a, int lo, int hi, int d) {
+	private static void sort(String[] a, String[] aux, int lo, int hi, int d) {
 
 		if (hi <= lo + M) {
 
@@ -82,9 +80,17 @@ public class MSD {
 
 		// 回写
 
+		for (int i = lo; i <= hi; i++) {
+
+			a[i] = aux[i - lo];
+
+		}
+
+		// 递归的以每个字符为键进行排序
+
 		for (int r = 0; r < R; r++) {
 
-			sort(a, lo + count[r], lo + count[r + 1] - 1, d + 1);
+			sort(a, aux, lo + count[r], lo + count[r + 1] - 1, d + 1);
 
 		}
 
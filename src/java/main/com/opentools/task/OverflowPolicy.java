@@ -0,0 +1,18 @@
+package com.opentools.task;
+
+/**
+ * 线程池和工作队列都满、溢出队列也满时的处理方式
+ * @author Aaron
+ */
+public enum OverflowPolicy {
+
+	/**提交任务的线程阻塞，直到溢出队列有空位；在线程池的任务中提交任务时可能死锁**/
+	BLOCK,
+
+	/**由提交任务的线程直接执行**/
+	CALLER_RUNS,
+
+	/**丢弃任务并计数，见TaskPoolManager#getDroppedCount()**/
+	DROP
+
+}
@@ -0,0 +1,104 @@
+package com.opentools.task;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 有界的无锁多生产者单消费者队列
+ * <p>
+ * 入队只有一次getAndSet，不加锁；同一时刻只能有一个线程调用peek和poll（由调用方保证）。
+ * 容量由Semaphore控制，出队时归还名额
+ * @author Aaron
+ */
+final class OverflowQueue<E> {
+
+	private final int capacity;
+	private final Semaphore permits;
+	private final AtomicReference<Node<E>> tail;
+	/**只有消费者访问**/
+	private Node<E> head;
+
+	OverflowQueue(int capacity) {
+		this.capacity = capacity;
+		this.permits = new Semaphore(capacity);
+		Node<E> stub = new Node<E>(null);
+		this.head = stub;
+		this.tail = new AtomicReference<Node<E>>(stub);
+	}
+
+	/**
+	 * 有空位时入队
+	 * @param e
+	 * @return 队列已满时返回false
+	 */
+	boolean offer(E e) {
+		if (!permits.tryAcquire()) {
+			return false;
+		}
+		link(e);
+		return true;
+	}
+
+	/**
+	 * 等待空位后入队
+	 * @param e
+	 * @throws InterruptedException
+	 */
+	void put(E e) throws InterruptedException {
+		permits.acquire();
+		link(e);
+	}
+
+	/**
+	 * 只能由消费者调用；生产者刚交换完tail还没有链接上时，新元素暂时不可见
+	 * @return
+	 */
+	E peek() {
+		Node<E> next = head.next;
+		return next == null ? null : next.value;
+	}
+
+	/**
+	 * 只能由消费者调用
+	 * @return
+	 */
+	E poll() {
+		Node<E> next = head.next;
+		if (next == null) {
+			return null;
+		}
+		E value = next.value;
+		next.value = null;
+		head = next;
+		permits.release();
+		return value;
+	}
+
+	/**
+	 * 队列中元素的大致数量，任何线程都可以调用
+	 * @return
+	 */
+	int size() {
+		return capacity - permits.availablePermits();
+	}
+
+	private void link(E e) {
+		Node<E> node = new Node<E>(e);
+		Node<E> previous = tail.getAndSet(node);
+		Node.NEXT.lazySet(previous, node);
+	}
+
+	private static final class Node<E> {
+		@SuppressWarnings("rawtypes")
+		static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+		E value;
+		volatile Node<E> next;
+
+		Node(E value) {
+			this.value = value;
+		}
+	}
+}
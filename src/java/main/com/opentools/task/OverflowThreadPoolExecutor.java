@@ -0,0 +1,223 @@
+package com.opentools.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带溢出队列的线程池：线程数和工作队列都满时，任务先进入有界的无锁溢出队列，
+ * 每个任务执行完后（afterExecute）立即把溢出的任务转入工作队列，不需要定时轮询；
+ * 工作队列不能缓存任务时（SynchronousQueue）由刚结束任务的工作线程直接执行溢出的任务
+ * <p>
+ * 溢出队列也满时按OverflowPolicy处理；shutdownNow()返回的任务包括溢出队列中的任务
+ * @author Aaron
+ */
+public class OverflowThreadPoolExecutor extends ThreadPoolExecutor implements TaskExecutor {
+
+	/**提交任务的线程等待工作线程进入take()的时间**/
+	private static final long IDLE_WORKER_WAIT_MILLIS = 1;
+
+	private final OverflowQueue<Runnable> overflow;
+	private final OverflowPolicy policy;
+	/**同一时刻只有一个线程转移溢出的任务**/
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final AtomicLong dropped = new AtomicLong();
+	/**已经调用shutdownNow()，不再转移溢出的任务**/
+	private volatile boolean stopped;
+
+	/**
+	 * @param corePoolSize
+	 * @param maximumPoolSize
+	 * @param keepAliveTime
+	 * @param unit
+	 * @param workQueue
+	 * @param threadFactory
+	 * @param overflowCapacity 溢出队列的容量
+	 * @param policy 溢出队列满时的处理方式
+	 */
+	public OverflowThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+			BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory, int overflowCapacity,
+			OverflowPolicy policy) {
+		super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+		if (overflowCapacity <= 0) {
+			throw new IllegalArgumentException("溢出队列的容量必须大于0！");
+		}
+		this.overflow = new OverflowQueue<Runnable>(overflowCapacity);
+		this.policy = policy;
+		setRejectedExecutionHandler(new OverflowHandler());
+	}
+
+	/**
+	 * @return 因为溢出队列已满而丢弃的任务数
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return 溢出队列中等待的任务数
+	 */
+	public int getOverflowSize() {
+		return overflow.size();
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		Runnable next;
+		while (!stopped && overflow.size() > 0 && (next = drain(true)) != null) {
+			runInline(next);
+		}
+	}
+
+	/**
+	 * 把溢出的任务转入工作队列，直到工作队列满或溢出队列空
+	 * <p>
+	 * 工作队列拒绝了任务却是空的（SynchronousQueue此刻没有线程在take()），之后不一定还有任务结束来转移溢出的任务：
+	 * 在工作线程中调用时取出一个任务交给本线程执行；在提交任务的线程中调用时短暂等待刚空闲下来的工作线程
+	 * @param worker 是否在工作线程的afterExecute中调用
+	 * @return 需要本线程直接执行的任务，没有时返回null
+	 */
+	private Runnable drain(boolean worker) {
+		while (!stopped && draining.compareAndSet(false, true)) {
+			Runnable inline = null;
+			try {
+				if (stopped) {
+					return null;
+				}
+				BlockingQueue<Runnable> workQueue = getQueue();
+				Runnable task;
+				while ((task = overflow.peek()) != null && workQueue.offer(task)) {
+					overflow.poll();
+				}
+				if (task != null && workQueue.isEmpty()) {
+					if (worker) {
+						inline = overflow.poll();
+					} else if (offerToIdleWorker(workQueue, task)) {
+						overflow.poll();
+					}
+				}
+			} finally {
+				draining.set(false);
+			}
+			if (inline != null) {
+				return inline;
+			}
+			// 释放之后可能有新的任务溢出或者工作队列有了空位，由本线程再检查一次
+			if (overflow.size() == 0 || getQueue().remainingCapacity() == 0) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 中断正在执行的任务，工作队列和溢出队列中的任务都不再执行
+	 * @return 工作队列和溢出队列中没有执行的任务
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		stopped = true;
+		List<Runnable> tasks = super.shutdownNow();
+		tasks.addAll(removePending());
+		return tasks;
+	}
+
+	/**
+	 * 取出溢出队列中的所有任务，以及正在转移时放进工作队列的任务。
+	 * 需要等待正在转移溢出任务的线程结束，溢出队列同一时刻只能有一个消费者
+	 */
+	private List<Runnable> removePending() {
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		while (!draining.compareAndSet(false, true)) {
+			Thread.yield();
+		}
+		try {
+			getQueue().drainTo(tasks);
+			Runnable task;
+			while ((task = overflow.poll()) != null) {
+				tasks.add(task);
+			}
+		} finally {
+			draining.set(false);
+		}
+		return tasks;
+	}
+
+	/**
+	 * 工作线程执行完afterExecute到进入take()之间有一个很短的间隔，这时SynchronousQueue的offer会失败
+	 */
+	private boolean offerToIdleWorker(BlockingQueue<Runnable> workQueue, Runnable task) {
+		try {
+			return workQueue.offer(task, IDLE_WORKER_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * 在工作线程中直接执行溢出的任务，异常交给线程的UncaughtExceptionHandler，不让工作线程退出
+	 */
+	private void runInline(Runnable task) {
+		Thread thread = Thread.currentThread();
+		beforeExecute(thread, task);
+		Throwable thrown = null;
+		try {
+			task.run();
+		} catch (RuntimeException | Error e) {
+			thrown = e;
+		}
+		super.afterExecute(task, thrown);
+		if (thrown != null) {
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, thrown);
+		}
+	}
+
+	private class OverflowHandler implements RejectedExecutionHandler {
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (isShutdown()) {
+				throw new RejectedExecutionException("线程池已经关闭");
+			}
+			if (!overflow.offer(r)) {
+				switch (policy) {
+					case BLOCK:
+						try {
+							overflow.put(r);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new RejectedExecutionException("等待溢出队列时被中断", e);
+						}
+						break;
+					case CALLER_RUNS:
+						r.run();
+						return;
+					default:
+						dropped.incrementAndGet();
+						if (r instanceof TaskRunner) {
+							// 让等待结果的调用方知道任务不会执行
+							((TaskRunner) r).rejected();
+						}
+						return;
+				}
+			}
+			if (stopped) {
+				// 检查过isShutdown()之后才进入溢出队列，shutdownNow()已经取不到这些任务
+				for (Runnable task : removePending()) {
+					if (task != r && task instanceof TaskRunner) {
+						((TaskRunner) task).rejected("线程池已经关闭，任务不会执行");
+					}
+				}
+				throw new RejectedExecutionException("线程池已经关闭");
+			}
+			drain(false);
+		}
+	}
+}
@@ -1,10 +1,11 @@
 package com.opentools.task;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 
 /**
- * 要执行任务的类、方法、参数
+ * 要执行任务的类、方法、参数，也可以直接是一个Runnable或Callable（不经过反射）
  * @author Aaron
  * @date 2013-12-17 13:17
  */
@@ -13,6 +14,11 @@ public class TaskEntity {
 	private Class<?> taskClass;
 	private String taskMethod;
 	private Map<?, ?> taskParam;
+	private TaskInstanceMode instanceMode = TaskInstanceMode.PROTOTYPE;
+	private Runnable runnable;
+	private Callable<?> callable;
+	/**执行任务的线程池名称，为null时在默认线程池中执行**/
+	private String poolName;
 	
 	public TaskEntity(){
 		
@@ -24,6 +30,25 @@ public class TaskEntity {
 		this.taskParam = taskParam;
 	}
 
+	/**
+	 * @param taskClass
+	 * @param taskMethod
+	 * @param taskParam
+	 * @param instanceMode 任务类实例的创建方式
+	 */
+	public TaskEntity(Class<?> taskClass,String taskMethod,Map<?, ?> taskParam,TaskInstanceMode instanceMode){
+		this(taskClass, taskMethod, taskParam);
+		this.instanceMode = instanceMode;
+	}
+
+	public TaskEntity(Runnable runnable){
+		this.runnable = runnable;
+	}
+
+	public TaskEntity(Callable<?> callable){
+		this.callable = callable;
+	}
+
 	public Class<?> getTaskClass() {
 		return taskClass;
 	}
@@ -48,4 +73,36 @@ public class TaskEntity {
 		this.taskParam = taskParam;
 	}
 
+	public TaskInstanceMode getInstanceMode() {
+		return instanceMode;
+	}
+
+	public void setInstanceMode(TaskInstanceMode instanceMode) {
+		this.instanceMode = instanceMode;
+	}
+
+	public Runnable getRunnable() {
+		return runnable;
+	}
+
+	public void setRunnable(Runnable runnable) {
+		this.runnable = runnable;
+	}
+
+	public Callable<?> getCallable() {
+		return callable;
+	}
+
+	public void setCallable(Callable<?> callable) {
+		this.callable = callable;
+	}
+
+	public String getPoolName() {
+		return poolName;
+	}
+
+	public void setPoolName(String poolName) {
+		this.poolName = poolName;
+	}
+
 }
\ No newline at end of file
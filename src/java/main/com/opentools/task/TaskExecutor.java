@@ -0,0 +1,17 @@
+package com.opentools.task;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * TaskPoolManager中的一个命名线程池
+ * @author Aaron
+ */
+public interface TaskExecutor extends ExecutorService {
+
+	/**
+	 * 因为溢出队列已满而丢弃的任务数
+	 * @return
+	 */
+	long getDroppedCount();
+
+}
@@ -0,0 +1,64 @@
+package com.opentools.task;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 任务的结果，cancel(true)和超时会中断正在执行任务的线程，还没有开始执行的任务不再执行
+ * @author Aaron
+ */
+final class TaskFuture<T> extends CompletableFuture<T> {
+
+	/**正在执行任务的线程，没有开始或者已经结束时为null**/
+	private Thread runner;
+	private boolean interrupted;
+
+	/**
+	 * 开始执行前调用
+	 * @return 已经取消或超时时返回false，任务不再执行
+	 */
+	synchronized boolean start() {
+		if (isDone()) {
+			return false;
+		}
+		runner = Thread.currentThread();
+		return true;
+	}
+
+	/**
+	 * 执行结束后调用，清除由取消或超时造成的中断状态，不影响线程执行之后的任务
+	 */
+	synchronized void finish() {
+		runner = null;
+		if (interrupted) {
+			Thread.interrupted();
+			interrupted = false;
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled && mayInterruptIfRunning) {
+			interrupt();
+		}
+		return cancelled;
+	}
+
+	/**
+	 * 超时后以TimeoutException完成，并中断正在执行的任务
+	 * @param timeoutMillis
+	 */
+	void timeout(long timeoutMillis) {
+		if (completeExceptionally(new TimeoutException("任务执行超过" + timeoutMillis + "毫秒"))) {
+			interrupt();
+		}
+	}
+
+	private synchronized void interrupt() {
+		if (runner != null) {
+			interrupted = true;
+			runner.interrupt();
+		}
+	}
+}
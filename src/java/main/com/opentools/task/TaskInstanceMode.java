@@ -0,0 +1,18 @@
+package com.opentools.task;
+
+/**
+ * 执行任务时任务类实例的创建方式
+ * @author Aaron
+ */
+public enum TaskInstanceMode {
+
+	/**每个任务创建一个新实例（默认）**/
+	PROTOTYPE,
+
+	/**每个任务类只创建一个实例，所有任务共用，任务方法必须是线程安全的**/
+	SINGLETON,
+
+	/**实例用完后放回池中，同一时刻一个实例只被一个任务使用，池的大小不超过同时执行的任务数**/
+	POOLED
+
+}
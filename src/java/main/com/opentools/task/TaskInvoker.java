@@ -0,0 +1,201 @@
+package com.opentools.task;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * 任务方法的调用器，每个(任务类, 任务方法)只解析一次并缓存
+ * <p>
+ * 优先用LambdaMetafactory生成直接调用任务方法的BiFunction/BiConsumer，调用开销和普通的接口调用相同；
+ * 任务类对当前类加载器不可见（比如由子类加载器加载）或者生成失败时，退回到缓存的MethodHandle。
+ * 静态方法不创建实例，实例方法按TaskInstanceMode创建或复用实例
+ * @author Aaron
+ */
+final class TaskInvoker {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	/**按任务类缓存，类被卸载时缓存随之释放**/
+	private static final ClassValue<ConcurrentMap<String, TaskInvoker>> INVOKERS =
+			new ClassValue<ConcurrentMap<String, TaskInvoker>>() {
+		@Override
+		protected ConcurrentMap<String, TaskInvoker> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String, TaskInvoker>();
+		}
+	};
+
+	/**任务类的实例，同一个类的各个任务方法共用**/
+	private static final ClassValue<Instances> INSTANCES = new ClassValue<Instances>() {
+		@Override
+		protected Instances computeValue(Class<?> type) {
+			return new Instances(type);
+		}
+	};
+
+	private final BiFunction<Object, Object, Object> function;
+	private final BiConsumer<Object, Object> consumer;
+	private final MethodHandle handle;
+	private final boolean isStatic;
+	private final Instances instances;
+
+	@SuppressWarnings("unchecked")
+	private TaskInvoker(Class<?> taskClass, Method method) throws ReflectiveOperationException {
+		this.isStatic = Modifier.isStatic(method.getModifiers());
+		this.instances = isStatic ? null : INSTANCES.get(taskClass);
+		MethodHandle target = LOOKUP.unreflect(method);
+		if (isStatic) {
+			target = MethodHandles.dropArguments(target, 0, Object.class);
+		}
+		this.handle = target.asType(MethodType.methodType(Object.class, Object.class, Map.class));
+		boolean isVoid = method.getReturnType() == void.class;
+		BiFunction<Object, Object, Object> function = null;
+		BiConsumer<Object, Object> consumer = null;
+		// 生成的类在TaskInvoker的类加载器中解析任务类，看不到时生成不会失败，要到第一次调用才抛出NoClassDefFoundError
+		if (!isStatic && isVisible(taskClass) && isVisible(method.getDeclaringClass())) {
+			try {
+				if (isVoid) {
+					consumer = metafactory(BiConsumer.class, "accept", void.class, target, taskClass);
+				} else {
+					function = metafactory(BiFunction.class, "apply", Object.class, target, taskClass);
+				}
+			} catch (Throwable e) {
+				// 生成失败时使用MethodHandle
+				function = null;
+				consumer = null;
+			}
+		}
+		this.function = function;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * 取得任务方法的调用器，任务方法是public的、只有一个Map参数
+	 * @param taskClass
+	 * @param taskMethod
+	 * @return
+	 * @throws ReflectiveOperationException 方法不存在或不能访问
+	 */
+	static TaskInvoker of(Class<?> taskClass, String taskMethod) throws ReflectiveOperationException {
+		ConcurrentMap<String, TaskInvoker> invokers = INVOKERS.get(taskClass);
+		TaskInvoker invoker = invokers.get(taskMethod);
+		if (invoker == null) {
+			invoker = new TaskInvoker(taskClass, taskClass.getMethod(taskMethod, Map.class));
+			TaskInvoker existing = invokers.putIfAbsent(taskMethod, invoker);
+			if (existing != null) {
+				invoker = existing;
+			}
+		}
+		return invoker;
+	}
+
+	/**
+	 * 执行任务方法
+	 * @param param
+	 * @param mode 实例的创建方式，静态方法忽略
+	 * @return 任务方法的返回值，void方法返回null
+	 * @throws Throwable 任务方法抛出的异常
+	 */
+	Object invoke(Map<?, ?> param, TaskInstanceMode mode) throws Throwable {
+		if (isStatic) {
+			return handle.invokeExact((Object) null, param);
+		}
+		Object target = instances.acquire(mode);
+		try {
+			if (function != null) {
+				return function.apply(target, param);
+			}
+			if (consumer != null) {
+				consumer.accept(target, param);
+				return null;
+			}
+			return handle.invokeExact(target, param);
+		} finally {
+			instances.release(mode, target);
+		}
+	}
+
+	/**
+	 * @param type
+	 * @return 从TaskInvoker的类加载器按名称能否找到同一个类
+	 */
+	private static boolean isVisible(Class<?> type) {
+		try {
+			return Class.forName(type.getName(), false, TaskInvoker.class.getClassLoader()) == type;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T metafactory(Class<T> functionalInterface, String name, Class<?> returnType,
+			MethodHandle target, Class<?> taskClass) throws Throwable {
+		MethodType erased = MethodType.methodType(returnType, Object.class, Object.class);
+		MethodType instantiated = MethodType.methodType(returnType, taskClass, Map.class);
+		CallSite site = LambdaMetafactory.metafactory(LOOKUP, name, MethodType.methodType(functionalInterface),
+				erased, target, instantiated);
+		return (T) site.getTarget().invoke();
+	}
+
+	/**
+	 * 一个任务类的实例
+	 */
+	private static final class Instances {
+		private final Class<?> taskClass;
+		private volatile MethodHandle constructor;
+		private volatile Object singleton;
+		private final Queue<Object> pool = new ConcurrentLinkedQueue<Object>();
+
+		Instances(Class<?> taskClass) {
+			this.taskClass = taskClass;
+		}
+
+		Object acquire(TaskInstanceMode mode) throws Throwable {
+			if (mode == TaskInstanceMode.SINGLETON) {
+				Object instance = singleton;
+				if (instance == null) {
+					synchronized (this) {
+						instance = singleton;
+						if (instance == null) {
+							instance = newInstance();
+							singleton = instance;
+						}
+					}
+				}
+				return instance;
+			}
+			if (mode == TaskInstanceMode.POOLED) {
+				Object instance = pool.poll();
+				return instance != null ? instance : newInstance();
+			}
+			return newInstance();
+		}
+
+		void release(TaskInstanceMode mode, Object instance) {
+			if (mode == TaskInstanceMode.POOLED) {
+				pool.offer(instance);
+			}
+		}
+
+		private Object newInstance() throws Throwable {
+			MethodHandle current = constructor;
+			if (current == null) {
+				current = LOOKUP.findConstructor(taskClass, MethodType.methodType(void.class))
+						.asType(MethodType.methodType(Object.class));
+				constructor = current;
+			}
+			return current.invokeExact();
+		}
+	}
+}
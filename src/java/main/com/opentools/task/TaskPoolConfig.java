@@ -0,0 +1,334 @@
+package com.opentools.task;
+
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.opentools.common.VirtualThreadUtils;
+
+/**
+ * 一个命名线程池的配置，可以在代码中通过Builder创建，也可以写在common.properties中：
+ * <pre>
+ * task.pool.mail.coreSize=2
+ * task.pool.mail.maxSize=10
+ * task.pool.mail.keepAliveSeconds=60
+ * task.pool.mail.queueType=linked
+ * task.pool.mail.queueSize=1000
+ * task.pool.mail.overflowSize=10000
+ * task.pool.mail.overflowPolicy=drop
+ * task.pool.mail.daemon=true
+ * task.pool.http.mode=virtual
+ * task.pool.http.maxConcurrency=1000
+ * </pre>
+ * 没有配置的项使用默认值（和原来的单例线程池相同）。
+ * mode为virtual时每个任务一个虚拟线程，同时执行的任务数不超过maxConcurrency，
+ * 线程数、工作队列和线程工厂的配置不起作用；JDK不支持虚拟线程时按平台线程的配置创建线程池
+ * @author Aaron
+ */
+public class TaskPoolConfig {
+
+	/**配置项的前缀，后面是线程池的名称和配置项**/
+	public static final String PROPERTY_PREFIX = "task.pool.";
+
+	/**线程池的执行方式**/
+	public enum ExecutorMode {
+		/**平台线程的ThreadPoolExecutor**/
+		PLATFORM,
+		/**每个任务一个虚拟线程，需要JDK21**/
+		VIRTUAL
+	}
+
+	/**工作队列的类型**/
+	public enum QueueType {
+		/**有界的数组队列**/
+		ARRAY,
+		/**链表队列，queueSize为容量**/
+		LINKED,
+		/**不缓存任务，直接交给空闲线程或新建线程**/
+		SYNCHRONOUS
+	}
+
+	private final String name;
+	private final int corePoolSize;
+	private final int maxPoolSize;
+	private final long keepAliveSeconds;
+	private final QueueType queueType;
+	private final int queueSize;
+	private final int overflowSize;
+	private final OverflowPolicy overflowPolicy;
+	private final ThreadFactory threadFactory;
+	private final ExecutorMode mode;
+	private final int maxConcurrency;
+
+	private TaskPoolConfig(Builder builder) {
+		this.name = builder.name;
+		this.corePoolSize = builder.corePoolSize;
+		this.maxPoolSize = builder.maxPoolSize;
+		this.keepAliveSeconds = builder.keepAliveSeconds;
+		this.queueType = builder.queueType;
+		this.queueSize = builder.queueSize;
+		this.overflowSize = builder.overflowSize;
+		this.overflowPolicy = builder.overflowPolicy;
+		this.mode = builder.mode;
+		this.maxConcurrency = builder.maxConcurrency;
+		this.threadFactory = builder.threadFactory != null ? builder.threadFactory
+				: new NamedThreadFactory("task-" + name + "-", builder.daemon);
+	}
+
+	/**
+	 * 从properties中读取一个线程池的配置
+	 * @param name
+	 * @param properties
+	 * @return
+	 */
+	public static TaskPoolConfig fromProperties(String name, Properties properties) {
+		String prefix = PROPERTY_PREFIX + name + ".";
+		Builder builder = new Builder(name);
+		String value;
+		if ((value = properties.getProperty(prefix + "coreSize")) != null) {
+			builder.withCorePoolSize(Integer.parseInt(value.trim()));
+		}
+		if ((value = properties.getProperty(prefix + "maxSize")) != null) {
+			builder.withMaxPoolSize(Integer.parseInt(value.trim()));
+		}
+		if ((value = properties.getProperty(prefix + "keepAliveSeconds")) != null) {
+			builder.withKeepAliveSeconds(Long.parseLong(value.trim()));
+		}
+		if ((value = properties.getProperty(prefix + "queueType")) != null) {
+			builder.withQueueType(QueueType.valueOf(value.trim().toUpperCase(Locale.ENGLISH)));
+		}
+		if ((value = properties.getProperty(prefix + "queueSize")) != null) {
+			builder.withQueueSize(Integer.parseInt(value.trim()));
+		}
+		if ((value = properties.getProperty(prefix + "overflowSize")) != null) {
+			builder.withOverflow(Integer.parseInt(value.trim()), builder.overflowPolicy);
+		}
+		if ((value = properties.getProperty(prefix + "overflowPolicy")) != null) {
+			builder.withOverflow(builder.overflowSize,
+					OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ENGLISH)));
+		}
+		if ((value = properties.getProperty(prefix + "daemon")) != null) {
+			builder.withDaemon(Boolean.parseBoolean(value.trim()));
+		}
+		if ((value = properties.getProperty(prefix + "mode")) != null) {
+			builder.withMode(ExecutorMode.valueOf(value.trim().toUpperCase(Locale.ENGLISH)));
+		}
+		if ((value = properties.getProperty(prefix + "maxConcurrency")) != null) {
+			builder.withMaxConcurrency(Integer.parseInt(value.trim()));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * 按配置创建线程池
+	 * @return
+	 */
+	TaskExecutor newExecutor() {
+		if (mode == ExecutorMode.VIRTUAL) {
+			ThreadFactory virtualFactory = VirtualThreadUtils.newVirtualThreadFactory("task-" + name + "-");
+			if (virtualFactory != null) {
+				return new VirtualThreadTaskExecutor(virtualFactory, maxConcurrency, overflowSize, overflowPolicy);
+			}
+		}
+		BlockingQueue<Runnable> workQueue;
+		switch (queueType) {
+			case LINKED:
+				workQueue = new LinkedBlockingQueue<Runnable>(queueSize);
+				break;
+			case SYNCHRONOUS:
+				workQueue = new SynchronousQueue<Runnable>();
+				break;
+			default:
+				workQueue = new ArrayBlockingQueue<Runnable>(queueSize);
+		}
+		return new OverflowThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveSeconds, TimeUnit.SECONDS,
+				workQueue, threadFactory, overflowSize, overflowPolicy);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getCorePoolSize() {
+		return corePoolSize;
+	}
+
+	public int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	public long getKeepAliveSeconds() {
+		return keepAliveSeconds;
+	}
+
+	public QueueType getQueueType() {
+		return queueType;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public int getOverflowSize() {
+		return overflowSize;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	public ExecutorMode getMode() {
+		return mode;
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * 线程名为前缀加序号
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final boolean daemon;
+		private final AtomicInteger index = new AtomicInteger();
+
+		NamedThreadFactory(String prefix, boolean daemon) {
+			this.prefix = prefix;
+			this.daemon = daemon;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, prefix + index.getAndIncrement());
+			thread.setDaemon(daemon);
+			return thread;
+		}
+	}
+
+	public static class Builder {
+		private String name;
+		private int corePoolSize = 4;
+		private int maxPoolSize = 100;
+		private long keepAliveSeconds = 0;
+		private QueueType queueType = QueueType.ARRAY;
+		private int queueSize = 100;
+		private int overflowSize = 10000;
+		private OverflowPolicy overflowPolicy = OverflowPolicy.CALLER_RUNS;
+		private ThreadFactory threadFactory;
+		private boolean daemon;
+		private ExecutorMode mode = ExecutorMode.PLATFORM;
+		private int maxConcurrency = 1000;
+
+		public Builder(String name) {
+			if (name == null || name.trim().isEmpty())
+				throw new IllegalArgumentException("线程池名称不能为空！");
+			this.name = name;
+		}
+
+		public Builder withCorePoolSize(int corePoolSize) {
+			this.corePoolSize = corePoolSize;
+			return this;
+		}
+
+		public Builder withMaxPoolSize(int maxPoolSize) {
+			this.maxPoolSize = maxPoolSize;
+			return this;
+		}
+
+		public Builder withKeepAliveSeconds(long keepAliveSeconds) {
+			this.keepAliveSeconds = keepAliveSeconds;
+			return this;
+		}
+
+		public Builder withQueueType(QueueType queueType) {
+			this.queueType = queueType;
+			return this;
+		}
+
+		/**
+		 * 工作队列的容量，SYNCHRONOUS不使用
+		 * @param queueSize
+		 * @return
+		 */
+		public Builder withQueueSize(int queueSize) {
+			this.queueSize = queueSize;
+			return this;
+		}
+
+		/**
+		 * 线程和工作队列都满时的溢出队列
+		 * @param overflowSize 溢出队列的容量
+		 * @param overflowPolicy 溢出队列也满时的处理方式
+		 * @return
+		 */
+		public Builder withOverflow(int overflowSize, OverflowPolicy overflowPolicy) {
+			this.overflowSize = overflowSize;
+			this.overflowPolicy = overflowPolicy;
+			return this;
+		}
+
+		/**
+		 * 自定义线程工厂，设置后daemon不起作用
+		 * @param threadFactory
+		 * @return
+		 */
+		public Builder withThreadFactory(ThreadFactory threadFactory) {
+			this.threadFactory = threadFactory;
+			return this;
+		}
+
+		/**
+		 * 默认线程工厂创建的线程是否为守护线程
+		 * @param daemon
+		 * @return
+		 */
+		public Builder withDaemon(boolean daemon) {
+			this.daemon = daemon;
+			return this;
+		}
+
+		/**
+		 * 执行方式，默认PLATFORM
+		 * @param mode
+		 * @return
+		 */
+		public Builder withMode(ExecutorMode mode) {
+			this.mode = mode;
+			return this;
+		}
+
+		/**
+		 * VIRTUAL模式下同时执行的最大任务数
+		 * @param maxConcurrency
+		 * @return
+		 */
+		public Builder withMaxConcurrency(int maxConcurrency) {
+			this.maxConcurrency = maxConcurrency;
+			return this;
+		}
+
+		public TaskPoolConfig build() {
+			if (corePoolSize < 0 || maxPoolSize <= 0 || maxPoolSize < corePoolSize)
+				throw new IllegalStateException("线程数配置不正确！");
+			if (keepAliveSeconds < 0)
+				throw new IllegalStateException("空闲时间不能小于0！");
+			if (queueType != QueueType.SYNCHRONOUS && queueSize <= 0)
+				throw new IllegalStateException("工作队列大小必须大于0！");
+			if (overflowSize <= 0 || overflowPolicy == null)
+				throw new IllegalStateException("溢出队列配置不正确！");
+			if (mode == null || maxConcurrency <= 0)
+				throw new IllegalStateException("执行方式配置不正确！");
+			return new TaskPoolConfig(this);
+		}
+	}
+}
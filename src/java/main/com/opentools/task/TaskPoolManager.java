@@ -1,102 +1,280 @@
 package com.opentools.task;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 线程池管理
+ * <p>
+ * 管理多个命名的线程池，每个线程池有自己的线程数、工作队列、线程工厂和溢出策略，
+ * 不同类型的任务互相隔离，慢任务的突发不会占满其它任务的线程。
+ * 线程池可以在common.properties中配置（见TaskPoolConfig），也可以在代码中注册，
+ * 阻塞I/O为主的线程池可以使用虚拟线程（TaskPoolConfig.ExecutorMode.VIRTUAL）；
+ * 名为default的线程池总是存在，没有指定线程池的任务都在这里执行
+ * <p>
+ * 添加任务后返回任务结果的CompletableFuture，可以等待、组合后续操作，任务失败时以异常完成；
+ * 可以设置超时，超时或者cancel(true)会中断正在执行的任务
  * @author Aaron
  * @date 2013-12-17 11:10
  */
 public class TaskPoolManager {
 	
+	/**默认线程池的名称**/
+	public static final String DEFAULT_POOL = "default";
+	
+	/**线程池配置所在的文件，在classpath根目录下**/
+	private static final String CONFIG_FILE = "common.properties";
+	
 	/**构造一个单例的线程池**/
 	private static TaskPoolManager tpm = new TaskPoolManager();
 	
-    private TaskPoolManager() {}
+	/**处理任务超时的调度线程**/
+	private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "task-timeout");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/**按名称注册的线程池**/
+	private final ConcurrentMap<String, TaskExecutor> pools =
+			new ConcurrentHashMap<String, TaskExecutor>();
+	
+    private TaskPoolManager() {
+		Properties properties = loadConfig();
+		for (String name : configuredPools(properties)) {
+			try {
+				pools.put(name, TaskPoolConfig.fromProperties(name, properties).newExecutor());
+			} catch (RuntimeException e) {
+				// 在静态初始化中执行，一个线程池的配置错误不能让整个TaskPoolManager不可用，只跳过这个线程池
+				System.err.println("线程池配置不正确，已跳过：" + name);
+				e.printStackTrace();
+			}
+		}
+		if (!pools.containsKey(DEFAULT_POOL)) {
+			pools.put(DEFAULT_POOL, new TaskPoolConfig.Builder(DEFAULT_POOL).build().newExecutor());
+		}
+    }
     
 	public static TaskPoolManager newInstance() { 
 		return tpm;
 	}
 
-	/**线程池维护线程的最少数量**/
-	private final static int CORE_POOL_SIZE = 4;
-	
-	/**线程池维护线程的最大数量**/
-	private final static int MAX_POOL_SIZE = 100;
-	
-	/**线程池维护线程所允许的空闲时间**/
-	private final static int KEEP_ALIVE_TIME = 0;
-	
-	/**线程池所使用的缓冲队列大小**/
-	private final static int WORK_QUEUE_SIZE = 100;
-	
-	/**消息缓冲队列**/
-	private Queue<TaskEntity> taskQueue = new LinkedList<TaskEntity>();
-	
-	/**访问消息缓存的调度线程**/
-	final Runnable accessBufferThread = new Runnable() {
-		public void run() {
-			/**查看是否有待定请求，如果有，则创建一个新的TaskEntity，并添加到线程池中**/
-			if (hasMoreAcquire()) {
-				TaskEntity msg = taskQueue.poll();
-				Runnable task = new TaskRunner(msg);
-				threadPool.execute(task);
-			}
+	/**
+	 * 注册一个线程池
+	 * @param config
+	 * @throws IllegalStateException 同名的线程池已经存在
+	 */
+	public void register(TaskPoolConfig config) {
+		TaskExecutor executor = config.newExecutor();
+		if (pools.putIfAbsent(config.getName(), executor) != null) {
+			executor.shutdown();
+			throw new IllegalStateException("线程池已经存在：" + config.getName());
 		}
-	};
-	
-	final RejectedExecutionHandler handler = new RejectedExecutionHandler() {
-		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-			taskQueue.offer(((TaskRunner) r).getTask());
+	}
+
+	/**
+	 * 取得线程池
+	 * @param name 为null时返回默认线程池
+	 * @return
+	 * @throws IllegalArgumentException 线程池不存在
+	 */
+	public TaskExecutor getPool(String name) {
+		TaskExecutor pool = pools.get(name == null ? DEFAULT_POOL : name);
+		if (pool == null) {
+			throw new IllegalArgumentException("线程池不存在：" + name);
 		}
-	};
-	
-	/**管理线程池**/
-	final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
-			CORE_POOL_SIZE, MAX_POOL_SIZE, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
-			new ArrayBlockingQueue<Runnable>(WORK_QUEUE_SIZE), this.handler);
-	
-	/**调度线程池**/
-	final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-	
-	final ScheduledFuture<?> taskHandler = scheduler.scheduleAtFixedRate(accessBufferThread, 0, 1, TimeUnit.SECONDS);
+		return pool;
+	}
 
+	/**
+	 * 默认线程池中溢出队列满时丢弃的任务数
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return getDroppedCount(DEFAULT_POOL);
+	}
 
 	/**
-	 * 判断线程池时候为空
+	 * 溢出队列满时丢弃的任务数
+	 * @param poolName
 	 * @return
 	 */
-	private boolean hasMoreAcquire() {
-		return !taskQueue.isEmpty();
+	public long getDroppedCount(String poolName) {
+		return getPool(poolName).getDroppedCount();
+	}
+
+	/**
+	 * 向线程池添加单个任务，任务在TaskEntity#getPoolName()指定的线程池中执行
+	 * @param msg
+	 * @return 任务的返回值，void方法和Runnable为null
+	 */
+	public CompletableFuture<Object> addTask(TaskEntity msg) {
+		return addTask(msg.getPoolName(), msg);
+	}
+
+	/**
+	 * 向指定的线程池添加单个任务
+	 * @param poolName 为null时使用任务自己指定的线程池
+	 * @param msg
+	 * @return 任务的返回值，void方法和Runnable为null
+	 */
+	public CompletableFuture<Object> addTask(String poolName, TaskEntity msg) {
+		return addTask(poolName, msg, 0, TimeUnit.MILLISECONDS);
 	}
 
 	/**
-	 * 向线程池添加单个任务
+	 * 向指定的线程池添加单个任务，超时后返回的CompletableFuture以TimeoutException完成，并中断任务
+	 * @param poolName 为null时使用任务自己指定的线程池
 	 * @param msg
+	 * @param timeout 从添加时开始计算，小于等于0表示不超时
+	 * @param unit
+	 * @return 任务的返回值，void方法和Runnable为null
+	 */
+	public CompletableFuture<Object> addTask(String poolName, TaskEntity msg, long timeout, TimeUnit unit) {
+		final TaskRunner task = new TaskRunner(msg);
+		CompletableFuture<Object> future = task.getFuture();
+		if (timeout > 0) {
+			final long timeoutMillis = unit.toMillis(timeout);
+			final ScheduledFuture<?> timer = TIMEOUT_SCHEDULER.schedule(() -> task.timeout(timeoutMillis),
+					timeout, unit);
+			future.whenComplete((v, e) -> timer.cancel(false));
+		}
+		try {
+			getPool(poolName != null ? poolName : msg.getPoolName()).execute(task);
+		} catch (RejectedExecutionException | IllegalArgumentException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * 把Callable提交到指定的线程池
+	 * @param poolName 为null时使用默认线程池
+	 * @param callable
+	 * @return callable的返回值
 	 */
-	public void addTask(TaskEntity msg) {
-		Runnable task = new TaskRunner(msg);
-		threadPool.execute(task);
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> submit(String poolName, Callable<T> callable) {
+		return (CompletableFuture<T>) addTask(poolName, new TaskEntity(callable));
 	}
 	
 	/**
-	 * 向线程池添加多个任务
+	 * 向线程池添加多个任务，每个任务在自己指定的线程池中执行
 	 * @param msgList
+	 * @return 所有任务完成后完成，结果按任务的顺序排列；任一任务失败时以异常完成
 	 */
-	public void addTasks(List<TaskEntity> msgList) {
-		Runnable task = null;
+	public CompletableFuture<List<Object>> addTasks(List<TaskEntity> msgList) {
+		return addTasks(null, msgList);
+	}
+
+	/**
+	 * 向指定的线程池添加多个任务
+	 * @param poolName 为null时每个任务使用自己指定的线程池
+	 * @param msgList
+	 * @return 所有任务完成后完成，结果按任务的顺序排列；任一任务失败时以异常完成
+	 */
+	public CompletableFuture<List<Object>> addTasks(String poolName, List<TaskEntity> msgList) {
+		return addTasks(poolName, msgList, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 向指定的线程池添加多个任务，取消返回的CompletableFuture时取消所有任务
+	 * @param poolName 为null时每个任务使用自己指定的线程池
+	 * @param msgList
+	 * @param timeout 每个任务的超时，小于等于0表示不超时
+	 * @param unit
+	 * @return 所有任务完成后完成，结果按任务的顺序排列；任一任务失败或超时时以异常完成
+	 */
+	public CompletableFuture<List<Object>> addTasks(String poolName, List<TaskEntity> msgList, long timeout,
+			TimeUnit unit) {
+		final List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>(msgList.size());
 		for(TaskEntity msg : msgList){
-			task = new TaskRunner(msg);
-			threadPool.execute(task);
+			futures.add(addTask(poolName, msg, timeout, unit));
+		}
+		final CompletableFuture<List<Object>> all = CompletableFuture
+				.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(v -> {
+					List<Object> results = new ArrayList<Object>(futures.size());
+					for (CompletableFuture<Object> future : futures) {
+						results.add(future.join());
+					}
+					return results;
+				});
+		all.whenComplete((v, e) -> {
+			if (all.isCancelled()) {
+				// 从后往前取消，先取消排队的任务，正在执行的任务被中断后线程不会再取到它们
+				for (int i = futures.size() - 1; i >= 0; i--) {
+					futures.get(i).cancel(true);
+				}
+			}
+		});
+		return all;
+	}
+
+	/**
+	 * 关闭所有线程池，已经提交的任务会执行完
+	 */
+	public void shutdown() {
+		for (TaskExecutor pool : pools.values()) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * 读取classpath根目录下的common.properties，不存在时返回空的配置
+	 * @return
+	 */
+	private static Properties loadConfig() {
+		Properties properties = new Properties();
+		ClassLoader loader = TaskPoolManager.class.getClassLoader();
+		InputStream in = loader == null ? ClassLoader.getSystemResourceAsStream(CONFIG_FILE)
+				: loader.getResourceAsStream(CONFIG_FILE);
+		if (in == null) {
+			return properties;
+		}
+		try {
+			properties.load(in);
+		} catch (IOException | IllegalArgumentException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * 配置中出现的线程池名称，即task.pool.名称.配置项中的名称
+	 * @param properties
+	 * @return
+	 */
+	private static Set<String> configuredPools(Properties properties) {
+		Set<String> names = new LinkedHashSet<String>();
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(TaskPoolConfig.PROPERTY_PREFIX)) {
+				int dot = key.lastIndexOf('.');
+				if (dot > TaskPoolConfig.PROPERTY_PREFIX.length()) {
+					names.add(key.substring(TaskPoolConfig.PROPERTY_PREFIX.length(), dot));
+				}
+			}
 		}
+		return names;
 	}
 }
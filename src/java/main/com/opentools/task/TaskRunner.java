@@ -1,10 +1,10 @@
 package com.opentools.task;
 
-import java.lang.reflect.Method;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * 执行任务的线程
+ * 执行任务的线程，任务的返回值或异常通过getFuture()取得
  * @author Aaron
  * @date 2013-12-17 13:17
  */
@@ -13,6 +13,9 @@ public class TaskRunner implements Runnable{
 	/**任务实体定义**/
 	private TaskEntity task;
 
+	/**任务的结果**/
+	private final TaskFuture<Object> future = new TaskFuture<Object>();
+
 	public TaskEntity getTask() {
 		return task;
 	}
@@ -20,20 +23,70 @@ public class TaskRunner implements Runnable{
 	public TaskRunner(TaskEntity task) {
 		this.task = task;
 	}
+
+	/**
+	 * 任务的结果，任务失败时以异常完成；cancel(true)会中断正在执行的任务
+	 * @return
+	 */
+	public CompletableFuture<Object> getFuture() {
+		return future;
+	}
 	
 	/**
-	 * 线程开始执行
+	 * 线程开始执行，已经取消或超时的任务不再执行
 	 */
 	public void run() {
+		if (!future.start()) {
+			return;
+		}
 		try {
-			/**利用Java反射机制实现任务调度**/
-			Class<?> className = task.getTaskClass();
-			String classMethod = task.getTaskMethod();
-			Method method = className.getMethod(classMethod, Map.class);
-	        method.invoke(className.newInstance(),task.getTaskParam());
-		}catch (Exception e) {
-			System.out.println("错误信息：" + e.getMessage());
+			future.complete(execute(task));
+		}catch (Throwable e) {
+			future.completeExceptionally(e);
+		} finally {
+			future.finish();
+		}
+	}
+
+	/**
+	 * 超时后以TimeoutException完成
+	 * @param timeoutMillis
+	 */
+	void timeout(long timeoutMillis) {
+		future.timeout(timeoutMillis);
+	}
+
+	/**
+	 * 任务被线程池丢弃，不会再执行
+	 */
+	void rejected() {
+		rejected("溢出队列已满，任务被丢弃");
+	}
+
+	/**
+	 * 任务不会再执行，以RejectedExecutionException完成
+	 * @param reason
+	 */
+	void rejected(String reason) {
+		future.completeExceptionally(new RejectedExecutionException(reason));
+	}
+
+	/**
+	 * 执行任务，Runnable和Callable直接调用，其它任务通过缓存的调用器执行任务类的方法
+	 * @param task
+	 * @return 任务的返回值，没有返回值时为null
+	 * @throws Throwable 任务抛出的异常
+	 */
+	static Object execute(TaskEntity task) throws Throwable {
+		if (task.getRunnable() != null) {
+			task.getRunnable().run();
+			return null;
+		}
+		if (task.getCallable() != null) {
+			return task.getCallable().call();
 		}
+		TaskInstanceMode mode = task.getInstanceMode() == null ? TaskInstanceMode.PROTOTYPE : task.getInstanceMode();
+		return TaskInvoker.of(task.getTaskClass(), task.getTaskMethod()).invoke(task.getTaskParam(), mode);
 	}
 
 }
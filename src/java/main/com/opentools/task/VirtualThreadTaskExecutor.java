@@ -0,0 +1,220 @@
+package com.opentools.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个任务一个虚拟线程，同时执行的任务数由Semaphore限制
+ * <p>
+ * 适合阻塞I/O为主的任务（HTTP调用、发邮件、写数据库），不再受平台线程数的限制。
+ * 等待执行的任务是阻塞在Semaphore上的虚拟线程，几乎不占内存；等待的任务数超过溢出队列的容量时按OverflowPolicy处理
+ * @author Aaron
+ */
+public class VirtualThreadTaskExecutor extends AbstractExecutorService implements TaskExecutor {
+
+	private final ThreadFactory threadFactory;
+	/**执行的名额**/
+	private final Semaphore permits;
+	/**执行和等待的名额**/
+	private final Semaphore slots;
+	private final OverflowPolicy policy;
+	/**已经提交还没有结束的任务数，包括等待的**/
+	private final AtomicInteger tasks = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	/**已经启动、还没有开始执行任务的线程**/
+	private final ConcurrentMap<Thread, Runnable> waiting = new ConcurrentHashMap<Thread, Runnable>();
+	/**正在执行任务的线程，shutdownNow()时中断**/
+	private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+	private final Object termination = new Object();
+	private volatile boolean shutdown;
+	private volatile boolean stopped;
+
+	/**
+	 * @param threadFactory 创建虚拟线程的工厂
+	 * @param maxConcurrency 同时执行的最大任务数
+	 * @param overflowCapacity 最多等待的任务数
+	 * @param policy 等待的任务数超过overflowCapacity时的处理方式
+	 */
+	public VirtualThreadTaskExecutor(ThreadFactory threadFactory, int maxConcurrency, int overflowCapacity,
+			OverflowPolicy policy) {
+		if (maxConcurrency <= 0 || overflowCapacity <= 0) {
+			throw new IllegalArgumentException("并发数和溢出队列的容量必须大于0！");
+		}
+		this.threadFactory = threadFactory;
+		this.permits = new Semaphore(maxConcurrency);
+		this.slots = new Semaphore(maxConcurrency + overflowCapacity);
+		this.policy = policy;
+	}
+
+	public void execute(final Runnable command) {
+		if (shutdown) {
+			throw new RejectedExecutionException("线程池已经关闭");
+		}
+		if (!slots.tryAcquire()) {
+			switch (policy) {
+				case BLOCK:
+					try {
+						slots.acquire();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException("等待溢出队列时被中断", e);
+					}
+					break;
+				case CALLER_RUNS:
+					command.run();
+					return;
+				default:
+					dropped.incrementAndGet();
+					if (command instanceof TaskRunner) {
+						((TaskRunner) command).rejected();
+					}
+					return;
+			}
+		}
+		tasks.incrementAndGet();
+		Thread thread = null;
+		try {
+			thread = threadFactory.newThread(() -> runTask(command));
+			if (thread == null) {
+				throw new RejectedExecutionException("线程工厂没有创建线程");
+			}
+			waiting.put(thread, command);
+			thread.start();
+		} catch (RuntimeException | Error e) {
+			// 线程没有启动，归还名额和计数，否则awaitTermination永远等不到
+			if (thread != null) {
+				waiting.remove(thread);
+			}
+			finished();
+			throw e;
+		}
+	}
+
+	private void runTask(Runnable command) {
+		Thread current = Thread.currentThread();
+		try {
+			if (!acquirePermit(current)) {
+				return;
+			}
+			try {
+				// shutdownNow()已经取走了这个任务
+				if (waiting.remove(current) == null) {
+					return;
+				}
+				running.add(current);
+				if (stopped) {
+					current.interrupt();
+				}
+				try {
+					command.run();
+				} finally {
+					running.remove(current);
+				}
+			} finally {
+				permits.release();
+			}
+		} finally {
+			finished();
+		}
+	}
+
+	/**
+	 * 已经提交的任务总会执行，等待名额时只响应shutdownNow()的中断
+	 * @param current
+	 * @return 任务被shutdownNow()取走时返回false
+	 */
+	private boolean acquirePermit(Thread current) {
+		while (true) {
+			try {
+				permits.acquire();
+				return true;
+			} catch (InterruptedException e) {
+				if (!waiting.containsKey(current)) {
+					return false;
+				}
+			}
+		}
+	}
+
+	private void finished() {
+		slots.release();
+		if (tasks.decrementAndGet() == 0 && shutdown) {
+			synchronized (termination) {
+				termination.notifyAll();
+			}
+		}
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return 正在执行和等待执行的任务数
+	 */
+	public int getTaskCount() {
+		return tasks.get();
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		if (tasks.get() == 0) {
+			synchronized (termination) {
+				termination.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * 中断正在执行的任务，还在等待名额的任务不再执行
+	 * @return 还在等待名额、不会再执行的任务
+	 */
+	public List<Runnable> shutdownNow() {
+		stopped = true;
+		shutdown();
+		List<Runnable> pending = new ArrayList<Runnable>();
+		for (Thread thread : waiting.keySet()) {
+			Runnable command = waiting.remove(thread);
+			if (command != null) {
+				pending.add(command);
+				thread.interrupt();
+			}
+		}
+		for (Thread thread : running) {
+			thread.interrupt();
+		}
+		return pending;
+	}
+
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	public boolean isTerminated() {
+		return shutdown && tasks.get() == 0;
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (termination) {
+			while (!isTerminated()) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(termination, remaining);
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.IoEngine;
+import com.opentools.file.bigfile.ReadResult;
+import com.opentools.file.bigfile.RecordFraming;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 动态分块：块首尾相接、没有空隙和重叠，每条记录只交出一次
+ *
+ * @author Aaron
+ */
+public class AdaptiveChunkTest {
+
+    @Test
+    public void testLinesCoverFile() throws Exception {
+        List<String> expected = TestFiles.randomLines(50000, 31);
+        File file = TestFiles.write(expected, "\r\n");
+        for (IoEngine engine : IoEngine.values()) {
+            for (int threads : new int[]{1, 4, 7}) {
+                assertChunks(file, RecordFraming.LINES, engine, threads, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testFixedLengthCoverFile() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            String record = String.format("%012d", i);
+            expected.add(record);
+            text.append(record);
+        }
+        File file = TestFiles.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        assertChunks(file, RecordFraming.fixedLength(12), IoEngine.MMAP, 4, expected);
+    }
+
+    private static void assertChunks(File file, RecordFraming framing, IoEngine engine, int threads,
+                                     List<String> expected) throws Exception {
+        final Map<String, Integer> records = new ConcurrentHashMap<String, Integer>();
+        // 目标耗时很短、块很小，会划分出很多块
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath(),
+                record -> records.merge(record, 1, Integer::sum))
+                .withRecordFraming(framing)
+                .withIoEngine(engine, 4096)
+                .withCharset("US-ASCII")
+                .withTreahdSize(threads)
+                .withAdaptiveChunks(1, 256, 16 * 1024)
+                .build();
+        ReadResult result;
+        try {
+            result = reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        String message = engine + "，" + threads + "个线程";
+        Assert.assertEquals(message, TestFiles.counts(expected), records);
+        Assert.assertEquals(message, expected.size(), result.getLines());
+        Assert.assertTrue(message + "，块数" + result.getSlices().size(), result.getSlices().size() > threads);
+        for (int i = 0; i < result.getSlices().size(); i++) {
+            Assert.assertEquals(message, i, result.getSlices().get(i).getIndex());
+        }
+        RecordFramingTest.assertContiguous(message, result, file.length());
+    }
+}
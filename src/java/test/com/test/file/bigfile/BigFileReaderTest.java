@@ -0,0 +1,46 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.IoEngine;
+import com.opentools.file.bigfile.ReadResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * BigFileReader的生命周期：打开文件失败时start()以异常完成
+ *
+ * @author Aaron
+ */
+public class BigFileReaderTest {
+
+    /**
+     * 构造时文件打不开，start()返回异常完成的future，shutdown()也不能失败
+     */
+    @Test
+    public void testOpenFailureFailsStart() throws Exception {
+        for (IoEngine engine : IoEngine.values()) {
+            File file = TestFiles.write(Arrays.asList("a", "b"), "\n");
+            BigFileReader.Builder builder = new BigFileReader.Builder(file.getAbsolutePath(), line -> {
+            }).withIoEngine(engine, 4096);
+            // Builder检查过文件存在，build()之前删除
+            Assert.assertTrue(file.delete());
+            BigFileReader reader = builder.build();
+            try {
+                CompletableFuture<ReadResult> future = reader.start();
+                Assert.assertTrue(future.isCompletedExceptionally());
+                future.get();
+                Assert.fail("文件打不开时应该以异常完成");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IOException);
+            } finally {
+                reader.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileSearcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * BigFileSearcher和它使用的多模式Horspool查找，结果和逐行String.contains的结果比较
+ *
+ * @author Aaron
+ */
+public class BigFileSearcherTest {
+
+    /**
+     * 字母表很小，长短不同的模式互相重叠，一个模式是另一个的前缀、后缀或中间的一段；
+     * 映射窗口从1到40字节，窗口边界落在行内各个位置，行也常常比窗口长
+     */
+    @Test
+    public void testOverlappingPatternsAcrossWindows() throws Exception {
+        byte[] content = randomContent(400, "abcx", 21);
+        File file = TestFiles.write(content);
+        List<String> patterns = Arrays.asList("abcab", "cab", "bcabcabx", "ca", "xx");
+        Map<Long, String> expected = expected(content, patterns);
+        Assert.assertFalse(expected.isEmpty());
+        for (int window = 1; window <= 40; window++) {
+            for (int threads = 1; threads <= 4; threads++) {
+                assertSearch(file, patterns, window, threads, expected);
+            }
+        }
+    }
+
+    /**
+     * 只有一个字节的模式让跳转距离总是1
+     */
+    @Test
+    public void testSingleBytePattern() throws Exception {
+        byte[] content = randomContent(300, "abcdefgh", 22);
+        File file = TestFiles.write(content);
+        List<String> patterns = Arrays.asList("h", "abcdefg");
+        Map<Long, String> expected = expected(content, patterns);
+        for (int window = 1; window <= 24; window++) {
+            assertSearch(file, patterns, window, 3, expected);
+        }
+    }
+
+    /**
+     * 匹配在窗口的最后一个字节：窗口从1到52字节，映射的最后一个字节会落在每个Q上，
+     * 包括没有换行符结尾的文件的最后一个字节
+     */
+    @Test
+    public void testMatchAtLastByteOfWindow() throws Exception {
+        // 每行16字节（含换行符）
+        String text = "aaaaaaaaaaaaaaQ\nbbbbbbbbbbbbbbb\nccccccccccccccQ\nddQ";
+        byte[] content = text.getBytes(StandardCharsets.US_ASCII);
+        File file = TestFiles.write(content);
+        List<String> patterns = Arrays.asList("Q", "cQ");
+        Map<Long, String> expected = new TreeMap<Long, String>();
+        expected.put(0L, "aaaaaaaaaaaaaaQ");
+        expected.put(32L, "ccccccccccccccQ");
+        expected.put(48L, "ddQ");
+        Assert.assertEquals(expected, expected(content, patterns));
+        for (int window = 1; window <= 52; window++) {
+            assertSearch(file, patterns, window, 1, expected);
+            assertSearch(file, patterns, window, 2, expected);
+        }
+    }
+
+    /**
+     * 比映射窗口长得多的行，匹配在行首、行中和行尾
+     */
+    @Test
+    public void testLineLongerThanWindow() throws Exception {
+        StringBuilder text = new StringBuilder();
+        String[] longLines = new String[3];
+        for (int i = 0; i < longLines.length; i++) {
+            char[] line = new char[10000];
+            Arrays.fill(line, 'z');
+            System.arraycopy("needle".toCharArray(), 0, line, i == 0 ? 0 : i == 1 ? 5000 : 10000 - 6, 6);
+            longLines[i] = new String(line);
+            text.append("short\n").append(longLines[i]).append('\n');
+        }
+        text.append("short needle\n");
+        byte[] content = text.toString().getBytes(StandardCharsets.US_ASCII);
+        File file = TestFiles.write(content);
+        List<String> patterns = Arrays.asList("needle");
+        Map<Long, String> expected = expected(content, patterns);
+        Assert.assertEquals(4, expected.size());
+        for (int window : new int[]{7, 64, 4096}) {
+            for (int threads = 1; threads <= 3; threads++) {
+                assertSearch(file, patterns, window, threads, expected);
+            }
+        }
+    }
+
+    /**
+     * 多字节字符的模式按charset编码后查找，匹配的行解码后交出
+     */
+    @Test
+    public void testNonAsciiPattern() throws Exception {
+        String text = "第一行中文\nplain\n包含中文和ascii\r\n中\n文\n";
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        File file = TestFiles.write(content);
+        List<String> patterns = Arrays.asList("中文");
+        Map<Long, String> expected = expected(content, patterns);
+        Assert.assertEquals(2, expected.size());
+        for (int window = 1; window <= 20; window++) {
+            assertSearch(file, patterns, window, 2, expected);
+        }
+    }
+
+    /**
+     * search()交出的行和count()的计数一致
+     */
+    private static void assertSearch(File file, List<String> patterns, int window, int threads,
+                                     Map<Long, String> expected) throws Exception {
+        BigFileSearcher.Builder builder = new BigFileSearcher.Builder(file.getAbsolutePath())
+                .withCharset("UTF-8").withMapWindowSize(window).withTreahdSize(threads);
+        for (String pattern : patterns) {
+            builder.withPattern(pattern);
+        }
+        BigFileSearcher searcher = builder.build();
+        final Map<Long, String> found = new TreeMap<Long, String>();
+        try {
+            long matches = searcher.search((offset, line) -> {
+                synchronized (found) {
+                    Assert.assertNull("同一行交出了两次：" + offset, found.put(offset, line));
+                }
+            }).get();
+            String message = "窗口" + window + "，" + threads + "个线程";
+            Assert.assertEquals(message, expected, found);
+            Assert.assertEquals(message, expected.size(), matches);
+            Assert.assertEquals(message, matches, (long) searcher.count().get());
+        } finally {
+            searcher.shutdown();
+        }
+    }
+
+    /**
+     * 逐行用String.contains找出所有匹配的行，行以\n、\r或\r\n分隔
+     */
+    private static Map<Long, String> expected(byte[] content, List<String> patterns) {
+        Map<Long, String> expected = new TreeMap<Long, String>();
+        int start = 0;
+        for (int i = 0; i <= content.length; i++) {
+            if (i == content.length || content[i] == '\n' || content[i] == '\r') {
+                String line = new String(content, start, i - start, StandardCharsets.UTF_8);
+                for (String pattern : patterns) {
+                    if (line.contains(pattern)) {
+                        expected.put((long) start, line);
+                        break;
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * 由给定字母组成的随机行，长度0到30，随机使用\n、\r\n和\r
+     */
+    private static byte[] randomContent(int lines, String alphabet, long seed) {
+        Random random = new Random(seed);
+        String[] newlines = {"\n", "\r\n", "\r"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            int length = random.nextInt(31);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            text.append(newlines[random.nextInt(newlines.length)]);
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,227 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * BigFileWriter的默认模式、有序模式、跨映射区域的写入和关闭后的文件长度
+ *
+ * @author Aaron
+ */
+public class BigFileWriterTest {
+
+    private static final int THREADS = 4;
+
+    /**
+     * 默认模式下各线程写入的行都在文件中，先后顺序不确定
+     */
+    @Test
+    public void testDefaultMode() throws Exception {
+        List<String> lines = TestFiles.randomLines(40000, 41);
+        File file = tempFile();
+        // 映射区域很小，缓冲区交出时经常跨区域
+        final BigFileWriter writer = new BigFileWriter.Builder(file.getPath())
+                .withBufferSize(1024).withRegionSize(4096).build();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            int part = lines.size() / THREADS;
+            for (int t = 0; t < THREADS; t++) {
+                final List<String> slice = lines.subList(t * part, t == THREADS - 1 ? lines.size() : (t + 1) * part);
+                futures.add(pool.submit(() -> {
+                    for (String line : slice) {
+                        writer.writeLine(line);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            writer.close();
+        }
+        List<String> written = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+        Assert.assertEquals(TestFiles.counts(lines), TestFiles.counts(written));
+        Assert.assertEquals(file.length(), writer.getLength());
+    }
+
+    /**
+     * 有序模式下按段的序号拼接，和段的写入顺序无关
+     */
+    @Test
+    public void testOrderedMode() throws Exception {
+        List<String> lines = TestFiles.randomLines(20000, 42);
+        File file = tempFile();
+        final BigFileWriter writer = new BigFileWriter.Builder(file.getPath())
+                .withOrdered(true).withBufferSize(512).build();
+        int segments = 10;
+        int part = lines.size() / segments;
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            // 倒序提交，后面的段先写
+            for (int i = segments - 1; i >= 0; i--) {
+                final int index = i;
+                final List<String> slice = lines.subList(i * part, i == segments - 1 ? lines.size() : (i + 1) * part);
+                futures.add(pool.submit(() -> {
+                    BigFileWriter.Segment segment = writer.segment(index);
+                    for (String line : slice) {
+                        segment.writeLine(line);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            writer.close();
+        }
+        Assert.assertEquals(lines, Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII));
+        Assert.assertEquals(file.length(), writer.getLength());
+        File[] left = file.getAbsoluteFile().getParentFile().listFiles(
+                (dir, name) -> name.startsWith(file.getName() + ".") && name.endsWith(".segment"));
+        Assert.assertEquals("临时文件应该被删除", 0, left.length);
+    }
+
+    /**
+     * 比缓冲区和映射区域都大的写入在文件中仍然是连续的
+     */
+    @Test
+    public void testLargeWritesAcrossRegions() throws Exception {
+        File file = tempFile();
+        final int regionSize = 1000;
+        final int blockSize = 3 * regionSize + 7;
+        final int blocks = 50;
+        final BigFileWriter writer = new BigFileWriter.Builder(file.getPath())
+                .withBufferSize(64).withRegionSize(regionSize).build();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < blocks; i++) {
+                final byte[] block = new byte[blockSize];
+                Arrays.fill(block, (byte) ('A' + i % 26));
+                futures.add(pool.submit(() -> {
+                    writer.write(block, 0, block.length);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            writer.close();
+        }
+        byte[] content = Files.readAllBytes(file.toPath());
+        Assert.assertEquals((long) blockSize * blocks, content.length);
+        // 每个大块都是连续的，统计每种字节出现的次数
+        int[] counts = new int[26];
+        int offset = 0;
+        while (offset < content.length) {
+            byte b = content[offset];
+            int run = 0;
+            while (offset < content.length && content[offset] == b) {
+                offset++;
+                run++;
+            }
+            Assert.assertEquals("大块写入被拆开了", 0, run % blockSize);
+            counts[b - 'A'] += run;
+        }
+        for (int i = 0; i < 26; i++) {
+            int expected = 0;
+            for (int j = 0; j < blocks; j++) {
+                if (j % 26 == i) {
+                    expected += blockSize;
+                }
+            }
+            Assert.assertEquals(expected, counts[i]);
+        }
+    }
+
+    /**
+     * close()之后文件截断到实际写入的长度，不留映射区域末尾的空白
+     */
+    @Test
+    public void testTruncatedLength() throws Exception {
+        File file = tempFile();
+        BigFileWriter writer = new BigFileWriter.Builder(file.getPath()).withRegionSize(4096).build();
+        writer.writeLine("abc");
+        writer.writeLine("");
+        writer.writeLine("de");
+        writer.close();
+        Assert.assertEquals(8, writer.getLength());
+        Assert.assertEquals(8, file.length());
+        Assert.assertEquals(Arrays.asList("abc", "", "de"), Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII));
+
+        // 什么也没有写时文件为空
+        File empty = tempFile();
+        new BigFileWriter.Builder(empty.getPath()).build().close();
+        Assert.assertEquals(0, empty.length());
+    }
+
+    /**
+     * 关闭后的writer不能被线程池中的线程引用住
+     */
+    @Test
+    public void testClosedWriterIsCollectable() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        List<WeakReference<BigFileWriter>> references = new ArrayList<WeakReference<BigFileWriter>>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                File file = tempFile();
+                final BigFileWriter writer = new BigFileWriter.Builder(file.getPath()).withRegionSize(4096).build();
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int t = 0; t < 2; t++) {
+                    futures.add(pool.submit(() -> {
+                        writer.writeLine("line");
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                writer.close();
+                references.add(new WeakReference<BigFileWriter>(writer));
+            }
+            for (int i = 0; i < 50 && alive(references) > 0; i++) {
+                System.gc();
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(0, alive(references));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int alive(List<WeakReference<BigFileWriter>> references) {
+        int alive = 0;
+        for (WeakReference<BigFileWriter> reference : references) {
+            if (reference.get() != null) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+
+    private static File tempFile() throws Exception {
+        File file = File.createTempFile("writer", ".txt");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,104 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.ReadResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BigFileReader的检查点和断点续读
+ *
+ * @author Aaron
+ */
+public class CheckpointTest {
+
+    private static final int LINES = 200000;
+
+    @Test
+    public void testResumeAfterFailure() throws Exception {
+        File file = writeLines(LINES);
+        File sidecar = new File(file.getPath() + ".checkpoint");
+        sidecar.deleteOnExit();
+
+        // 第一次读到一半失败，失败时保存已经处理完的位置
+        final Set<String> first = ConcurrentHashMap.newKeySet();
+        final AtomicInteger handled = new AtomicInteger();
+        BigFileReader failing = new BigFileReader.Builder(file.getAbsolutePath(), line -> {
+            if (handled.incrementAndGet() > LINES / 2) {
+                throw new IllegalStateException("模拟处理失败");
+            }
+            first.add(line);
+        }).withTreahdSize(4).withCheckpoint(50).build();
+        try {
+            failing.start().get();
+            Assert.fail("第一次读取应该失败");
+        } catch (ExecutionException e) {
+            // 预期的失败
+        } finally {
+            failing.shutdown();
+        }
+        Assert.assertTrue("失败后应该保存检查点", sidecar.exists());
+
+        // 续读只处理检查点之后的行，两次合起来覆盖所有行
+        final Set<String> second = ConcurrentHashMap.newKeySet();
+        BigFileReader resumed = new BigFileReader.Builder(file.getAbsolutePath(), second::add)
+                .withTreahdSize(4).withCheckpoint(50).withResume(true).build();
+        ReadResult result;
+        try {
+            result = resumed.start().get();
+        } finally {
+            resumed.shutdown();
+        }
+        Assert.assertTrue("续读不应该从头开始：" + result.getLines(), result.getLines() < LINES);
+        Set<String> all = new HashSet<String>(first);
+        all.addAll(second);
+        Assert.assertEquals(LINES, all.size());
+        Assert.assertFalse("成功读完后应该删除检查点", sidecar.exists());
+    }
+
+    /**
+     * 检查点间隔很短时，读完前正在进行的保存不能在删除之后重新创建检查点
+     */
+    @Test
+    public void testNoCheckpointLeftAfterSuccess() throws Exception {
+        File file = writeLines(LINES);
+        File sidecar = new File(file.getPath() + ".checkpoint");
+        sidecar.deleteOnExit();
+        for (int i = 0; i < 20; i++) {
+            final AtomicInteger count = new AtomicInteger();
+            BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath(), line -> count.incrementAndGet())
+                    .withTreahdSize(4).withCheckpoint(1).withResume(true).build();
+            try {
+                reader.start().get();
+            } finally {
+                reader.shutdown();
+            }
+            Assert.assertEquals(LINES, count.get());
+            Assert.assertFalse("第" + i + "次读完后留下了检查点", sidecar.exists());
+        }
+    }
+
+    private static File writeLines(int lines) throws IOException {
+        File file = File.createTempFile("checkpoint", ".txt");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < lines; i++) {
+                text.append("line-").append(i).append('\n');
+            }
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,225 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.CompressedFileReader;
+import com.opentools.file.bigfile.ReadResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * CompressedFileReader读取多成员gzip和BGZF时不能丢行，zip分片的位置指向条目的压缩数据
+ *
+ * @author Aaron
+ */
+public class CompressedFileReaderTest {
+
+    private static final int MEMBERS = 20000;
+
+    @Test
+    public void testMultiMemberGzip() throws Exception {
+        File file = File.createTempFile("members", ".gz");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < MEMBERS; i++) {
+                // 每个成员是一个独立的gzip流，成员很小时尾部经常落在解压缓冲区的末尾附近
+                GZIPOutputStream member = new GZIPOutputStream(new NonClosingStream(out));
+                member.write(("line-" + i + "\n").getBytes(StandardCharsets.UTF_8));
+                member.close();
+            }
+        }
+        assertAllLines(file, MEMBERS);
+    }
+
+    @Test
+    public void testBgzf() throws Exception {
+        File file = File.createTempFile("blocks", ".bgz");
+        file.deleteOnExit();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < MEMBERS; i++) {
+            text.append("line-").append(i).append('\n');
+        }
+        byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new FileOutputStream(file)) {
+            // 块大小和行长度不对齐，很多行跨两个块
+            for (int offset = 0; offset < data.length; offset += 37) {
+                writeBgzfBlock(out, data, offset, Math.min(37, data.length - offset));
+            }
+        }
+        assertAllLines(file, MEMBERS);
+    }
+
+    /**
+     * zip的每个分片的起止位置是对应条目的压缩数据在文件中的位置
+     */
+    @Test
+    public void testZipSliceRanges() throws Exception {
+        File file = File.createTempFile("entries", ".zip");
+        file.deleteOnExit();
+        String[] names = {"a.txt", "b.txt", "中文.txt", "empty.txt", "c.txt"};
+        byte[][] contents = new byte[names.length][];
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.setComment("archive comment");
+            for (int i = 0; i < names.length; i++) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 0; j < (i == 3 ? 0 : 1000 * (i + 1)); j++) {
+                    text.append(names[i]).append('-').append(j).append('\n');
+                }
+                contents[i] = text.toString().getBytes(StandardCharsets.UTF_8);
+                ZipEntry entry = new ZipEntry(names[i]);
+                if (i == 1) {
+                    // 不压缩的条目需要先给出大小和CRC
+                    CRC32 crc = new CRC32();
+                    crc.update(contents[i]);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(contents[i].length);
+                    entry.setCrc(crc.getValue());
+                } else if (i == 2) {
+                    // 本地文件头带扩展字段
+                    entry.setExtra(new byte[]{(byte) 0xCA, (byte) 0xFE, 4, 0, 1, 2, 3, 4});
+                }
+                out.putNextEntry(entry);
+                out.write(contents[i]);
+                out.closeEntry();
+                if (i == 0) {
+                    out.putNextEntry(new ZipEntry("dir/"));
+                    out.closeEntry();
+                }
+            }
+        }
+        byte[] archive = Files.readAllBytes(file.toPath());
+        CompressedFileReader reader = new CompressedFileReader.Builder(file.getAbsolutePath())
+                .withHandle(line -> {
+                })
+                .withTreahdSize(2)
+                .build();
+        try {
+            ReadResult result = reader.start().get();
+            // 目录条目没有分片
+            Assert.assertEquals(names.length, result.getSlices().size());
+            for (int i = 0; i < names.length; i++) {
+                ReadResult.SliceResult slice = result.getSlices().get(i);
+                Assert.assertEquals(i, slice.getIndex());
+                Assert.assertTrue(names[i], slice.getStart() > 0 && slice.getEnd() < archive.length);
+                byte[] data = Arrays.copyOfRange(archive, (int) slice.getStart(), (int) slice.getEnd() + 1);
+                Assert.assertArrayEquals(names[i], contents[i], i == 1 ? data : inflate(data));
+                Assert.assertEquals(contents[i].length, slice.getBytes());
+            }
+        } finally {
+            reader.shutdown();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws Exception {
+        Inflater inflater = new Inflater(true);
+        // nowrap模式需要在压缩数据后面多给一个字节
+        inflater.setInput(Arrays.copyOf(data, data.length + 1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                Assert.fail("压缩数据不完整");
+            }
+            out.write(buffer, 0, n);
+        }
+        Assert.assertEquals("压缩数据后面还有多余的字节", 1, inflater.getRemaining());
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    private static void assertAllLines(File file, int expected) throws Exception {
+        final AtomicLong count = new AtomicLong();
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        CompressedFileReader reader = new CompressedFileReader.Builder(file.getAbsolutePath())
+                .withHandle(line -> {
+                    count.incrementAndGet();
+                    seen.add(line);
+                })
+                .withTreahdSize(4)
+                .build();
+        try {
+            ReadResult result = reader.start().get();
+            Assert.assertEquals(expected, result.getLines());
+            Assert.assertEquals(expected, count.get());
+            Assert.assertEquals(expected, seen.size());
+            for (int i = 0; i < expected; i++) {
+                Assert.assertTrue("line-" + i, seen.contains("line-" + i));
+            }
+        } finally {
+            reader.shutdown();
+        }
+    }
+
+    private static void writeBgzfBlock(OutputStream out, byte[] data, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        // 头部18字节 + 压缩数据 + 尾部8字节
+        int blockSize = 18 + compressed.size() + 8;
+        out.write(new byte[]{0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF, 6, 0, 'B', 'C', 2, 0});
+        writeShort(out, blockSize - 1);
+        compressed.writeTo(out);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, length);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value & 0xFFFF);
+        writeShort(out, value >>> 16);
+    }
+
+    /**
+     * GZIPOutputStream.close()时不关闭底层的文件
+     */
+    private static class NonClosingStream extends OutputStream {
+        private final OutputStream out;
+
+        NonClosingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.ReadResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BigFileReader的跟随模式
+ *
+ * @author Aaron
+ */
+public class FollowTest {
+
+    /**
+     * 读取已有内容的过程中调用stop()，读完已有内容后完成
+     */
+    @Test
+    public void testStopDuringInitialRead() throws Exception {
+        File file = File.createTempFile("follow", ".log");
+        file.deleteOnExit();
+        append(file, 0, 500000);
+        final Set<String> lines = ConcurrentHashMap.newKeySet();
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath(), lines::add)
+                .withTreahdSize(4).withFollow(10).build();
+        try {
+            CompletableFuture<ReadResult> result = reader.start();
+            reader.stop();
+            result.get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(500000, lines.size());
+        } finally {
+            reader.shutdown();
+        }
+    }
+
+    /**
+     * 追加的行和轮转之后新文件中的行都能读到
+     */
+    @Test
+    public void testAppendAndRotate() throws Exception {
+        File file = File.createTempFile("follow", ".log");
+        File rotated = new File(file.getPath() + ".1");
+        file.deleteOnExit();
+        rotated.deleteOnExit();
+        append(file, 0, 100);
+        final Set<String> lines = ConcurrentHashMap.newKeySet();
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath(), lines::add)
+                .withTreahdSize(2).withFollow(10).build();
+        try {
+            CompletableFuture<ReadResult> result = reader.start();
+            waitFor(lines, 100);
+            append(file, 100, 200);
+            waitFor(lines, 200);
+            // 旧文件改名后还追加了最后几行，新文件从头开始
+            Assert.assertTrue(file.renameTo(rotated));
+            append(rotated, 200, 210);
+            append(file, 210, 300);
+            waitFor(lines, 300);
+            reader.stop();
+            result.get(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 300; i++) {
+                Assert.assertTrue("line-" + i, lines.contains("line-" + i));
+            }
+        } finally {
+            reader.shutdown();
+        }
+    }
+
+    private static void waitFor(Set<String> lines, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (lines.size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expected, lines.size());
+    }
+
+    private static void append(File file, int from, int to) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            text.append("line-").append(i).append('\n');
+        }
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.IoEngine;
+import com.opentools.file.bigfile.RecordFraming;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PREAD和ASYNC读取的结果和MMAP一致：读取窗口很小，行和多字节字符都跨窗口
+ *
+ * @author Aaron
+ */
+public class IoEngineTest {
+
+    private static final String[] NEWLINES = {"\n", "\r", "\r\n"};
+
+    /**
+     * 比最长的UTF-8字符还小的窗口和一般大小的窗口
+     */
+    private static final int[] READ_WINDOWS = {3, 61};
+
+    private static final String UTF8 = "UTF-8";
+
+    /**
+     * 有序模式逐行比较，空行不计
+     */
+    @Test
+    public void testOrderedLinesMatchMmap() throws Exception {
+        List<String> lines = mixedLines(1000, 11);
+        List<String> expected = nonEmpty(lines);
+        for (String newline : NEWLINES) {
+            File file = write(lines, newline);
+            for (int threads = 1; threads <= 6; threads++) {
+                List<String> mapped = readOrdered(file, IoEngine.MMAP, BigFileReader.DEFAULT_READ_WINDOW_SIZE, threads);
+                Assert.assertEquals(expected, mapped);
+                for (IoEngine engine : IoEngine.values()) {
+                    for (int window : READ_WINDOWS) {
+                        Assert.assertEquals(engine + "，窗口" + window + "，" + threads + "个线程",
+                                mapped, readOrdered(file, engine, window, threads));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 普通模式下每行出现的次数一致
+     */
+    @Test
+    public void testLineCountsMatchMmap() throws Exception {
+        List<String> lines = mixedLines(1000, 12);
+        Map<String, Integer> expected = TestFiles.counts(nonEmpty(lines));
+        for (String newline : NEWLINES) {
+            File file = write(lines, newline);
+            for (int threads = 1; threads <= 6; threads++) {
+                for (IoEngine engine : IoEngine.values()) {
+                    for (int window : READ_WINDOWS) {
+                        Assert.assertEquals(engine + "，窗口" + window + "，" + threads + "个线程",
+                                expected, readCounts(file, engine, window, threads, null));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 按分隔符切分时窗口不一定紧接着上一个窗口，ASYNC不预读
+     */
+    @Test
+    public void testDelimitedRecordsMatchMmap() throws Exception {
+        List<String> lines = mixedLines(1000, 13);
+        File file = write(lines, "<|>");
+        RecordFraming framing = RecordFraming.delimiter("<|>", UTF8);
+        for (int threads = 1; threads <= 6; threads++) {
+            Map<String, Integer> mapped = readCounts(file, IoEngine.MMAP, BigFileReader.DEFAULT_READ_WINDOW_SIZE,
+                    threads, framing);
+            for (IoEngine engine : IoEngine.values()) {
+                for (int window : READ_WINDOWS) {
+                    Assert.assertEquals(engine + "，窗口" + window + "，" + threads + "个线程",
+                            mapped, readCounts(file, engine, window, threads, framing));
+                }
+            }
+        }
+    }
+
+    private static List<String> readOrdered(File file, IoEngine engine, int window, int threads) throws Exception {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath())
+                .withOrderedHandle((sequence, line) -> lines.add(line))
+                .withIoEngine(engine, window).withTreahdSize(threads).withCharset(UTF8).build();
+        try {
+            reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        return lines;
+    }
+
+    private static Map<String, Integer> readCounts(File file, IoEngine engine, int window, int threads,
+                                                   RecordFraming framing) throws Exception {
+        final Map<String, Integer> counts = new ConcurrentHashMap<String, Integer>();
+        BigFileReader.Builder builder = new BigFileReader.Builder(file.getAbsolutePath(),
+                line -> counts.merge(line, 1, Integer::sum))
+                .withIoEngine(engine, window).withTreahdSize(threads).withCharset(UTF8);
+        if (framing != null) {
+            builder.withRecordFraming(framing);
+        }
+        BigFileReader reader = builder.build();
+        try {
+            reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        return counts;
+    }
+
+    /**
+     * ASCII行中夹着空行、长行和2到4个字节的UTF-8字符
+     */
+    private static List<String> mixedLines(int count, long seed) {
+        String[] words = {"中文", "é", "ß", "日本語のテキスト", "😀", "Ω≈ç"};
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<String>(TestFiles.randomLines(count, seed));
+        for (int i = 0; i < lines.size(); i++) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                lines.set(i, "");
+            } else if (kind < 4) {
+                StringBuilder line = new StringBuilder(lines.get(i));
+                int pieces = 1 + random.nextInt(kind == 3 ? 60 : 4);
+                for (int j = 0; j < pieces; j++) {
+                    // 只在字符边界插入，不拆开代理对
+                    int offset = line.offsetByCodePoints(0, random.nextInt(line.codePointCount(0, line.length()) + 1));
+                    line.insert(offset, words[random.nextInt(words.length)]);
+                }
+                lines.set(i, line.toString());
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> nonEmpty(List<String> lines) {
+        List<String> nonEmpty = new ArrayList<String>();
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                nonEmpty.add(line);
+            }
+        }
+        return nonEmpty;
+    }
+
+    private static File write(List<String> lines, String newline) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(newline);
+        }
+        return TestFiles.write(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,169 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.ByteLineHandle;
+import com.opentools.file.bigfile.CharSequenceHandleAdapter;
+import com.opentools.file.bigfile.FileHandleAdapter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 行解码的ASCII快速路径和解码器路径都和new String(bytes, charset)的结果一致
+ * <p>
+ * LineDecoder不公开，通过FileHandleAdapter（decode）和CharSequenceHandleAdapter（decodeChars）测试，
+ * 每行分别放在有底层数组的缓冲区和直接缓冲区中，position和arrayOffset都不为0
+ *
+ * @author Aaron
+ */
+public class LineDecoderTest {
+
+    private static final String[] CHARSETS = {"UTF-8", "ISO-8859-1", "GBK", "UTF-16", "UTF-16LE"};
+
+    /**
+     * 0到17字节的行，每个位置上放一个非ASCII字节，覆盖每次检查8个字节的边界（7、8、9字节等）
+     */
+    @Test
+    public void testNonAsciiByteAtEachPosition() {
+        for (String charset : CHARSETS) {
+            Decoders decoders = new Decoders(charset);
+            for (int length = 0; length <= 17; length++) {
+                byte[] line = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    line[i] = (byte) ('a' + i);
+                }
+                decoders.check(line);
+                for (int position = 0; position < length; position++) {
+                    for (byte b : new byte[]{(byte) 0x80, (byte) 0xC3, (byte) 0xE9, (byte) 0xFF}) {
+                        byte[] copy = line.clone();
+                        copy[position] = b;
+                        decoders.check(copy);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 合法的多字节字符出现在8字节分组的各个位置
+     */
+    @Test
+    public void testMultiByteCharacters() {
+        String[] texts = {"é", "中文", "😀", "aé", "abcdefg中", "abcdefgh中", "abcdefghi中", "日本語のテキストabc"};
+        for (String charset : CHARSETS) {
+            Decoders decoders = new Decoders(charset);
+            for (String text : texts) {
+                for (int pad = 0; pad <= 9; pad++) {
+                    char[] prefix = new char[pad];
+                    Arrays.fill(prefix, 'x');
+                    decoders.check((new String(prefix) + text).getBytes(Charset.forName(charset)));
+                }
+            }
+        }
+    }
+
+    /**
+     * 随机字节：UTF-8中大多是非法序列，UTF-16中常有奇数长度和落单的代理
+     */
+    @Test
+    public void testMalformedInput() {
+        Random random = new Random(15);
+        for (String charset : CHARSETS) {
+            Decoders decoders = new Decoders(charset);
+            for (int i = 0; i < 3000; i++) {
+                byte[] line = new byte[random.nextInt(40)];
+                random.nextBytes(line);
+                if (random.nextBoolean()) {
+                    // 一部分行只有个别非ASCII字节
+                    for (int j = 0; j < line.length; j++) {
+                        if (random.nextInt(8) != 0) {
+                            line[j] &= 0x7F;
+                        }
+                    }
+                }
+                decoders.check(line);
+            }
+        }
+    }
+
+    /**
+     * 比复用的数组和CharBuffer长的行，之后再解码短行
+     */
+    @Test
+    public void testGrowingLines() {
+        for (String charset : CHARSETS) {
+            Decoders decoders = new Decoders(charset);
+            for (int length : new int[]{10, 300, 5000, 3, 70000, 8}) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    text.append(i % 50 == 49 ? '中' : (char) ('a' + i % 26));
+                }
+                decoders.check(text.toString().getBytes(Charset.forName(charset)));
+                decoders.check(text.toString().replace('中', 'z').getBytes(Charset.forName(charset)));
+            }
+        }
+    }
+
+    /**
+     * 同一个线程中复用的两种adapter，每次检查解码结果并确认没有改变缓冲区的position和limit
+     */
+    private static class Decoders {
+        private final Charset charset;
+        private final ByteLineHandle strings;
+        private final ByteLineHandle chars;
+        private String decoded;
+
+        Decoders(String charset) {
+            this.charset = Charset.forName(charset);
+            this.strings = new FileHandleAdapter(line -> decoded = line, charset);
+            this.chars = new CharSequenceHandleAdapter(line -> decoded = line.toString(), charset);
+        }
+
+        void check(byte[] line) {
+            String expected = new String(line, charset);
+            for (ByteBuffer buffer : new ByteBuffer[]{heap(line), direct(line)}) {
+                for (ByteLineHandle handle : new ByteLineHandle[]{strings, chars}) {
+                    int position = buffer.position();
+                    int limit = buffer.limit();
+                    decoded = null;
+                    handle.handle(buffer);
+                    String message = charset + " " + (buffer.isDirect() ? "direct" : "heap") + " "
+                            + (handle == strings ? "decode" : "decodeChars") + " " + Arrays.toString(line);
+                    Assert.assertEquals(message, expected, decoded);
+                    Assert.assertEquals(message, position, buffer.position());
+                    Assert.assertEquals(message, limit, buffer.limit());
+                }
+            }
+        }
+
+        /**
+         * 行在更大数组的中间，arrayOffset和position都不为0
+         */
+        private static ByteBuffer heap(byte[] line) {
+            byte[] array = new byte[line.length + 11];
+            Arrays.fill(array, (byte) 0xE4);
+            System.arraycopy(line, 0, array, 5, line.length);
+            ByteBuffer outer = ByteBuffer.wrap(array);
+            outer.position(2);
+            ByteBuffer slice = outer.slice();
+            slice.position(3);
+            slice.limit(3 + line.length);
+            return slice;
+        }
+
+        private static ByteBuffer direct(byte[] line) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(line.length + 9);
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) 0xE4);
+            }
+            buffer.position(4);
+            buffer.put(line);
+            buffer.limit(4 + line.length);
+            buffer.position(4);
+            return buffer;
+        }
+    }
+}
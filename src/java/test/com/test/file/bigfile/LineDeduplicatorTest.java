@@ -0,0 +1,120 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.LineDeduplicator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LineDeduplicator的精确模式和布隆过滤器模式
+ *
+ * @author Aaron
+ */
+public class LineDeduplicatorTest {
+
+    @Test
+    public void testExact() throws Exception {
+        List<String> distinct = TestFiles.randomLines(20000, 21);
+        File file = TestFiles.write(withDuplicates(distinct), "\n");
+        // 预计行数很小，去重过程中需要扩容
+        for (int threads : new int[]{1, 4, 9}) {
+            LineDeduplicator deduplicator = new LineDeduplicator.Builder(file.getAbsolutePath())
+                    .withTreahdSize(threads).withExpectedLines(1000).withMapWindowSize(4096).build();
+            assertExact(deduplicator, distinct);
+        }
+    }
+
+    /**
+     * 同一行分别以\n和\r\n结束仍然是重复的行
+     */
+    @Test
+    public void testExactCrlf() throws Exception {
+        List<String> distinct = TestFiles.randomLines(5000, 22);
+        StringBuilder text = new StringBuilder();
+        int i = 0;
+        for (String line : withDuplicates(distinct)) {
+            text.append(line).append(i++ % 2 == 0 ? "\n" : "\r\n");
+        }
+        File file = TestFiles.write(text.toString().getBytes("US-ASCII"));
+        LineDeduplicator deduplicator = new LineDeduplicator.Builder(file.getAbsolutePath())
+                .withTreahdSize(4).build();
+        assertExact(deduplicator, distinct);
+    }
+
+    @Test
+    public void testExactWithStoreFile() throws Exception {
+        List<String> distinct = TestFiles.randomLines(10000, 23);
+        File file = TestFiles.write(withDuplicates(distinct), "\n");
+        File store = new File(file.getPath() + ".store");
+        store.deleteOnExit();
+        LineDeduplicator deduplicator = new LineDeduplicator.Builder(file.getAbsolutePath())
+                .withTreahdSize(4).withStoreFile(store.getPath()).build();
+        assertExact(deduplicator, distinct);
+        Assert.assertFalse("结束后应该删除集合文件", store.exists());
+    }
+
+    /**
+     * 布隆过滤器不会交出重复的行，误判只会少交出
+     */
+    @Test
+    public void testBloom() throws Exception {
+        List<String> distinct = TestFiles.randomLines(20000, 24);
+        File file = TestFiles.write(withDuplicates(distinct), "\n");
+        LineDeduplicator deduplicator = new LineDeduplicator.Builder(file.getAbsolutePath())
+                .withTreahdSize(4).withExpectedLines(distinct.size()).withBloomFilter(0.01).build();
+        final Map<String, Integer> lines = new ConcurrentHashMap<String, Integer>();
+        long count;
+        try {
+            count = deduplicator.distinct(line -> lines.merge(line, 1, Integer::sum), "US-ASCII").get();
+        } finally {
+            deduplicator.shutdown();
+        }
+        Assert.assertEquals(count, lines.size());
+        for (Map.Entry<String, Integer> entry : lines.entrySet()) {
+            Assert.assertEquals(entry.getKey(), 1, entry.getValue().intValue());
+        }
+        Assert.assertTrue(new HashSet<String>(distinct).containsAll(lines.keySet()));
+        Assert.assertTrue("误判太多：" + count, count >= distinct.size() * 0.97);
+    }
+
+    private static void assertExact(LineDeduplicator deduplicator, List<String> distinct) throws Exception {
+        final Map<String, Integer> lines = new ConcurrentHashMap<String, Integer>();
+        long count;
+        try {
+            count = deduplicator.distinct(line -> lines.merge(line, 1, Integer::sum), "US-ASCII").get();
+        } finally {
+            deduplicator.shutdown();
+        }
+        Assert.assertEquals(distinct.size(), count);
+        Set<String> expected = new HashSet<String>(distinct);
+        Assert.assertEquals(expected, lines.keySet());
+        for (Map.Entry<String, Integer> entry : lines.entrySet()) {
+            Assert.assertEquals(entry.getKey(), 1, entry.getValue().intValue());
+        }
+    }
+
+    /**
+     * 每行重复1到3次，打乱顺序
+     */
+    private static List<String> withDuplicates(List<String> distinct) {
+        Random random = new Random(distinct.size());
+        List<String> lines = new ArrayList<String>();
+        for (String line : distinct) {
+            int copies = 1 + random.nextInt(3);
+            for (int i = 0; i < copies; i++) {
+                lines.add(line);
+            }
+        }
+        Collections.shuffle(lines, random);
+        return lines;
+    }
+}
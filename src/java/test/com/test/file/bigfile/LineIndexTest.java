@@ -0,0 +1,95 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.LineIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * LineIndex随机读取任意一行和一段连续的行
+ *
+ * @author Aaron
+ */
+public class LineIndexTest {
+
+    @Test
+    public void testRandomAccess() throws Exception {
+        List<String> lines = new ArrayList<String>(TestFiles.randomLines(30000, 51));
+        // 空行、比查找窗口（1M）还长的行
+        lines.add(100, "");
+        lines.add(101, "");
+        char[] longLine = new char[3 * 1024 * 1024];
+        Arrays.fill(longLine, 'x');
+        lines.add(20000, new String(longLine));
+        StringBuilder text = new StringBuilder();
+        long[] offsets = new long[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            offsets[i] = text.length();
+            text.append(lines.get(i)).append(i % 5 == 0 ? "\r\n" : "\n");
+        }
+        File file = TestFiles.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        try (LineIndex index = LineIndex.build(file, 4, 16)) {
+            Assert.assertEquals(lines.size(), index.getLines());
+            Random random = new Random(52);
+            for (int i = 0; i < 2000; i++) {
+                int n = random.nextInt(lines.size());
+                Assert.assertEquals(offsets[n], index.getOffset(n));
+                Assert.assertEquals(lines.get(n), index.getLine(n, StandardCharsets.US_ASCII));
+            }
+            Assert.assertEquals(lines.get(20000), index.getLine(20000, StandardCharsets.US_ASCII));
+            // 跨过长行和多个窗口的连续读取，超出末尾的部分忽略
+            Assert.assertEquals(lines.subList(19990, 20100), index.getLines(19990, 110, StandardCharsets.US_ASCII));
+            Assert.assertEquals(lines.subList(lines.size() - 3, lines.size()),
+                    index.getLines(lines.size() - 3, 10, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * 最后一行没有换行符
+     */
+    @Test
+    public void testLastLineWithoutNewline() throws Exception {
+        File file = TestFiles.write("a\n\nbc\r\nd".getBytes(StandardCharsets.US_ASCII));
+        try (LineIndex index = LineIndex.build(file, 2, 1)) {
+            Assert.assertEquals(4, index.getLines());
+            Assert.assertEquals(Arrays.asList("a", "", "bc", "d"), index.getLines(0, 4, StandardCharsets.US_ASCII));
+            Assert.assertEquals(7, index.getOffset(3));
+        }
+    }
+
+    @Test
+    public void testSaveAndInvalidate() throws Exception {
+        List<String> lines = TestFiles.randomLines(5000, 53);
+        File file = TestFiles.write(lines, "\n");
+        File indexFile = new File(file.getPath() + ".lidx");
+        indexFile.deleteOnExit();
+        try (LineIndex index = LineIndex.open(file.getPath(), 3)) {
+            Assert.assertTrue(indexFile.exists());
+            Assert.assertEquals(lines.get(4321), index.getLine(4321, StandardCharsets.US_ASCII));
+        }
+        try (LineIndex loaded = LineIndex.load(file)) {
+            Assert.assertNotNull(loaded);
+            Assert.assertEquals(lines.size(), loaded.getLines());
+            Assert.assertEquals(lines.get(1234), loaded.getLine(1234, StandardCharsets.US_ASCII));
+
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                out.write("more\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            Assert.assertFalse(loaded.isValid());
+            try {
+                loaded.getLine(0, StandardCharsets.US_ASCII);
+                Assert.fail("源文件变化后索引应该失效");
+            } catch (IllegalStateException expected) {
+            }
+        }
+        Assert.assertNull(LineIndex.load(file));
+    }
+}
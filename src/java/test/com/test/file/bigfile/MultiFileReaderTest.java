@@ -0,0 +1,136 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.MultiFileReader;
+import com.opentools.file.bigfile.ReadResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MultiFileReader读取大小不一的多个文件，每个文件的行和完成回调都不能丢
+ *
+ * @author Aaron
+ */
+public class MultiFileReaderTest {
+
+    @Test
+    public void testFilesOfMixedSizes() throws Exception {
+        File directory = Files.createTempDirectory("multi").toFile();
+        directory.deleteOnExit();
+        Map<String, List<String>> expected = new ConcurrentHashMap<String, List<String>>();
+        for (int i = 0; i < 200; i++) {
+            // 少数大文件切成很多单元，其余是小文件，还有空文件
+            int count = i % 50 == 0 ? 20000 : i % 7 == 0 ? 0 : 50;
+            List<String> lines = TestFiles.randomLines(count, i);
+            File file = new File(directory, "part-" + i + ".log");
+            file.deleteOnExit();
+            Files.write(file.toPath(), lines);
+            expected.put(file.getName(), lines);
+        }
+        File ignored = new File(directory, "other.txt");
+        ignored.deleteOnExit();
+        Files.write(ignored.toPath(), TestFiles.randomLines(10, 0));
+
+        final Map<String, List<String>> lines = new ConcurrentHashMap<String, List<String>>();
+        final Map<String, Long> completed = new ConcurrentHashMap<String, Long>();
+        MultiFileReader reader = new MultiFileReader.Builder(directory.getPath(), "*.log")
+                .withHandle((file, line) -> lines.computeIfAbsent(file.getName(),
+                        name -> Collections.synchronizedList(new ArrayList<String>())).add(line))
+                .withFileCompleteListener((file, count) ->
+                        Assert.assertNull("重复回调：" + file, completed.put(file.getName(), count)))
+                .withUnitSize(16 * 1024)
+                .withMapWindowSize(4096)
+                .withTreahdSize(4)
+                .build();
+        ReadResult result;
+        try {
+            result = reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        long total = 0;
+        for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+            String name = entry.getKey();
+            List<String> want = entry.getValue();
+            total += want.size();
+            Assert.assertEquals(name, Long.valueOf(want.size()), completed.get(name));
+            List<String> got = lines.containsKey(name) ? lines.get(name) : new ArrayList<String>();
+            Assert.assertEquals(name, TestFiles.counts(want), TestFiles.counts(got));
+        }
+        Assert.assertEquals(expected.size(), completed.size());
+        Assert.assertEquals(total, result.getLines());
+        for (int i = 1; i < result.getSlices().size(); i++) {
+            Assert.assertEquals(i, result.getSlices().get(i).getIndex());
+        }
+    }
+
+    /**
+     * 单元按大小从大到小领取：最大的单元被一个线程占住时，另一个线程按从大到小的顺序读完其余的单元
+     */
+    @Test
+    public void testLargestUnitsFirst() throws Exception {
+        File directory = Files.createTempDirectory("order").toFile();
+        directory.deleteOnExit();
+        List<String> names = new ArrayList<String>();
+        // 文件名的顺序和大小无关
+        int[] sizes = {30, 500, 5, 2000, 120, 60, 1000, 10};
+        for (int i = 0; i < sizes.length; i++) {
+            File file = new File(directory, "file-" + i + ".log");
+            file.deleteOnExit();
+            Files.write(file.toPath(), TestFiles.randomLines(sizes[i], i));
+            names.add(file.getName());
+        }
+        final List<String> bySize = new ArrayList<String>(names);
+        bySize.sort((a, b) -> Long.compare(new File(directory, b).length(), new File(directory, a).length()));
+
+        // 每个文件只有一个单元，按第一次收到某个文件的行的先后记录单元开始的顺序
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch othersStarted = new CountDownLatch(bySize.size() - 1);
+        MultiFileReader reader = new MultiFileReader.Builder(directory.getPath(), "*.log")
+                .withHandle((file, line) -> {
+                    String name = file.getName();
+                    boolean first;
+                    synchronized (order) {
+                        first = !order.contains(name);
+                        if (first) {
+                            order.add(name);
+                        }
+                    }
+                    if (!first) {
+                        return;
+                    }
+                    if (name.equals(bySize.get(0))) {
+                        awaitQuietly(othersStarted);
+                    } else {
+                        othersStarted.countDown();
+                    }
+                })
+                .withTreahdSize(2)
+                .build();
+        try {
+            reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        Assert.assertEquals("另一个线程应该在最大的单元结束前开始了其余所有单元", 0, othersStarted.getCount());
+        order.remove(bySize.get(0));
+        Assert.assertEquals(bySize.subList(1, bySize.size()), order);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.IoEngine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * BigFileReader的有序模式：多个分片并行扫描，handle仍然按文件顺序收到每一行
+ *
+ * @author Aaron
+ */
+public class OrderedReadTest {
+
+    @Test
+    public void testLinesInFileOrder() throws Exception {
+        List<String> expected = TestFiles.randomLines(100000, 3);
+        File file = TestFiles.write(expected, "\n");
+        for (int threads : new int[]{1, 3, 8}) {
+            // 重排缓冲区很小，快的分片要等慢的分片
+            assertOrdered(file, expected, threads, 2, 7);
+            assertOrdered(file, expected, threads, 4, 1024);
+        }
+    }
+
+    @Test
+    public void testCrlfInFileOrder() throws Exception {
+        List<String> expected = TestFiles.randomLines(20000, 4);
+        File file = TestFiles.write(expected, "\r\n");
+        assertOrdered(file, expected, 5, 2, 16);
+    }
+
+    /**
+     * 中间的分片读取失败时，handle收到的只能是失败位置之前的行，序号和行号一致
+     */
+    @Test
+    public void testStopsAtFailedSlice() throws Exception {
+        final List<String> expected = TestFiles.randomLines(40000, 5);
+        final File file = TestFiles.write(expected, "\n");
+        final List<String> lines = new ArrayList<String>();
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath())
+                .withOrderedHandle((sequence, line) -> {
+                    if (sequence == 0) {
+                        truncate(file, file.length() * 6 / 10);
+                    }
+                    Assert.assertEquals(lines.size(), sequence);
+                    lines.add(line);
+                })
+                .withReorderBuffer(1, 16)
+                .withTreahdSize(4)
+                .withIoEngine(IoEngine.PREAD, 4096)
+                .build();
+        try {
+            reader.start().get();
+            Assert.fail("截断后的分片应该读取失败");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        } finally {
+            reader.shutdown();
+        }
+        Assert.assertTrue(lines.size() < expected.size());
+        Assert.assertEquals(expected.subList(0, lines.size()), lines);
+    }
+
+    /**
+     * 等所有分片都阻塞在重排缓冲区上，再截断文件，后面的分片继续读取时失败
+     */
+    private static void truncate(File file, long length) {
+        try {
+            Thread.sleep(200);
+            try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                truncate.setLength(length);
+            }
+        } catch (InterruptedException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void assertOrdered(File file, List<String> expected, int threads, int chunks, int chunkLines)
+            throws Exception {
+        final List<String> lines = new ArrayList<String>(expected.size());
+        final long[] next = {0};
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath())
+                .withOrderedHandle((sequence, line) -> {
+                    Assert.assertEquals(next[0]++, sequence);
+                    lines.add(line);
+                })
+                .withReorderBuffer(chunks, chunkLines)
+                .withTreahdSize(threads)
+                .withMapWindowSize(4096)
+                .build();
+        try {
+            reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        Assert.assertEquals(expected, lines);
+    }
+}
@@ -0,0 +1,84 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.ReadResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * BigFileReader的流水线模式：扫描线程和处理线程之间的有界环形缓冲区
+ *
+ * @author Aaron
+ */
+public class PipelineTest {
+
+    @Test
+    public void testAllLinesDelivered() throws Exception {
+        List<String> expected = TestFiles.randomLines(100000, 5);
+        File file = TestFiles.write(expected, "\n");
+        final Map<String, Integer> lines = new ConcurrentHashMap<String, Integer>();
+        // 处理比扫描慢，环形缓冲区会被填满
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath(), line -> {
+            lines.merge(line, 1, Integer::sum);
+            if (line.hashCode() % 1000 == 0) {
+                Thread.yield();
+            }
+        }).withTreahdSize(4).withPipeline(2, 2, 64).build();
+        ReadResult result;
+        try {
+            result = reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        Assert.assertEquals(TestFiles.counts(expected), lines);
+        Assert.assertEquals(expected.size(), result.getLines());
+        Assert.assertNotNull(result.getPipelineStats());
+        Assert.assertTrue(result.getPipelineStats().getMaxQueueDepth() <= 2);
+    }
+
+    @Test
+    public void testBatchHandle() throws Exception {
+        List<String> expected = TestFiles.randomLines(50000, 6);
+        File file = TestFiles.write(expected, "\r\n");
+        final Map<String, Integer> lines = new ConcurrentHashMap<String, Integer>();
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath())
+                .withBatchHandle(batch -> {
+                    Assert.assertTrue(batch.size() <= 100);
+                    for (int i = 0; i < batch.size(); i++) {
+                        lines.merge(batch.getLine(i), 1, Integer::sum);
+                    }
+                }, 100)
+                .withTreahdSize(3).withPipeline(3, 4, 100).build();
+        try {
+            reader.start().get();
+        } finally {
+            reader.shutdown();
+        }
+        Assert.assertEquals(TestFiles.counts(expected), lines);
+    }
+
+    /**
+     * 处理线程失败时扫描线程不能一直阻塞在满的缓冲区上
+     */
+    @Test(timeout = 10000)
+    public void testHandlerFailure() throws Exception {
+        File file = TestFiles.write(TestFiles.randomLines(100000, 7), "\n");
+        BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath(), line -> {
+            throw new IllegalStateException("模拟处理失败");
+        }).withTreahdSize(2).withPipeline(1, 1, 16).build();
+        try {
+            reader.start().get();
+            Assert.fail("处理失败时应该以异常完成");
+        } catch (ExecutionException e) {
+            // 预期的失败
+        } finally {
+            reader.shutdown();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.test.file.bigfile;
+
+import com.opentools.file.bigfile.BigFileReader;
+import com.opentools.file.bigfile.ReadResult;
+import com.opentools.file.bigfile.RecordFraming;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分片和映射窗口的边界落在记录中间、CRLF中间时，每条记录都只交出一次
+ *
+ * @author Aaron
+ */
+public class RecordFramingTest {
+
+    private static final int[] THREADS = {1, 2, 3, 5, 7, 11, 16};
+    private static final long[] WINDOWS = {61, 4096};
+
+    @Test
+    public void testCrlfLines() throws Exception {
+        List<String> expected = TestFiles.randomLines(5000, 11);
+        assertRecords(TestFiles.write(expected, "\r\n"), RecordFraming.LINES, expected);
+    }
+
+    /**
+     * \n、\r\n和单独的\r混用
+     */
+    @Test
+    public void testMixedNewlines() throws Exception {
+        List<String> expected = TestFiles.randomLines(5000, 12);
+        String[] newlines = {"\n", "\r\n", "\r"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < expected.size(); i++) {
+            text.append(expected.get(i)).append(newlines[i % newlines.length]);
+        }
+        File file = TestFiles.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        assertRecords(file, RecordFraming.LINES, expected);
+    }
+
+    /**
+     * 最后一行没有换行符
+     */
+    @Test
+    public void testLastLineWithoutNewline() throws Exception {
+        List<String> expected = TestFiles.randomLines(1000, 13);
+        StringBuilder text = new StringBuilder();
+        for (String line : expected) {
+            text.append(line).append("\r\n");
+        }
+        text.setLength(text.length() - 2);
+        assertRecords(TestFiles.write(text.toString().getBytes(StandardCharsets.US_ASCII)),
+                RecordFraming.LINES, expected);
+    }
+
+    @Test
+    public void testDelimiter() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        for (String line : TestFiles.randomLines(5000, 14)) {
+            // 记录中可以有换行符
+            String record = line.replace('a', '\n');
+            expected.add(record);
+            text.append(record).append("<|>");
+        }
+        File file = TestFiles.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        assertRecords(file, RecordFraming.delimiter("<|>", "US-ASCII"), expected);
+    }
+
+    @Test
+    public void testFixedLength() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            String record = String.format("%015d|", i);
+            expected.add(record);
+            text.append(record);
+        }
+        File file = TestFiles.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+        assertRecords(file, RecordFraming.fixedLength(16), expected);
+    }
+
+    @Test
+    public void testLengthPrefixed() throws Exception {
+        List<String> expected = TestFiles.randomLines(5000, 15);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (String record : expected) {
+            byte[] bytes = record.getBytes(StandardCharsets.US_ASCII);
+            content.write(bytes.length >>> 8);
+            content.write(bytes.length & 0xFF);
+            content.write(bytes);
+        }
+        assertRecords(TestFiles.write(content.toByteArray()),
+                RecordFraming.lengthPrefixed(2, ByteOrder.BIG_ENDIAN), expected);
+    }
+
+    private static void assertRecords(File file, RecordFraming framing, List<String> expected) throws Exception {
+        Map<String, Integer> counts = TestFiles.counts(expected);
+        for (int threads : THREADS) {
+            for (long window : WINDOWS) {
+                final Map<String, Integer> records = new ConcurrentHashMap<String, Integer>();
+                BigFileReader reader = new BigFileReader.Builder(file.getAbsolutePath(),
+                        record -> records.merge(record, 1, Integer::sum))
+                        .withRecordFraming(framing)
+                        .withCharset("US-ASCII")
+                        .withTreahdSize(threads)
+                        .withMapWindowSize(window)
+                        .build();
+                ReadResult result;
+                try {
+                    result = reader.start().get();
+                } finally {
+                    reader.shutdown();
+                }
+                String message = threads + "个线程，窗口" + window;
+                Assert.assertEquals(message, counts, records);
+                Assert.assertEquals(message, expected.size(), result.getLines());
+                assertContiguous(message, result, file.length());
+            }
+        }
+    }
+
+    /**
+     * 分片首尾相接，覆盖整个文件
+     */
+    static void assertContiguous(String message, ReadResult result, long length) {
+        long next = 0;
+        for (ReadResult.SliceResult slice : result.getSlices()) {
+            Assert.assertEquals(message + "，分片" + slice.getIndex(), next, slice.getStart());
+            Assert.assertTrue(message + "，分片" + slice.getIndex(), slice.getEnd() >= slice.getStart());
+            next = slice.getEnd() + 1;
+        }
+        Assert.assertEquals(message, length, next);
+    }
+}
@@ -0,0 +1,75 @@
+package com.test.file.bigfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 测试用的临时文件和行计数
+ *
+ * @author Aaron
+ */
+final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    /**
+     * 生成长度不一的行，内容只有ASCII，不含空行
+     *
+     * @param count
+     * @param seed
+     * @return
+     */
+    static List<String> randomLines(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder line = new StringBuilder().append(i).append(':');
+            int length = random.nextInt(random.nextInt(10) == 0 ? 300 : 30);
+            for (int j = 0; j < length; j++) {
+                line.append((char) ('a' + random.nextInt(26)));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * 按指定的换行符写入所有行，每行都以换行符结束
+     */
+    static File write(List<String> lines, String newline) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(newline);
+        }
+        return write(text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static File write(byte[] content) throws IOException {
+        File file = File.createTempFile("bigfile", ".txt");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    /**
+     * 每行出现的次数
+     */
+    static Map<String, Integer> counts(List<String> lines) {
+        Map<String, Integer> counts = new ConcurrentHashMap<String, Integer>();
+        for (String line : lines) {
+            counts.merge(line, 1, Integer::sum);
+        }
+        return counts;
+    }
+}
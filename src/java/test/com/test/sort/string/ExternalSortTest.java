@@ -0,0 +1,144 @@
+package com.test.sort.string;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentools.sort.string.ExternalSort;
+
+/**
+ * ExternalSort的输出和Collections.sort一致, 不丢行也不拆行
+ *
+ * @author Aaron
+ */
+public class ExternalSortTest {
+
+	@Test
+	public void testMultipleRuns() throws Exception {
+		List<String> lines = randomLines(50000, 31);
+		File input = write(lines, "\n");
+		File output = tempFile();
+		// 内存预算很小, 每个分片生成多个run
+		assertSorted(lines, output, new ExternalSort.Builder(input.getPath(), output.getPath())
+				.withTreahdSize(4).withMemoryBudget(256 * 1024));
+	}
+
+	/**
+	 * 归并路数很小时要经过多轮归并, run压缩与否结果都一样
+	 */
+	@Test
+	public void testMergePassWithCompression() throws Exception {
+		List<String> lines = randomLines(30000, 32);
+		File input = write(lines, "\n");
+		for (boolean compress : new boolean[] { false, true }) {
+			File output = tempFile();
+			assertSorted(lines, output, new ExternalSort.Builder(input.getPath(), output.getPath())
+					.withTreahdSize(3).withMemoryBudget(128 * 1024).withMaxMergeFanIn(2).withCompression(compress));
+		}
+	}
+
+	/**
+	 * 行中间单独的\r是行的内容, 空行也要输出, \r\n结尾的行去掉\r
+	 */
+	@Test
+	public void testCarriageReturnAndEmptyLines() throws Exception {
+		List<String> lines = randomLines(20000, 33);
+		lines.add("x\ry");
+		lines.add("\r");
+		lines.add("");
+		lines.add("");
+		Collections.shuffle(lines, new Random(34));
+		StringBuilder text = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (i % 3 == 0) {
+				text.append(line).append("\r\n");
+				expected.add(line);
+			} else {
+				text.append(line).append('\n');
+				expected.add(line.endsWith("\r") ? line.substring(0, line.length() - 1) : line);
+			}
+		}
+		File input = write(text.toString());
+		File output = tempFile();
+		assertSorted(expected, output, new ExternalSort.Builder(input.getPath(), output.getPath())
+				.withTreahdSize(4).withMemoryBudget(256 * 1024).withMaxMergeFanIn(3));
+	}
+
+	/**
+	 * 最后一行没有换行符时也要输出
+	 */
+	@Test
+	public void testLastLineWithoutNewline() throws Exception {
+		File input = write("b\n\na\nc");
+		File output = tempFile();
+		assertSorted(Arrays.asList("b", "", "a", "c"), output,
+				new ExternalSort.Builder(input.getPath(), output.getPath()).withTreahdSize(2));
+	}
+
+	private static void assertSorted(List<String> lines, File output, ExternalSort.Builder builder)
+			throws Exception {
+		List<String> expected = new ArrayList<String>(lines);
+		Collections.sort(expected);
+		Assert.assertEquals(expected.size(), builder.build().sort());
+		Assert.assertEquals(expected, readLines(output));
+	}
+
+	/**
+	 * 只按\n切分, Files.readAllLines会把单独的\r也当作换行
+	 */
+	private static List<String> readLines(File file) throws IOException {
+		String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		Assert.assertTrue("输出的每一行都以\\n结尾", text.isEmpty() || text.endsWith("\n"));
+		List<String> lines = new ArrayList<String>(Arrays.asList(text.split("\n", -1)));
+		lines.remove(lines.size() - 1);
+		return lines;
+	}
+
+	/**
+	 * 长度不一的行, 有重复的行和非ASCII字符
+	 */
+	private static List<String> randomLines(int count, long seed) {
+		Random random = new Random(seed);
+		List<String> lines = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			StringBuilder line = new StringBuilder();
+			int length = random.nextInt(random.nextInt(10) == 0 ? 200 : 12);
+			for (int j = 0; j < length; j++) {
+				line.append(random.nextInt(20) == 0 ? '中' : (char) ('a' + random.nextInt(6)));
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	private static File write(List<String> lines, String newline) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) {
+			text.append(line).append(newline);
+		}
+		return write(text.toString());
+	}
+
+	private static File write(String text) throws IOException {
+		File file = tempFile();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static File tempFile() throws IOException {
+		File file = File.createTempFile("sort", ".txt");
+		file.deleteOnExit();
+		return file;
+	}
+}
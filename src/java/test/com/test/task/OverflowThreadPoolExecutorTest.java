@@ -0,0 +1,177 @@
+package com.test.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentools.task.OverflowPolicy;
+import com.opentools.task.OverflowThreadPoolExecutor;
+import com.opentools.task.TaskEntity;
+import com.opentools.task.TaskRunner;
+
+/**
+ * 溢出队列中的任务最终都会执行
+ * @author Aaron
+ */
+public class OverflowThreadPoolExecutorTest {
+
+	@Test
+	public void testSynchronousQueueDrainsOverflow() throws Exception {
+		OverflowThreadPoolExecutor executor = new OverflowThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), Executors.defaultThreadFactory(), 100, OverflowPolicy.CALLER_RUNS);
+		final CountDownLatch done = new CountDownLatch(6);
+		for (int i = 0; i < 6; i++) {
+			executor.execute(() -> {
+				sleep(100);
+				done.countDown();
+			});
+		}
+		Assert.assertTrue("溢出的任务没有执行", done.await(3, TimeUnit.SECONDS));
+		Assert.assertEquals(0, executor.getOverflowSize());
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testSynchronousQueueConcurrentSubmitters() throws Exception {
+		final OverflowThreadPoolExecutor executor = new OverflowThreadPoolExecutor(2, 4, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), Executors.defaultThreadFactory(), 100000, OverflowPolicy.BLOCK);
+		final int submitters = 4;
+		final int tasks = 5000;
+		final AtomicInteger count = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(submitters * tasks);
+		Thread[] threads = new Thread[submitters];
+		for (int i = 0; i < submitters; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < tasks; j++) {
+					executor.execute(() -> {
+						count.incrementAndGet();
+						done.countDown();
+					});
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertTrue("还有" + done.getCount() + "个任务没有执行", done.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(submitters * tasks, count.get());
+		Assert.assertEquals(0, executor.getDroppedCount());
+		executor.shutdown();
+	}
+
+	/**
+	 * 多个线程同时提交，工作队列很小，大部分任务经过溢出队列
+	 */
+	@Test
+	public void testConcurrentOverflowPolicies() throws Exception {
+		for (OverflowPolicy policy : OverflowPolicy.values()) {
+			final OverflowThreadPoolExecutor executor = new OverflowThreadPoolExecutor(2, 4, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(4), Executors.defaultThreadFactory(), 64, policy);
+			final int submitters = 8;
+			final int tasks = 2000;
+			final AtomicInteger count = new AtomicInteger();
+			Thread[] threads = new Thread[submitters];
+			for (int i = 0; i < submitters; i++) {
+				threads[i] = new Thread(() -> {
+					for (int j = 0; j < tasks; j++) {
+						executor.execute(() -> {
+							count.incrementAndGet();
+							if ((count.get() & 63) == 0) {
+								Thread.yield();
+							}
+						});
+					}
+				});
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			executor.shutdown();
+			Assert.assertTrue(policy.name(), executor.awaitTermination(10, TimeUnit.SECONDS));
+			Assert.assertEquals(policy.name(), 0, executor.getOverflowSize());
+			Assert.assertEquals(policy.name(), submitters * tasks, count.get() + executor.getDroppedCount());
+			if (policy != OverflowPolicy.DROP) {
+				Assert.assertEquals(policy.name(), 0, executor.getDroppedCount());
+			}
+		}
+	}
+
+	/**
+	 * shutdownNow()返回的任务包括溢出队列中的任务，之后不再转移和执行
+	 */
+	@Test
+	public void testShutdownNowReturnsOverflow() throws Exception {
+		OverflowThreadPoolExecutor executor = new OverflowThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(1), Executors.defaultThreadFactory(), 100, OverflowPolicy.BLOCK);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(() -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+		final AtomicInteger count = new AtomicInteger();
+		for (int i = 0; i < 10; i++) {
+			executor.execute(count::incrementAndGet);
+		}
+		Assert.assertEquals(9, executor.getOverflowSize());
+		List<Runnable> pending = executor.shutdownNow();
+		Assert.assertEquals(10, pending.size());
+		Assert.assertEquals(0, executor.getOverflowSize());
+		Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+		Assert.assertEquals(0, count.get());
+	}
+
+	/**
+	 * shutdownNow()之后溢出队列中的TaskRunner的结果都会完成
+	 */
+	@Test
+	public void testShutdownNowCompletesTaskFutures() throws Exception {
+		OverflowThreadPoolExecutor executor = new OverflowThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(1), Executors.defaultThreadFactory(), 100, OverflowPolicy.BLOCK);
+		final CountDownLatch started = new CountDownLatch(1);
+		executor.execute(() -> {
+			started.countDown();
+			sleep(10000);
+		});
+		Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+		List<TaskRunner> runners = new ArrayList<TaskRunner>();
+		for (int i = 0; i < 10; i++) {
+			TaskRunner runner = new TaskRunner(new TaskEntity(() -> {
+			}));
+			runners.add(runner);
+			executor.execute(runner);
+		}
+		for (Runnable task : executor.shutdownNow()) {
+			// 调用方负责处理没有执行的任务
+			((TaskRunner) task).getFuture().cancel(false);
+		}
+		Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+		for (TaskRunner runner : runners) {
+			Assert.assertTrue(runner.getFuture().isDone());
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
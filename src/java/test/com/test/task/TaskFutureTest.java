@@ -0,0 +1,150 @@
+package com.test.task;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentools.task.TaskEntity;
+import com.opentools.task.TaskPoolConfig;
+import com.opentools.task.TaskPoolManager;
+
+/**
+ * 任务的CompletableFuture：结果、失败、超时、取消，以及中断状态不会影响同一线程的下一个任务
+ * @author Aaron
+ */
+public class TaskFutureTest {
+
+	private static final TaskPoolManager MANAGER = TaskPoolManager.newInstance();
+
+	@Test
+	public void testResultAndFailure() throws Exception {
+		String pool = singleThreadPool();
+		Assert.assertEquals("done", MANAGER.submit(pool, () -> "done").get(5, TimeUnit.SECONDS));
+		try {
+			MANAGER.submit(pool, () -> {
+				throw new IllegalStateException("模拟失败");
+			}).get(5, TimeUnit.SECONDS);
+			Assert.fail("任务失败时应该以异常完成");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void testTimeoutInterruptsAndClears() throws Exception {
+		String pool = singleThreadPool();
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		CompletableFuture<Object> slow = MANAGER.addTask(pool, new TaskEntity(() -> {
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+		}), 100, TimeUnit.MILLISECONDS);
+		try {
+			slow.get(5, TimeUnit.SECONDS);
+			Assert.fail("应该超时");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		Assert.assertTrue("超时后应该中断任务", interrupted.await(5, TimeUnit.SECONDS));
+		assertNextTaskNotInterrupted(pool);
+	}
+
+	@Test
+	public void testCancelInterruptsAndClears() throws Exception {
+		String pool = singleThreadPool();
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean swallowed = new AtomicBoolean();
+		CompletableFuture<Object> running = MANAGER.addTask(pool, new TaskEntity(() -> {
+			started.countDown();
+			// 任务自己不处理中断，只是看到了中断状态就返回
+			while (!Thread.currentThread().isInterrupted()) {
+				Thread.yield();
+			}
+			swallowed.set(true);
+		}));
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(running.cancel(true));
+		Assert.assertTrue(running.isCancelled());
+		assertNextTaskNotInterrupted(pool);
+		Assert.assertTrue(swallowed.get());
+	}
+
+	@Test
+	public void testCancelBeforeStart() throws Exception {
+		String pool = singleThreadPool();
+		final CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Object> blocker = MANAGER.addTask(pool, new TaskEntity(() -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		final AtomicInteger ran = new AtomicInteger();
+		CompletableFuture<Object> queued = MANAGER.addTask(pool, new TaskEntity(() -> ran.incrementAndGet()));
+		Assert.assertTrue(queued.cancel(false));
+		release.countDown();
+		blocker.get(5, TimeUnit.SECONDS);
+		assertNextTaskNotInterrupted(pool);
+		Assert.assertEquals("取消的任务不应该执行", 0, ran.get());
+	}
+
+	@Test
+	public void testCancelAllTasks() throws Exception {
+		String pool = singleThreadPool();
+		final AtomicInteger interrupted = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		Runnable sleeper = () -> {
+			started.countDown();
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				interrupted.incrementAndGet();
+			}
+		};
+		List<TaskEntity> tasks = Arrays.asList(new TaskEntity(sleeper), new TaskEntity(sleeper),
+				new TaskEntity(sleeper));
+		CompletableFuture<List<Object>> all = MANAGER.addTasks(pool, tasks);
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue(all.cancel(true));
+		try {
+			all.get(5, TimeUnit.SECONDS);
+			Assert.fail("应该已经取消");
+		} catch (CancellationException e) {
+			// 预期的取消
+		}
+		assertNextTaskNotInterrupted(pool);
+		// 只有正在执行的第一个任务被中断，排队的任务不再执行
+		Assert.assertEquals(1, interrupted.get());
+	}
+
+	/**
+	 * 在同一个线程中执行的下一个任务看不到前一个任务的中断
+	 */
+	private static void assertNextTaskNotInterrupted(String pool) throws Exception {
+		Assert.assertEquals(Boolean.FALSE, MANAGER.submit(pool, () -> Thread.currentThread().isInterrupted())
+				.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * 只有一个线程的线程池，前后的任务在同一个线程中执行
+	 */
+	private static String singleThreadPool() {
+		String name = "future-test-" + System.nanoTime();
+		MANAGER.register(new TaskPoolConfig.Builder(name).withCorePoolSize(1).withMaxPoolSize(1)
+				.withDaemon(true).build());
+		return name;
+	}
+}
@@ -0,0 +1,72 @@
+package com.test.task;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentools.task.TaskEntity;
+import com.opentools.task.TaskInstanceMode;
+import com.opentools.task.TaskPoolManager;
+
+/**
+ * 任务方法的调用
+ * @author Aaron
+ */
+public class TaskInvokerTest {
+
+	@Test
+	public void testInvokeMethods() throws Exception {
+		TaskPoolManager manager = TaskPoolManager.newInstance();
+		Map<String, String> param = Collections.singletonMap("name", "task");
+		for (TaskInstanceMode mode : TaskInstanceMode.values()) {
+			Assert.assertEquals("hello task", manager.addTask(new TaskEntity(HelloTask.class, "hello", param, mode))
+					.get(5, TimeUnit.SECONDS));
+			Assert.assertNull(manager.addTask(new TaskEntity(HelloTask.class, "ignore", param, mode))
+					.get(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals("static task", manager.addTask(new TaskEntity(HelloTask.class, "staticHello", param))
+				.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * 任务类由子类加载器加载，TaskInvoker的类加载器看不到它
+	 */
+	@Test
+	public void testInvokeClassFromChildLoader() throws Exception {
+		URL location = HelloTask.class.getProtectionDomain().getCodeSource().getLocation();
+		try (URLClassLoader loader = new URLClassLoader(new URL[]{location},
+				ClassLoader.getSystemClassLoader().getParent())) {
+			Class<?> hidden = loader.loadClass(HelloTask.class.getName());
+			Assert.assertNotSame(HelloTask.class, hidden);
+			TaskPoolManager manager = TaskPoolManager.newInstance();
+			Map<String, String> param = Collections.singletonMap("name", "hidden");
+			for (int i = 0; i < 3; i++) {
+				Assert.assertEquals("hello hidden", manager.addTask(new TaskEntity(hidden, "hello", param))
+						.get(5, TimeUnit.SECONDS));
+				Assert.assertNull(manager.addTask(new TaskEntity(hidden, "ignore", param)).get(5, TimeUnit.SECONDS));
+			}
+		}
+	}
+
+	/**
+	 * 只依赖JDK的类，可以由只能看到JDK的类加载器加载
+	 */
+	public static class HelloTask {
+
+		public Object hello(Map<?, ?> param) {
+			return "hello " + param.get("name");
+		}
+
+		public void ignore(Map<?, ?> param) {
+		}
+
+		public static Object staticHello(Map<?, ?> param) {
+			return "static " + param.get("name");
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.test.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.opentools.common.VirtualThreadUtils;
+import com.opentools.task.OverflowPolicy;
+import com.opentools.task.TaskEntity;
+import com.opentools.task.TaskPoolConfig;
+import com.opentools.task.TaskPoolManager;
+
+/**
+ * 阻塞任务下平台线程池和虚拟线程池的吞吐量对比，需要在JDK21上运行
+ * <p>
+ * 参数：任务数 每个任务阻塞的毫秒数，默认10000个任务、每个阻塞50毫秒
+ * @author Aaron
+ */
+public class TaskPoolBenchmark {
+
+	public static void main(String[] args) {
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		long blockMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+		if (!VirtualThreadUtils.isSupported()) {
+			System.out.println("当前JDK不支持虚拟线程，virtual线程池会退回到平台线程");
+		}
+
+		TaskPoolManager manager = TaskPoolManager.newInstance();
+		manager.register(new TaskPoolConfig.Builder("platform").withMaxPoolSize(100)
+				.withOverflow(tasks, OverflowPolicy.BLOCK).withDaemon(true).build());
+		manager.register(new TaskPoolConfig.Builder("virtual").withMode(TaskPoolConfig.ExecutorMode.VIRTUAL)
+				.withMaxConcurrency(1000).withOverflow(tasks, OverflowPolicy.BLOCK).withDaemon(true).build());
+
+		for (String pool : new String[]{"platform", "virtual", "platform", "virtual"}) {
+			run(manager, pool, tasks, blockMillis);
+		}
+		manager.shutdown();
+	}
+
+	private static void run(TaskPoolManager manager, String pool, int tasks, final long blockMillis) {
+		List<TaskEntity> list = new ArrayList<TaskEntity>(tasks);
+		for (int i = 0; i < tasks; i++) {
+			list.add(new TaskEntity(new Runnable() {
+				public void run() {
+					try {
+						// 模拟HTTP调用、发邮件等阻塞I/O
+						Thread.sleep(blockMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}));
+		}
+		long start = System.nanoTime();
+		manager.addTasks(pool, list).join();
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		Runtime runtime = Runtime.getRuntime();
+		System.out.println(pool + "：" + tasks + "个任务，耗时" + elapsed + "ms，"
+				+ (tasks * 1000L / Math.max(1, elapsed)) + "任务/秒，已用堆内存"
+				+ (runtime.totalMemory() - runtime.freeMemory()) / 1024 / 1024 + "M");
+	}
+}
@@ -0,0 +1,56 @@
+package com.test.task;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentools.task.TaskPoolManager;
+
+/**
+ * common.properties中线程池配置错误时只跳过这个线程池
+ * @author Aaron
+ */
+public class TaskPoolManagerConfigTest {
+
+	@Test
+	public void testBadPoolConfigIsSkipped() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "task-config-" + System.nanoTime());
+		Assert.assertTrue(dir.mkdirs());
+		File config = new File(dir, "common.properties");
+		dir.deleteOnExit();
+		config.deleteOnExit();
+		try (OutputStream out = new FileOutputStream(config)) {
+			out.write(("task.pool.bad.coreSize=abc\n"
+					+ "task.pool.worse.queueType=unknown\n"
+					+ "task.pool.good.coreSize=2\n"
+					+ "task.pool.good.maxSize=2\n").getBytes(StandardCharsets.ISO_8859_1));
+		}
+		URL classes = TaskPoolManager.class.getProtectionDomain().getCodeSource().getLocation();
+		// 单独的类加载器重新初始化TaskPoolManager，先找到上面的配置文件
+		try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL(), classes},
+				ClassLoader.getSystemClassLoader().getParent())) {
+			Class<?> type = Class.forName(TaskPoolManager.class.getName(), true, loader);
+			Object manager = type.getMethod("newInstance").invoke(null);
+			for (String pool : new String[]{TaskPoolManager.DEFAULT_POOL, "good"}) {
+				Object executor = type.getMethod("getPool", String.class).invoke(manager, pool);
+				Assert.assertNotNull(pool, executor);
+			}
+			for (String pool : new String[]{"bad", "worse"}) {
+				try {
+					type.getMethod("getPool", String.class).invoke(manager, pool);
+					Assert.fail("配置错误的线程池不应该存在：" + pool);
+				} catch (InvocationTargetException e) {
+					Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+				}
+			}
+			type.getMethod("shutdown").invoke(manager);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.test.task;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opentools.task.OverflowPolicy;
+import com.opentools.task.VirtualThreadTaskExecutor;
+
+/**
+ * VirtualThreadTaskExecutor的并发限制、溢出策略和关闭，用平台线程的工厂测试，和JDK版本无关
+ * @author Aaron
+ */
+public class VirtualThreadTaskExecutorTest {
+
+	private static final ThreadFactory DAEMON = r -> {
+		Thread thread = new Thread(r);
+		thread.setDaemon(true);
+		return thread;
+	};
+
+	@Test
+	public void testConcurrencyLimitAndPolicies() throws Exception {
+		for (OverflowPolicy policy : OverflowPolicy.values()) {
+			VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor(DAEMON, 10, 50, policy);
+			final AtomicInteger current = new AtomicInteger();
+			final AtomicInteger max = new AtomicInteger();
+			final AtomicInteger done = new AtomicInteger();
+			for (int i = 0; i < 300; i++) {
+				executor.execute(() -> {
+					int running = current.incrementAndGet();
+					max.accumulateAndGet(running, Math::max);
+					sleep(5);
+					current.decrementAndGet();
+					done.incrementAndGet();
+				});
+			}
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			// CALLER_RUNS时提交任务的线程也会执行一个
+			Assert.assertTrue(policy + "：" + max, max.get() <= (policy == OverflowPolicy.CALLER_RUNS ? 11 : 10));
+			Assert.assertEquals(policy.name(), 300, done.get() + executor.getDroppedCount());
+			if (policy != OverflowPolicy.DROP) {
+				Assert.assertEquals(0, executor.getDroppedCount());
+			}
+		}
+	}
+
+	/**
+	 * 线程工厂失败时不能泄漏名额和计数
+	 */
+	@Test
+	public void testThreadFactoryFailure() throws Exception {
+		final AtomicInteger created = new AtomicInteger();
+		VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor(r -> {
+			if (created.incrementAndGet() % 2 == 0) {
+				throw new IllegalStateException("模拟创建线程失败");
+			}
+			return DAEMON.newThread(r);
+		}, 1, 1, OverflowPolicy.DROP);
+		int failures = 0;
+		for (int i = 0; i < 10; i++) {
+			try {
+				executor.execute(() -> sleep(1));
+			} catch (IllegalStateException e) {
+				failures++;
+			}
+			// 等前一个任务结束，名额只有两个
+			long deadline = System.currentTimeMillis() + 5000;
+			while (executor.getTaskCount() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+		}
+		Assert.assertEquals(5, failures);
+		Assert.assertEquals(0, executor.getDroppedCount());
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testShutdownNowInterruptsAndReturnsWaiting() throws Exception {
+		VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor(DAEMON, 2, 10, OverflowPolicy.DROP);
+		final CountDownLatch started = new CountDownLatch(2);
+		final AtomicInteger interrupted = new AtomicInteger();
+		final AtomicInteger ran = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			executor.execute(() -> {
+				ran.incrementAndGet();
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.incrementAndGet();
+				}
+			});
+		}
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		List<Runnable> pending = executor.shutdownNow();
+		Assert.assertEquals(3, pending.size());
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertEquals(2, interrupted.get());
+		Assert.assertEquals(2, ran.get());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}